@@ -27,8 +27,11 @@
  */
 package cloud.piranha.http.api;
 
+import java.io.EOFException;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 
 /**
  * THe HttpServerResponse API.
@@ -74,6 +77,22 @@ public interface HttpServerResponse {
      */
     OutputStream getOutputStream();
 
+    /**
+     * Is chunked transfer-encoding supported for the response body.
+     *
+     * <p>
+     * If it is, setting the <code>Transfer-Encoding: chunked</code> header
+     * before writing the headers makes the implementation write the body as
+     * chunks, so the end of a body with an unknown length can be marked
+     * without closing the connection.
+     * </p>
+     *
+     * @return true if it is, false otherwise.
+     */
+    default boolean isChunkedEncodingSupported() {
+        return false;
+    }
+
     /**
      * Set the specified header.
      *
@@ -89,6 +108,36 @@ public interface HttpServerResponse {
      */
     void setStatus(int status);
     
+    /**
+     * Write a region of a file as (part of) the response body.
+     *
+     * <p>
+     * The default implementation copies the region to the output stream.
+     * Implementations can transfer it to the connection directly instead, so
+     * the content of the file does not have to pass through the heap.
+     * </p>
+     *
+     * @param fileChannel the file channel.
+     * @param position the position of the region in the file.
+     * @param length the length of the region.
+     * @throws IOException when an I/O error occurs.
+     */
+    default void writeFile(FileChannel fileChannel, long position, long length) throws IOException {
+        OutputStream outputStream = getOutputStream();
+        byte[] bytes = new byte[(int) Math.min(length, 65536)];
+        ByteBuffer byteBuffer = ByteBuffer.wrap(bytes);
+        long end = position + length;
+        while (position < end) {
+            byteBuffer.clear().limit((int) Math.min(bytes.length, end - position));
+            int read = fileChannel.read(byteBuffer, position);
+            if (read == -1) {
+                throw new EOFException();
+            }
+            outputStream.write(bytes, 0, read);
+            position += read;
+        }
+    }
+
     /**
      * Write the headers.
      *
@@ -28,13 +28,25 @@
 package cloud.piranha.http.impl;
 
 import java.io.IOException;
+import java.io.OutputStream;
 import java.lang.System.Logger;
+import java.net.InetSocketAddress;
 import java.net.ServerSocket;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.charset.StandardCharsets;
 import java.security.NoSuchAlgorithmException;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
 import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import javax.net.ssl.SSLContext;
 import javax.net.ssl.SSLEngine;
@@ -61,11 +73,68 @@ public class DefaultHttpServer implements HttpServer {
     private static final Logger LOGGER = System.getLogger(
             DefaultHttpServer.class.getPackageName());
 
+    /**
+     * Stores the body timeout (in milliseconds).
+     */
+    protected int bodyTimeout;
+
     /**
      * Stores the executor service.
      */
     protected ExecutorService executorService;
 
+    /**
+     * Stores the header timeout (in milliseconds).
+     */
+    protected int headerTimeout;
+
+    /**
+     * Stores the keep-alive timeout (in milliseconds).
+     */
+    protected int keepAliveTimeout;
+
+    /**
+     * Stores the linger timeout (in milliseconds).
+     */
+    protected int lingerTimeout;
+
+    /**
+     * Stores the maximum size of a request body (-1 if unlimited).
+     */
+    protected long maxBodySize;
+
+    /**
+     * Stores the maximum number of request header fields.
+     */
+    protected int maxHeaderCount;
+
+    /**
+     * Stores the maximum size of the request head (in bytes).
+     */
+    protected int maxHeaderSize;
+
+    /**
+     * Stores the maximum number of requests per connection.
+     */
+    protected int maxKeepAliveRequests;
+
+    /**
+     * Stores the maximum number of connections waiting for a thread (only
+     * used with a bounded thread pool).
+     */
+    protected int maxQueueSize;
+
+    /**
+     * Stores the maximum number of processing threads (0 or less for an
+     * unbounded thread pool).
+     */
+    protected int maxThreads;
+
+    /**
+     * Stores the NIO flag.
+     */
+    protected boolean nio;
+
     /**
      * Stores the processor.
      */
@@ -76,6 +145,12 @@ public class DefaultHttpServer implements HttpServer {
      */
     protected int serverPort;
 
+    /**
+     * Stores the number of seconds sent in the Retry-After header when a
+     * connection is rejected.
+     */
+    protected int retryAfter;
+
     /**
      * Stores the server acceptor thread.
      */
@@ -89,7 +164,7 @@ public class DefaultHttpServer implements HttpServer {
     /**
      * Stores the server stop request.
      */
-    protected boolean serverStopRequest;
+    protected volatile boolean serverStopRequest;
 
     /**
      * Stores the SO_TIMEOUT.
@@ -106,10 +181,75 @@ public class DefaultHttpServer implements HttpServer {
      */
     protected ThreadFactory threadFactory;
 
+    /**
+     * Stores the virtual threads flag.
+     */
+    protected boolean virtualThreads;
+
+    /**
+     * Stores the write timeout (in milliseconds).
+     */
+    protected int writeTimeout;
+
+    /**
+     * Stores the number of connections being processed.
+     */
+    final AtomicInteger active;
+
+    /**
+     * Stores the closer thread.
+     */
+    DefaultHttpServerCloserThread closerThread;
+
+    /**
+     * Stores the open connections.
+     */
+    final Set<DefaultHttpServerConnection> connections;
+
+    /**
+     * Stores the number of connections waiting for a processing thread.
+     */
+    final AtomicInteger queued;
+
+    /**
+     * Stores the number of rejected connections.
+     */
+    final AtomicLong rejected;
+
+    /**
+     * Stores the selector thread (only used in NIO mode).
+     */
+    DefaultHttpServerSelectorThread selectorThread;
+
+    /**
+     * Stores the timer wheel.
+     */
+    DefaultHttpServerTimerWheel timerWheel;
+
+    /**
+     * Stores the pre-encoded response sent when a connection is rejected.
+     */
+    private byte[] serviceUnavailable;
+
     /**
      * Constructor
      */
     public DefaultHttpServer() {
+        active = new AtomicInteger();
+        connections = ConcurrentHashMap.newKeySet();
+        queued = new AtomicInteger();
+        rejected = new AtomicLong();
+        maxQueueSize = 100;
+        retryAfter = 1;
+        bodyTimeout = 60000;
+        headerTimeout = 20000;
+        keepAliveTimeout = 20000;
+        lingerTimeout = 2000;
+        writeTimeout = 60000;
+        maxBodySize = -1;
+        maxHeaderCount = DefaultHttpServerConnection.MAX_HEADER_COUNT;
+        maxHeaderSize = DefaultHttpServerConnection.BUFFER_SIZE;
+        maxKeepAliveRequests = 100;
         threadFactory = new DefaultHttpServerThreadFactory();
         serverPort = 8765;
         serverStopRequest = false;
@@ -121,8 +261,8 @@ public class DefaultHttpServer implements HttpServer {
      * @param serverPort the server port.
      */
     public DefaultHttpServer(int serverPort) {
+        this();
         this.serverPort = serverPort;
-        threadFactory = new DefaultHttpServerThreadFactory();
     }
 
     /**
@@ -133,10 +273,9 @@ public class DefaultHttpServer implements HttpServer {
      * @param ssl the SSL flag.
      */
     public DefaultHttpServer(int serverPort, HttpServerProcessor processor, boolean ssl) {
-        this.threadFactory = new DefaultHttpServerThreadFactory();
+        this();
         this.processor = processor;
         this.serverPort = serverPort;
-        this.serverStopRequest = false;
         this.ssl = ssl;
     }
 
@@ -149,13 +288,111 @@ public class DefaultHttpServer implements HttpServer {
      * @param soTimeout the SO_TIMEOUT.
      */
     public DefaultHttpServer(int serverPort, HttpServerProcessor processor, int soTimeout) {
-        this.threadFactory = new DefaultHttpServerThreadFactory();
+        this();
         this.processor = processor;
         this.serverPort = serverPort;
-        this.serverStopRequest = false;
         this.soTimeout = soTimeout;
     }
 
+    /**
+     * {@return the number of connections being processed}
+     */
+    public int getActiveCount() {
+        return active.get();
+    }
+
+    /**
+     * {@return the body timeout (in milliseconds)}
+     */
+    public int getBodyTimeout() {
+        return bodyTimeout;
+    }
+
+    /**
+     * {@return the header timeout (in milliseconds)}
+     */
+    public int getHeaderTimeout() {
+        return headerTimeout;
+    }
+
+    /**
+     * {@return the keep-alive timeout (in milliseconds)}
+     */
+    public int getKeepAliveTimeout() {
+        return keepAliveTimeout;
+    }
+
+    /**
+     * {@return the linger timeout (in milliseconds)}
+     */
+    public int getLingerTimeout() {
+        return lingerTimeout;
+    }
+
+    /**
+     * {@return the maximum size of a request body, or -1 if unlimited}
+     */
+    public long getMaxBodySize() {
+        return maxBodySize;
+    }
+
+    /**
+     * {@return the maximum number of request header fields}
+     */
+    public int getMaxHeaderCount() {
+        return maxHeaderCount;
+    }
+
+    /**
+     * {@return the maximum size of the request head (in bytes)}
+     */
+    public int getMaxHeaderSize() {
+        return maxHeaderSize;
+    }
+
+    /**
+     * {@return the maximum number of requests per connection}
+     */
+    public int getMaxKeepAliveRequests() {
+        return maxKeepAliveRequests;
+    }
+
+    /**
+     * {@return the maximum number of connections waiting for a thread}
+     */
+    public int getMaxQueueSize() {
+        return maxQueueSize;
+    }
+
+    /**
+     * {@return the maximum number of processing threads}
+     */
+    public int getMaxThreads() {
+        return maxThreads;
+    }
+
+    /**
+     * {@return the number of connections waiting for a processing thread}
+     */
+    public int getQueuedCount() {
+        return queued.get();
+    }
+
+    /**
+     * {@return the number of connections rejected because the thread pool
+     * was saturated}
+     */
+    public long getRejectedCount() {
+        return rejected.get();
+    }
+
+    /**
+     * {@return the number of seconds sent in the Retry-After header}
+     */
+    public int getRetryAfter() {
+        return retryAfter;
+    }
+
     /**
      * {@return the SO_TIMEOUT}
      */
@@ -163,6 +400,31 @@ public class DefaultHttpServer implements HttpServer {
         return soTimeout;
     }
 
+    /**
+     * {@return the write timeout (in milliseconds)}
+     */
+    public int getWriteTimeout() {
+        return writeTimeout;
+    }
+
+    /**
+     * Is the NIO mode enabled.
+     *
+     * @return true if it is, false otherwise.
+     */
+    public boolean isNio() {
+        return nio;
+    }
+
+    /**
+     * Is the virtual threads mode enabled.
+     *
+     * @return true if it is, false otherwise.
+     */
+    public boolean isVirtualThreads() {
+        return virtualThreads;
+    }
+
     /**
      * @see HttpServer#isRunning()
      */
@@ -182,7 +444,9 @@ public class DefaultHttpServer implements HttpServer {
     public void start() {
         LOGGER.log(DEBUG, () -> "Starting HTTP server on port " + serverPort);
         try {
-            executorService = Executors.newCachedThreadPool(threadFactory);
+            serviceUnavailable = ("HTTP/1.1 503 Service Unavailable\r\nRetry-After: " + retryAfter
+                    + "\r\nContent-Length: 0\r\nConnection: close\r\n\r\n").getBytes(StandardCharsets.US_ASCII);
+            executorService = createExecutorService();
             serverStopRequest = false;
             if (ssl) {
                 SSLContext context = SSLContext.getDefault();
@@ -196,13 +460,32 @@ public class DefaultHttpServer implements HttpServer {
                 parameters.setWantClientAuth(true);
                 socket.setSSLParameters(parameters);
                 serverSocket = socket;
+                serverSocket.setReuseAddress(true);
             } else {
-                serverSocket = new ServerSocket(serverPort);
+                serverSocket = ServerSocketChannel.open().socket();
+                serverSocket.setReuseAddress(true);
+                serverSocket.bind(new InetSocketAddress(serverPort));
             }
-            serverSocket.setReuseAddress(true);
             serverSocket.setSoTimeout(soTimeout);
-            serverAcceptorThread = new Thread(new DefaultHttpServerAcceptorThread(this),
-                    "DefaultHttpServer-AcceptorThread");
+            timerWheel = new DefaultHttpServerTimerWheel();
+            Thread timer = new Thread(timerWheel, "DefaultHttpServer-TimerThread");
+            timer.setDaemon(true);
+            timer.start();
+            closerThread = new DefaultHttpServerCloserThread(this);
+            Thread closer = new Thread(closerThread, "DefaultHttpServer-CloserThread");
+            closer.setDaemon(true);
+            closer.start();
+            if (nio && !ssl) {
+                selectorThread = new DefaultHttpServerSelectorThread(this);
+                serverAcceptorThread = new Thread(selectorThread,
+                        "DefaultHttpServer-SelectorThread");
+            } else {
+                if (nio) {
+                    LOGGER.log(WARNING, "NIO mode does not support SSL, falling back to socket mode");
+                }
+                serverAcceptorThread = new Thread(new DefaultHttpServerAcceptorThread(this),
+                        "DefaultHttpServer-AcceptorThread");
+            }
             serverAcceptorThread.start();
             LOGGER.log(DEBUG, () -> "Started HTTP server on port " + serverPort);
         } catch (IOException exception) {
@@ -226,6 +509,15 @@ public class DefaultHttpServer implements HttpServer {
                 LOGGER.log(WARNING, "An I/O error occurred while stopping the HTTP server", exception);
             }
         }
+        if (selectorThread != null) {
+            selectorThread.wakeup();
+            selectorThread = null;
+        }
+        for (DefaultHttpServerConnection connection : connections) {
+            if (connection.isIdle()) {
+                connection.close();
+            }
+        }
         if (executorService != null) {
             executorService.shutdown();
             try {
@@ -235,6 +527,12 @@ public class DefaultHttpServer implements HttpServer {
                 Thread.currentThread().interrupt();
             }
         }
+        if (closerThread != null) {
+            closerThread.stop();
+        }
+        if (timerWheel != null) {
+            timerWheel.stop();
+        }
         LOGGER.log(DEBUG, () -> "Stopped HTTP server on port " + serverPort);
     }
 
@@ -248,6 +546,209 @@ public class DefaultHttpServer implements HttpServer {
         this.serverPort = serverPort;
     }
 
+    /**
+     * Set the body timeout.
+     *
+     * <p>
+     * This is the total time a client is given to send the request body,
+     * starting when the processor first has to wait for it. A value of 0 or
+     * less disables it.
+     * </p>
+     *
+     * @param bodyTimeout the body timeout (in milliseconds).
+     */
+    public void setBodyTimeout(int bodyTimeout) {
+        this.bodyTimeout = bodyTimeout;
+    }
+
+    /**
+     * Set the header timeout.
+     *
+     * <p>
+     * This is the total time a client is given to send the request head,
+     * starting when a connection is accepted or when the first byte of a next
+     * request arrives. A value of 0 or less disables it.
+     * </p>
+     *
+     * @param headerTimeout the header timeout (in milliseconds).
+     */
+    public void setHeaderTimeout(int headerTimeout) {
+        this.headerTimeout = headerTimeout;
+    }
+
+    /**
+     * Set the keep-alive timeout.
+     *
+     * <p>
+     * This is the time a connection may stay idle while waiting for the next
+     * request before it is closed.
+     * </p>
+     *
+     * @param keepAliveTimeout the keep-alive timeout (in milliseconds).
+     */
+    public void setKeepAliveTimeout(int keepAliveTimeout) {
+        this.keepAliveTimeout = keepAliveTimeout;
+    }
+
+    /**
+     * Set the linger timeout.
+     *
+     * <p>
+     * This is the time a connection is given to close its side after the
+     * server has shut down its output, while its remaining input is drained.
+     * </p>
+     *
+     * @param lingerTimeout the linger timeout (in milliseconds).
+     */
+    public void setLingerTimeout(int lingerTimeout) {
+        this.lingerTimeout = lingerTimeout;
+    }
+
+    /**
+     * Set the maximum size of a request body.
+     *
+     * <p>
+     * A request announcing a larger Content-Length is answered with a 413
+     * (Payload Too Large) status without being processed. Reading a larger
+     * chunked request body fails with an I/O error.
+     * </p>
+     *
+     * @param maxBodySize the maximum size of a request body (in bytes), or -1
+     * if unlimited.
+     */
+    public void setMaxBodySize(long maxBodySize) {
+        this.maxBodySize = maxBodySize;
+    }
+
+    /**
+     * Set the maximum number of request header fields.
+     *
+     * <p>
+     * A request with more header fields is answered with a 431 (Request
+     * Header Fields Too Large) status.
+     * </p>
+     *
+     * @param maxHeaderCount the maximum number of request header fields.
+     */
+    public void setMaxHeaderCount(int maxHeaderCount) {
+        this.maxHeaderCount = maxHeaderCount;
+    }
+
+    /**
+     * Set the maximum size of the request head.
+     *
+     * <p>
+     * This covers the request line and all the header fields. A request with
+     * a larger head is answered with a 431 (Request Header Fields Too Large)
+     * status.
+     * </p>
+     *
+     * @param maxHeaderSize the maximum size of the request head (in bytes).
+     */
+    public void setMaxHeaderSize(int maxHeaderSize) {
+        this.maxHeaderSize = maxHeaderSize;
+    }
+
+    /**
+     * Set the maximum number of requests per connection.
+     *
+     * <p>
+     * A value of 1 disables persistent connections, a value of 0 or less
+     * allows an unlimited number of requests per connection.
+     * </p>
+     *
+     * @param maxKeepAliveRequests the maximum number of requests.
+     */
+    public void setMaxKeepAliveRequests(int maxKeepAliveRequests) {
+        this.maxKeepAliveRequests = maxKeepAliveRequests;
+    }
+
+    /**
+     * Set the maximum number of connections waiting for a thread.
+     *
+     * <p>
+     * This is only used with a bounded thread pool. A value of 0 or less
+     * means connections are rejected as soon as all threads are busy.
+     * </p>
+     *
+     * @param maxQueueSize the maximum number of connections waiting.
+     */
+    public void setMaxQueueSize(int maxQueueSize) {
+        this.maxQueueSize = maxQueueSize;
+    }
+
+    /**
+     * Set the maximum number of processing threads.
+     *
+     * <p>
+     * A value greater than 0 uses a bounded thread pool with a bounded queue
+     * (see {@link #setMaxQueueSize(int)}). Once both are full new connections
+     * are answered with a 503 (Service Unavailable) status without being
+     * processed. A value of 0 or less uses an unbounded thread pool. This
+     * setting does not apply to the virtual threads mode.
+     * </p>
+     *
+     * @param maxThreads the maximum number of processing threads.
+     */
+    public void setMaxThreads(int maxThreads) {
+        this.maxThreads = maxThreads;
+    }
+
+    /**
+     * Set the NIO flag.
+     *
+     * <p>
+     * In NIO mode connections are accepted and read by a single selector
+     * thread and only handed to a processing thread once a complete request
+     * head has arrived. NIO mode is not available in combination with SSL.
+     * </p>
+     *
+     * @param nio the NIO flag.
+     */
+    public void setNio(boolean nio) {
+        this.nio = nio;
+    }
+
+    /**
+     * Set the number of seconds sent in the Retry-After header when a
+     * connection is rejected.
+     *
+     * @param retryAfter the number of seconds.
+     */
+    public void setRetryAfter(int retryAfter) {
+        this.retryAfter = retryAfter;
+    }
+
+    /**
+     * Set the virtual threads flag.
+     *
+     * <p>
+     * In virtual threads mode every connection is processed on its own
+     * virtual thread instead of on a thread of the platform thread pool. If
+     * the JVM does not support virtual threads the platform thread pool is
+     * used instead.
+     * </p>
+     *
+     * @param virtualThreads the virtual threads flag.
+     */
+    public void setVirtualThreads(boolean virtualThreads) {
+        this.virtualThreads = virtualThreads;
+    }
+
+    /**
+     * Set the write timeout.
+     *
+     * <p>
+     * This is the time a single write of the response may take before the
+     * connection is closed. A value of 0 or less disables it.
+     * </p>
+     *
+     * @param writeTimeout the write timeout (in milliseconds).
+     */
+    public void setWriteTimeout(int writeTimeout) {
+        this.writeTimeout = writeTimeout;
+    }
+
     @Override
     public void setSSL(boolean ssl) {
         this.ssl = ssl;
@@ -267,4 +768,124 @@ public class DefaultHttpServer implements HttpServer {
     public HttpServerProcessor getHttpServerProcessor() {
         return processor;
     }
+
+    /**
+     * Close the connection.
+     *
+     * <p>
+     * The output is shut down right away and the connection is handed to the
+     * closer thread, which drains the remaining input until the client closes
+     * its side or the linger timeout expires. This includes connections that
+     * are not channel based (e.g. TLS), for which shutting down the output
+     * sends the close_notify alert.
+     * </p>
+     *
+     * @param connection the connection.
+     */
+    void closeConnection(DefaultHttpServerConnection connection) {
+        DefaultHttpServerCloserThread closer = closerThread;
+        if (closer == null || lingerTimeout <= 0) {
+            connection.close();
+            return;
+        }
+        try {
+            connection.getSocket().shutdownOutput();
+            closer.close(connection);
+        } catch (IOException | UnsupportedOperationException exception) {
+            LOGGER.log(DEBUG, "An I/O error occurred while closing the connection", exception);
+            connection.close();
+        }
+    }
+
+    /**
+     * Create the executor service used to process connections.
+     *
+     * @return the executor service.
+     */
+    private ExecutorService createExecutorService() {
+        if (virtualThreads) {
+            try {
+                return (ExecutorService) Executors.class
+                        .getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+            } catch (ReflectiveOperationException | RuntimeException exception) {
+                LOGGER.log(WARNING, "Virtual threads are not available, falling back to platform threads", exception);
+            }
+        }
+        if (maxThreads > 0) {
+            ThreadPoolExecutor executor = new ThreadPoolExecutor(maxThreads, maxThreads,
+                    60, TimeUnit.SECONDS, maxQueueSize > 0
+                    ? new ArrayBlockingQueue<>(maxQueueSize) : new SynchronousQueue<>(),
+                    threadFactory);
+            executor.allowCoreThreadTimeOut(true);
+            return executor;
+        }
+        return Executors.newCachedThreadPool(threadFactory);
+    }
+
+    /**
+     * Execute the processing of a connection on a processing thread.
+     *
+     * <p>
+     * If the thread pool is saturated the connection is answered with the
+     * pre-encoded 503 (Service Unavailable) response and closed.
+     * </p>
+     *
+     * @param connection the connection.
+     */
+    void execute(DefaultHttpServerConnection connection) {
+        queued.incrementAndGet();
+        try {
+            executorService.execute(new DefaultHttpServerProcessingThread(this, connection));
+        } catch (RejectedExecutionException exception) {
+            queued.decrementAndGet();
+            if (serverStopRequest) {
+                connection.close();
+                return;
+            }
+            rejected.incrementAndGet();
+            try {
+                OutputStream outputStream = connection.getOutputStream();
+                outputStream.write(serviceUnavailable);
+                outputStream.flush();
+            } catch (IOException ioe) {
+                LOGGER.log(DEBUG, "An I/O error occurred while rejecting the connection", ioe);
+            }
+            closeConnection(connection);
+        }
+    }
+
+    /**
+     * Continue with a connection once its response has been completed.
+     *
+     * @param connection the connection.
+     * @param keepAlive true if the connection can be kept open.
+     * @return true if the calling thread should read the next request from
+     * the connection, false otherwise.
+     */
+    boolean completed(DefaultHttpServerConnection connection, boolean keepAlive) {
+        if (!keepAlive || serverStopRequest) {
+            closeConnection(connection);
+            return false;
+        }
+        DefaultHttpServerSelectorThread selector = selectorThread;
+        if (selector != null && !connection.parseRequestHead()) {
+            connection.setIdle(true);
+            selector.register(connection);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Resume a connection once its asynchronously completed response has
+     * been finished.
+     *
+     * @param connection the connection.
+     * @param keepAlive true if the connection can be kept open.
+     */
+    void resume(DefaultHttpServerConnection connection, boolean keepAlive) {
+        if (completed(connection, keepAlive)) {
+            execute(connection);
+        }
+    }
 }
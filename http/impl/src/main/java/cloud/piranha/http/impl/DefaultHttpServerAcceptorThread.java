@@ -73,7 +73,7 @@ class DefaultHttpServerAcceptorThread implements Runnable {
         while (!server.serverStopRequest) {
             try {
                 Socket socket = server.serverSocket.accept();
-                server.executorService.execute(new DefaultHttpServerProcessingThread(server, socket));
+                server.execute(new DefaultHttpServerConnection(server, socket));
             } catch (IOException exception) {
             } catch (Throwable throwable) {
                 LOGGER.log(WARNING, "An error occurred while accepting a socket connection", throwable);
@@ -0,0 +1,189 @@
+/*
+ * Copyright (c) 2002-2021 Manorrock.com. All Rights Reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   1. Redistributions of source code must retain the above copyright notice,
+ *      this list of conditions and the following disclaimer.
+ *   2. Redistributions in binary form must reproduce the above copyright
+ *      notice, this list of conditions and the following disclaimer in the
+ *      documentation and/or other materials provided with the distribution.
+ *   3. Neither the name of the copyright holder nor the names of its
+ *      contributors may be used to endorse or promote products derived from
+ *      this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package cloud.piranha.http.impl;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * The input stream for a request body with chunked transfer-encoding used by
+ * the default implementation of HTTP server.
+ *
+ * <p>
+ * This stream decodes the chunks and skips the trailer fields following the
+ * last chunk, so the connection is left positioned at the next request. The
+ * size of the decoded body can be limited.
+ * </p>
+ *
+ * @author Manfred Riem (mriem@manorrock.com)
+ */
+class DefaultHttpServerChunkedInputStream extends InputStream {
+
+    /**
+     * Stores the maximum length of a chunk size or trailer line.
+     */
+    private static final int MAX_LINE_LENGTH = 8192;
+
+    /**
+     * Stores the finished flag.
+     */
+    private boolean finished;
+
+    /**
+     * Stores the underlying input stream.
+     */
+    private final InputStream input;
+
+    /**
+     * Stores the maximum size of the body (-1 if unlimited).
+     */
+    private final long maxBodySize;
+
+    /**
+     * Stores the number of bytes remaining in the current chunk.
+     */
+    private long remaining;
+
+    /**
+     * Stores the number of body bytes read so far.
+     */
+    private long total;
+
+    /**
+     * Constructor.
+     *
+     * @param input the underlying input stream.
+     * @param maxBodySize the maximum size of the body (-1 if unlimited).
+     */
+    DefaultHttpServerChunkedInputStream(InputStream input, long maxBodySize) {
+        this.input = input;
+        this.maxBodySize = maxBodySize;
+    }
+
+    @Override
+    public int available() throws IOException {
+        return finished ? 0 : (int) Math.min(remaining, input.available());
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (!nextChunk()) {
+            return -1;
+        }
+        int read = input.read();
+        if (read == -1) {
+            throw new EOFException("Unexpected end of the request body");
+        }
+        remaining--;
+        return read;
+    }
+
+    @Override
+    public int read(byte[] bytes, int offset, int length) throws IOException {
+        if (length == 0) {
+            return 0;
+        }
+        if (!nextChunk()) {
+            return -1;
+        }
+        int read = input.read(bytes, offset, (int) Math.min(length, remaining));
+        if (read == -1) {
+            throw new EOFException("Unexpected end of the request body");
+        }
+        remaining -= read;
+        return read;
+    }
+
+    /**
+     * Move on to the next chunk if the current one has been read.
+     *
+     * @return true if there are bytes to read, false at the end of the body.
+     * @throws IOException when an I/O error occurs or the body is invalid.
+     */
+    private boolean nextChunk() throws IOException {
+        if (finished) {
+            return false;
+        }
+        if (remaining > 0) {
+            return true;
+        }
+        if (total > 0 && !readLine().isEmpty()) {
+            throw new IOException("Invalid chunk, missing CRLF after the chunk data");
+        }
+        String line = readLine();
+        int extension = line.indexOf(';');
+        if (extension != -1) {
+            line = line.substring(0, extension);
+        }
+        try {
+            remaining = Long.parseLong(line.trim(), 16);
+        } catch (NumberFormatException nfe) {
+            throw new IOException("Invalid chunk size", nfe);
+        }
+        if (remaining < 0) {
+            throw new IOException("Invalid chunk size");
+        }
+        total += remaining;
+        if (maxBodySize >= 0 && total > maxBodySize) {
+            throw new IOException("The request body exceeds the maximum size");
+        }
+        if (remaining == 0) {
+            while (!readLine().isEmpty()) {
+                // skip the trailer fields
+            }
+            finished = true;
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Read a line.
+     *
+     * @return the line without its line terminator.
+     * @throws IOException when an I/O error occurs or the line is too long.
+     */
+    private String readLine() throws IOException {
+        StringBuilder line = new StringBuilder();
+        int read = input.read();
+        while (read != '\n') {
+            if (read == -1) {
+                throw new EOFException("Unexpected end of the request body");
+            }
+            if (read != '\r') {
+                line.append((char) read);
+            }
+            if (line.length() > MAX_LINE_LENGTH) {
+                throw new IOException("Chunk size or trailer line too long");
+            }
+            read = input.read();
+        }
+        return line.toString();
+    }
+}
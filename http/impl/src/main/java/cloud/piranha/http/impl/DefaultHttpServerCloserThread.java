@@ -0,0 +1,274 @@
+/*
+ * Copyright (c) 2002-2021 Manorrock.com. All Rights Reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   1. Redistributions of source code must retain the above copyright notice,
+ *      this list of conditions and the following disclaimer.
+ *   2. Redistributions in binary form must reproduce the above copyright
+ *      notice, this list of conditions and the following disclaimer in the
+ *      documentation and/or other materials provided with the distribution.
+ *   3. Neither the name of the copyright holder nor the names of its
+ *      contributors may be used to endorse or promote products derived from
+ *      this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package cloud.piranha.http.impl;
+
+import static java.lang.System.Logger.Level.WARNING;
+
+import java.io.IOException;
+import java.lang.System.Logger;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * The closer thread used by the default implementation of HTTP server.
+ *
+ * <p>
+ * Closing a socket while the client is still sending makes the operating
+ * system reset the connection, and the client may then lose the response.
+ * This thread performs a lingering close instead: the output is shut down
+ * so the client sees the end of the response, after which the remaining
+ * input is drained without blocking until the client closes its side or the
+ * linger timeout expires, at which point the timer wheel closes it. This
+ * way processing threads are free as soon as the response has been flushed.
+ * </p>
+ *
+ * <p>
+ * Connections that are not channel based (e.g. TLS) cannot be registered
+ * with the selector. Their input is polled instead, with reads that time out
+ * right away through SO_TIMEOUT, every poll interval.
+ * </p>
+ *
+ * @author Manfred Riem (mriem@manorrock.com)
+ */
+class DefaultHttpServerCloserThread implements Runnable {
+
+    /**
+     * Stores the logger.
+     */
+    private static final Logger LOGGER = System.getLogger(
+            DefaultHttpServerCloserThread.class.getPackageName());
+
+    /**
+     * Stores the interval (in milliseconds) at which the input of connections
+     * that are not channel based is polled.
+     */
+    private static final int POLL_INTERVAL = 50;
+
+    /**
+     * Stores the buffer used to drain the input.
+     */
+    private final ByteBuffer drain;
+
+    /**
+     * Stores the connections waiting to be registered with the selector.
+     */
+    private final Queue<DefaultHttpServerConnection> registrations;
+
+    /**
+     * Stores the selector.
+     */
+    private final Selector selector;
+
+    /**
+     * Stores the HTTP server.
+     */
+    private final DefaultHttpServer server;
+
+    /**
+     * Stores the connections that are not channel based.
+     */
+    private final List<DefaultHttpServerConnection> sockets;
+
+    /**
+     * Stores the stopped flag.
+     */
+    private volatile boolean stopped;
+
+    /**
+     * Constructor.
+     *
+     * @param server the server we are working for.
+     * @throws IOException when an I/O error occurs.
+     */
+    DefaultHttpServerCloserThread(DefaultHttpServer server) throws IOException {
+        this.drain = ByteBuffer.allocate(DefaultHttpServerConnection.BUFFER_SIZE);
+        this.registrations = new ConcurrentLinkedQueue<>();
+        this.selector = Selector.open();
+        this.server = server;
+        this.sockets = new ArrayList<>();
+    }
+
+    /**
+     * @see Runnable#run()
+     */
+    @Override
+    public void run() {
+        try {
+            while (!stopped) {
+                selector.select(sockets.isEmpty() ? 1000 : POLL_INTERVAL);
+                registerConnections();
+                drainSockets();
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    drain(key);
+                }
+            }
+        } catch (IOException | RuntimeException exception) {
+            LOGGER.log(WARNING, "An error occurred in the closer thread", exception);
+        } finally {
+            close();
+        }
+    }
+
+    /**
+     * Close a connection once the client has closed its side or the linger
+     * timeout expires.
+     *
+     * @param connection the connection, its output must already be shut
+     * down.
+     */
+    void close(DefaultHttpServerConnection connection) {
+        registrations.add(connection);
+        selector.wakeup();
+        if (stopped) {
+            closeRegistrations();
+        }
+    }
+
+    /**
+     * Stop the closer thread, which closes the remaining connections right
+     * away.
+     */
+    void stop() {
+        stopped = true;
+        selector.wakeup();
+    }
+
+    /**
+     * Close the selector and all the connections still registered with it.
+     */
+    private void close() {
+        stopped = true;
+        closeRegistrations();
+        try {
+            for (SelectionKey key : selector.keys()) {
+                ((DefaultHttpServerConnection) key.attachment()).close();
+            }
+            sockets.forEach(DefaultHttpServerConnection::close);
+            sockets.clear();
+            selector.close();
+        } catch (IOException ioe) {
+            LOGGER.log(WARNING, "An I/O error occurred while closing the selector", ioe);
+        }
+    }
+
+    /**
+     * Close the connections waiting to be registered with the selector.
+     */
+    private void closeRegistrations() {
+        DefaultHttpServerConnection connection = registrations.poll();
+        while (connection != null) {
+            connection.close();
+            connection = registrations.poll();
+        }
+    }
+
+    /**
+     * Drain the input of a connection.
+     *
+     * @param key the selection key.
+     */
+    private void drain(SelectionKey key) {
+        DefaultHttpServerConnection connection = (DefaultHttpServerConnection) key.attachment();
+        try {
+            int read;
+            do {
+                drain.clear();
+                read = ((SocketChannel) key.channel()).read(drain);
+            } while (read > 0);
+            if (read == -1) {
+                key.cancel();
+                connection.close();
+            }
+        } catch (IOException ioe) {
+            key.cancel();
+            connection.close();
+        }
+    }
+
+    /**
+     * Drain the input of the connections that are not channel based.
+     *
+     * <p>
+     * A connection is dropped once the client has closed its side, or once it
+     * has been closed because the linger timeout expired.
+     * </p>
+     */
+    private void drainSockets() {
+        Iterator<DefaultHttpServerConnection> iterator = sockets.iterator();
+        while (iterator.hasNext()) {
+            DefaultHttpServerConnection connection = iterator.next();
+            Socket socket = connection.getSocket();
+            try {
+                while (!socket.isClosed() && socket.getInputStream().read(drain.array()) != -1) {
+                    // discard the input
+                }
+                iterator.remove();
+                connection.close();
+            } catch (SocketTimeoutException ste) {
+                // nothing more to read for now
+            } catch (IOException ioe) {
+                iterator.remove();
+                connection.close();
+            }
+        }
+    }
+
+    /**
+     * Register the connections waiting to be registered with the selector.
+     */
+    private void registerConnections() {
+        DefaultHttpServerConnection connection = registrations.poll();
+        while (connection != null) {
+            try {
+                connection.getTimeout().schedule(server.lingerTimeout);
+                if (connection.getChannel() == null) {
+                    connection.getSocket().setSoTimeout(1);
+                    sockets.add(connection);
+                } else {
+                    connection.getChannel().configureBlocking(false);
+                    connection.getChannel().register(selector, SelectionKey.OP_READ, connection);
+                }
+            } catch (IOException | RuntimeException exception) {
+                connection.close();
+            }
+            connection = registrations.poll();
+        }
+    }
+}
@@ -0,0 +1,461 @@
+/*
+ * Copyright (c) 2002-2021 Manorrock.com. All Rights Reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   1. Redistributions of source code must retain the above copyright notice,
+ *      this list of conditions and the following disclaimer.
+ *   2. Redistributions in binary form must reproduce the above copyright
+ *      notice, this list of conditions and the following disclaimer in the
+ *      documentation and/or other materials provided with the distribution.
+ *   3. Neither the name of the copyright holder nor the names of its
+ *      contributors may be used to endorse or promote products derived from
+ *      this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package cloud.piranha.http.impl;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.Arrays;
+
+/**
+ * A client connection used by the default implementation of HTTP server.
+ *
+ * <p>
+ * The connection owns the read buffer for the socket. In NIO mode the selector
+ * thread fills this buffer without blocking until a complete request head has
+ * arrived, after which the processing thread continues on the same buffer. In
+ * socket mode the buffer is filled by blocking reads. The request head parser
+ * works on the buffer in place, so a request head that arrives in multiple
+ * parts is parsed only once.
+ * </p>
+ *
+ * <p>
+ * The connection also tracks its deadline as it goes from waiting for a
+ * request (the keep-alive timeout), to reading the request head (the header
+ * timeout), reading the request body (the body timeout) and writing the
+ * response (the write timeout). The header and body timeouts bound the total
+ * time taken, so a client sending one byte at a time cannot hold on to the
+ * connection.
+ * </p>
+ *
+ * @author Manfred Riem (mriem@manorrock.com)
+ */
+class DefaultHttpServerConnection {
+
+    /**
+     * Stores the default buffer size.
+     */
+    static final int BUFFER_SIZE = 8192;
+
+    /**
+     * Stores the default maximum number of request header fields.
+     */
+    static final int MAX_HEADER_COUNT = 100;
+
+    /**
+     * Stores the awaiting flag, set while waiting for the first byte of the
+     * next request.
+     */
+    private boolean awaiting;
+
+    /**
+     * Stores the deadline for reading the request body (0 if not started).
+     */
+    private long bodyDeadline;
+
+    /**
+     * Stores the read buffer.
+     */
+    private final byte[] buffer;
+
+    /**
+     * Stores the channel (null when the socket is not channel based).
+     */
+    private final SocketChannel channel;
+
+    /**
+     * Stores the expired flag.
+     */
+    private volatile boolean expired;
+
+    /**
+     * Stores the idle flag.
+     */
+    private volatile boolean idle;
+
+    /**
+     * Stores the input stream.
+     */
+    private InputStream inputStream;
+
+    /**
+     * Stores the limit of the valid data in the buffer.
+     */
+    private int limit;
+
+    /**
+     * Stores the output stream.
+     */
+    private DefaultHttpServerOutputStream outputStream;
+
+    /**
+     * Stores the request head parser.
+     */
+    private final DefaultHttpServerRequestParser parser;
+
+    /**
+     * Stores the position of the next byte to read from the buffer.
+     */
+    private int position;
+
+    /**
+     * Stores the number of requests received on this connection.
+     */
+    private int requestCount;
+
+    /**
+     * Stores the server (null when used outside of a server).
+     */
+    private final DefaultHttpServer server;
+
+    /**
+     * Stores the socket.
+     */
+    private final Socket socket;
+
+    /**
+     * Stores the timeout.
+     */
+    private final DefaultHttpServerTimeout timeout;
+
+    /**
+     * Constructor.
+     *
+     * @param socket the socket.
+     */
+    DefaultHttpServerConnection(Socket socket) {
+        this(null, socket);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param server the server we are working for.
+     * @param socket the socket.
+     */
+    DefaultHttpServerConnection(DefaultHttpServer server, Socket socket) {
+        int maxHeaderSize = server != null ? server.maxHeaderSize : BUFFER_SIZE;
+        int maxHeaderCount = server != null ? server.maxHeaderCount : MAX_HEADER_COUNT;
+        this.buffer = new byte[Math.max(BUFFER_SIZE, maxHeaderSize)];
+        this.channel = socket.getChannel();
+        this.parser = new DefaultHttpServerRequestParser(maxHeaderSize, maxHeaderCount);
+        this.server = server;
+        this.socket = socket;
+        this.timeout = new DefaultHttpServerTimeout(server != null ? server.timerWheel : null, this);
+        if (server != null) {
+            server.connections.add(this);
+            try {
+                socket.setTcpNoDelay(true);
+            } catch (IOException ioe) {
+                // the response head is written at once, so this is not critical.
+            }
+        }
+    }
+
+    /**
+     * Close the connection.
+     */
+    void close() {
+        timeout.cancel();
+        if (server != null) {
+            server.connections.remove(this);
+        }
+        try {
+            socket.close();
+        } catch (IOException ioe) {
+            // nothing we can do about it at this point.
+        }
+    }
+
+    /**
+     * Close the connection because its deadline has passed.
+     */
+    void expire() {
+        expired = true;
+        close();
+    }
+
+    /**
+     * Start waiting for the next request.
+     *
+     * <p>
+     * The first request, or a request of which bytes have already arrived,
+     * gets the header timeout. Otherwise the connection is idle and gets the
+     * keep-alive timeout until the first byte of the next request arrives.
+     * </p>
+     */
+    void awaitRequest() {
+        bodyDeadline = 0;
+        if (server == null) {
+            return;
+        }
+        awaiting = requestCount > 0 && position == limit;
+        timeout.schedule(awaiting ? server.keepAliveTimeout : server.headerTimeout);
+    }
+
+    /**
+     * {@return the channel, or null if the socket is not channel based}
+     */
+    SocketChannel getChannel() {
+        return channel;
+    }
+
+    /**
+     * Get the input stream.
+     *
+     * <p>
+     * The returned stream first serves the bytes already buffered by the
+     * connection before it reads from the socket.
+     * </p>
+     *
+     * @return the input stream.
+     * @throws IOException when an I/O error occurs.
+     */
+    InputStream getInputStream() throws IOException {
+        if (inputStream == null) {
+            InputStream socketInput = socket.getInputStream();
+            inputStream = new InputStream() {
+
+                @Override
+                public int available() throws IOException {
+                    return limit - position + socketInput.available();
+                }
+
+                @Override
+                public int read() throws IOException {
+                    if (position < limit) {
+                        return buffer[position++] & 0xff;
+                    }
+                    startBodyRead();
+                    try {
+                        return socketInput.read();
+                    } finally {
+                        timeout.cancel();
+                    }
+                }
+
+                @Override
+                public int read(byte[] bytes, int offset, int length) throws IOException {
+                    if (length == 0) {
+                        return 0;
+                    }
+                    if (position < limit) {
+                        int count = Math.min(length, limit - position);
+                        System.arraycopy(buffer, position, bytes, offset, count);
+                        position += count;
+                        return count;
+                    }
+                    startBodyRead();
+                    try {
+                        return socketInput.read(bytes, offset, length);
+                    } finally {
+                        timeout.cancel();
+                    }
+                }
+            };
+        }
+        return inputStream;
+    }
+
+    /**
+     * {@return the output stream}
+     * @throws IOException when an I/O error occurs.
+     */
+    DefaultHttpServerOutputStream getOutputStream() throws IOException {
+        if (outputStream == null) {
+            outputStream = new DefaultHttpServerOutputStream(socket.getOutputStream(), channel,
+                    timeout, server != null ? server.writeTimeout : 0);
+        }
+        return outputStream;
+    }
+
+    /**
+     * {@return the maximum size of a request body, or -1 if unlimited}
+     */
+    long getMaxBodySize() {
+        return server != null ? server.maxBodySize : -1;
+    }
+
+    /**
+     * {@return the number of requests received on this connection}
+     */
+    int getRequestCount() {
+        return requestCount;
+    }
+
+    /**
+     * {@return the socket}
+     */
+    Socket getSocket() {
+        return socket;
+    }
+
+    /**
+     * {@return the timeout}
+     */
+    DefaultHttpServerTimeout getTimeout() {
+        return timeout;
+    }
+
+    /**
+     * {@return the request head parser}
+     */
+    DefaultHttpServerRequestParser getParser() {
+        return parser;
+    }
+
+    /**
+     * Parse the request head from the bytes already buffered.
+     *
+     * @return true if the request head is complete or invalid, false if more
+     * bytes are needed.
+     */
+    boolean parseRequestHead() {
+        return parser.parse(buffer, position, limit);
+    }
+
+    /**
+     * Increment the number of requests received on this connection.
+     */
+    void incrementRequestCount() {
+        requestCount++;
+    }
+
+    /**
+     * Has the connection been closed because its deadline passed.
+     *
+     * @return true if it has, false otherwise.
+     */
+    boolean isExpired() {
+        return expired;
+    }
+
+    /**
+     * Is the connection idle, that is waiting for the next request.
+     *
+     * @return true if it is, false otherwise.
+     */
+    boolean isIdle() {
+        return idle;
+    }
+
+    /**
+     * Read from the (non-blocking) channel into the buffer.
+     *
+     * @return the number of bytes read, or -1 on end of stream.
+     * @throws IOException when an I/O error occurs.
+     */
+    int readNonBlocking() throws IOException {
+        compact();
+        ByteBuffer byteBuffer = ByteBuffer.wrap(buffer, limit, buffer.length - limit);
+        int read = channel.read(byteBuffer);
+        if (read > 0) {
+            limit += read;
+            startHeadRead();
+        }
+        return read;
+    }
+
+    /**
+     * Read the request head, blocking until it is complete.
+     *
+     * @return true if the request head is complete or invalid, false if the
+     * end of stream was reached first.
+     * @throws IOException when an I/O error occurs.
+     */
+    boolean readRequestHead() throws IOException {
+        while (!parseRequestHead()) {
+            compact();
+            int read = socket.getInputStream().read(buffer, limit, buffer.length - limit);
+            if (read == -1) {
+                return false;
+            }
+            limit += read;
+            startHeadRead();
+        }
+        timeout.cancel();
+        return true;
+    }
+
+    /**
+     * Take the parsed request head out of the buffer.
+     *
+     * @return a copy of the bytes of the request head.
+     */
+    byte[] takeRequestHead() {
+        int length = parser.getHeadLength();
+        byte[] head = Arrays.copyOfRange(buffer, position, position + length);
+        position += length;
+        return head;
+    }
+
+    /**
+     * Set the idle flag.
+     *
+     * @param idle the idle flag.
+     */
+    void setIdle(boolean idle) {
+        this.idle = idle;
+    }
+
+    /**
+     * Switch from the keep-alive timeout to the header timeout once the first
+     * byte of the next request has arrived.
+     */
+    private void startHeadRead() {
+        if (awaiting) {
+            awaiting = false;
+            timeout.schedule(server.headerTimeout);
+        }
+    }
+
+    /**
+     * Set the deadline for a blocking read of the request body. The body
+     * timeout starts with the first such read.
+     */
+    private void startBodyRead() {
+        if (bodyDeadline == 0) {
+            bodyDeadline = timeout.deadline(server != null ? server.bodyTimeout : 0);
+        }
+        timeout.scheduleAt(bodyDeadline);
+    }
+
+    /**
+     * Move the unread bytes to the start of the buffer when the buffer is
+     * full.
+     */
+    private void compact() {
+        if (limit == buffer.length && position > 0) {
+            System.arraycopy(buffer, position, buffer, 0, limit - position);
+            limit -= position;
+            position = 0;
+        }
+    }
+}
@@ -0,0 +1,102 @@
+/*
+ * Copyright (c) 2002-2021 Manorrock.com. All Rights Reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   1. Redistributions of source code must retain the above copyright notice,
+ *      this list of conditions and the following disclaimer.
+ *   2. Redistributions in binary form must reproduce the above copyright
+ *      notice, this list of conditions and the following disclaimer in the
+ *      documentation and/or other materials provided with the distribution.
+ *   3. Neither the name of the copyright holder nor the names of its
+ *      contributors may be used to endorse or promote products derived from
+ *      this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package cloud.piranha.http.impl;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * The input stream for a request body with a Content-Length used by the
+ * default implementation of HTTP server.
+ *
+ * <p>
+ * This stream returns the end of stream once the number of bytes announced
+ * by the Content-Length header has been read, so the connection is left
+ * positioned at the next request.
+ * </p>
+ *
+ * @author Manfred Riem (mriem@manorrock.com)
+ */
+class DefaultHttpServerLengthInputStream extends InputStream {
+
+    /**
+     * Stores the underlying input stream.
+     */
+    private final InputStream input;
+
+    /**
+     * Stores the number of bytes remaining.
+     */
+    private long remaining;
+
+    /**
+     * Constructor.
+     *
+     * @param input the underlying input stream.
+     * @param length the length of the request body.
+     */
+    DefaultHttpServerLengthInputStream(InputStream input, long length) {
+        this.input = input;
+        this.remaining = length;
+    }
+
+    @Override
+    public int available() throws IOException {
+        return (int) Math.min(remaining, input.available());
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (remaining == 0) {
+            return -1;
+        }
+        int read = input.read();
+        if (read == -1) {
+            throw new EOFException("Unexpected end of the request body");
+        }
+        remaining--;
+        return read;
+    }
+
+    @Override
+    public int read(byte[] bytes, int offset, int length) throws IOException {
+        if (length == 0) {
+            return 0;
+        }
+        if (remaining == 0) {
+            return -1;
+        }
+        int read = input.read(bytes, offset, (int) Math.min(length, remaining));
+        if (read == -1) {
+            throw new EOFException("Unexpected end of the request body");
+        }
+        remaining -= read;
+        return read;
+    }
+}
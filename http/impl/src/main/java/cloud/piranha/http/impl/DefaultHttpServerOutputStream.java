@@ -0,0 +1,404 @@
+/*
+ * Copyright (c) 2002-2021 Manorrock.com. All Rights Reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   1. Redistributions of source code must retain the above copyright notice,
+ *      this list of conditions and the following disclaimer.
+ *   2. Redistributions in binary form must reproduce the above copyright
+ *      notice, this list of conditions and the following disclaimer in the
+ *      documentation and/or other materials provided with the distribution.
+ *   3. Neither the name of the copyright holder nor the names of its
+ *      contributors may be used to endorse or promote products derived from
+ *      this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package cloud.piranha.http.impl;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * The output stream used by the default implementation of HTTP server.
+ *
+ * <p>
+ * This stream buffers what is written so the response head and the start of
+ * the body go out together. When more is written than fits in the buffer the
+ * buffer and the written bytes go out in one gathering write if the socket
+ * has a channel. It also keeps track of the number of bytes written so
+ * the server can verify a response body matches its declared length. When
+ * chunked transfer-encoding is enabled the body is written as chunks, every
+ * flush of the buffer producing one chunk. Every write to the socket gets the
+ * write timeout as deadline. Closing it does not close the socket as the
+ * connection may be used for a next request.
+ * </p>
+ *
+ * @author Manfred Riem (mriem@manorrock.com)
+ */
+class DefaultHttpServerOutputStream extends OutputStream {
+
+    /**
+     * Stores the CRLF bytes.
+     */
+    private static final byte[] CRLF = {'\r', '\n'};
+
+    /**
+     * Stores the last chunk bytes.
+     */
+    private static final byte[] LAST_CHUNK = {'0', '\r', '\n', '\r', '\n'};
+
+    /**
+     * Stores the space reserved in front of every chunk for its size line.
+     */
+    private static final int CHUNK_HEADER = 10;
+
+    /**
+     * Stores the space reserved behind every chunk for its CRLF and the last
+     * chunk.
+     */
+    private static final int CHUNK_TRAILER = CRLF.length + LAST_CHUNK.length;
+
+    /**
+     * Stores the buffer.
+     */
+    private final byte[] buffer;
+
+    /**
+     * Stores the channel (null when the socket is not channel based).
+     */
+    private final SocketChannel channel;
+
+    /**
+     * Stores the start of the reserved chunk header in the buffer, or -1 if
+     * the body is not chunked.
+     */
+    private int chunkStart;
+
+    /**
+     * Stores the number of bytes written.
+     */
+    private long count;
+
+    /**
+     * Stores the index of the next byte to write in the buffer.
+     */
+    private int index;
+
+    /**
+     * Stores the underlying output stream.
+     */
+    private final OutputStream output;
+
+    /**
+     * Stores the timeout of the connection.
+     */
+    private final DefaultHttpServerTimeout timeout;
+
+    /**
+     * Stores the write timeout (in milliseconds).
+     */
+    private final int writeTimeout;
+
+    /**
+     * Constructor.
+     *
+     * @param output the underlying output stream.
+     * @param channel the channel to use for gathering writes, or null.
+     * @param timeout the timeout of the connection.
+     * @param writeTimeout the write timeout (in milliseconds).
+     */
+    DefaultHttpServerOutputStream(OutputStream output, SocketChannel channel,
+            DefaultHttpServerTimeout timeout, int writeTimeout) {
+        this.buffer = new byte[DefaultHttpServerConnection.BUFFER_SIZE];
+        this.channel = channel;
+        this.chunkStart = -1;
+        this.output = output;
+        this.timeout = timeout;
+        this.writeTimeout = writeTimeout;
+    }
+
+    @Override
+    public void close() throws IOException {
+        flush();
+    }
+
+    @Override
+    public void flush() throws IOException {
+        flushBuffer(false);
+        output.flush();
+    }
+
+    /**
+     * Finish the response body.
+     *
+     * <p>
+     * This writes the last chunk if the body is chunked, flushes the stream
+     * and switches chunked transfer-encoding off again for the next response.
+     * </p>
+     *
+     * @throws IOException when an I/O error occurs.
+     */
+    void finish() throws IOException {
+        flushBuffer(true);
+        output.flush();
+        if (chunkStart != -1) {
+            chunkStart = -1;
+            index = 0;
+        }
+    }
+
+    /**
+     * {@return the number of bytes written}
+     */
+    long getCount() {
+        return count;
+    }
+
+    /**
+     * Enable chunked transfer-encoding for everything written from now on.
+     *
+     * @throws IOException when an I/O error occurs.
+     */
+    void startChunking() throws IOException {
+        if (index + CHUNK_HEADER + CHUNK_TRAILER >= buffer.length) {
+            flushBuffer(false);
+        }
+        chunkStart = index;
+        index += CHUNK_HEADER;
+    }
+
+    /**
+     * Write a region of a file.
+     *
+     * <p>
+     * A region that fits in the buffer is read into it, so it goes out
+     * together with the response head. A larger region is transferred from
+     * the file channel to the socket channel directly, without copying it
+     * through user space. That is not possible when the socket is not channel
+     * based (e.g. TLS) or the body is chunked, in which case the region is left
+     * for the caller to copy.
+     * </p>
+     *
+     * @param fileChannel the file channel.
+     * @param position the position of the region in the file.
+     * @param length the length of the region.
+     * @return true if the region was written, false otherwise.
+     * @throws IOException when an I/O error occurs.
+     */
+    boolean transferFrom(FileChannel fileChannel, long position, long length) throws IOException {
+        long end = position + length;
+        if (length <= capacity() - index) {
+            ByteBuffer byteBuffer = ByteBuffer.wrap(buffer, index, (int) length);
+            while (byteBuffer.hasRemaining()) {
+                if (fileChannel.read(byteBuffer, end - byteBuffer.remaining()) == -1) {
+                    throw new EOFException();
+                }
+            }
+            index += (int) length;
+            count += length;
+            return true;
+        }
+        if (channel != null && chunkStart == -1) {
+            flushBuffer(false);
+            timeout.schedule(writeTimeout);
+            try {
+                while (position < end) {
+                    long transferred = fileChannel.transferTo(position, end - position, channel);
+                    if (transferred <= 0 && position >= fileChannel.size()) {
+                        throw new EOFException();
+                    }
+                    position += transferred;
+                }
+            } finally {
+                timeout.cancel();
+            }
+            count += length;
+            return true;
+        }
+        return false;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        if (index == capacity()) {
+            flushBuffer(false);
+        }
+        buffer[index++] = (byte) b;
+        count++;
+    }
+
+    @Override
+    public void write(byte[] bytes, int offset, int length) throws IOException {
+        if (length > capacity() - index) {
+            if (chunkStart != -1) {
+                flushBuffer(false);
+                if (length > capacity() - index) {
+                    byte[] size = (Integer.toHexString(length) + "\r\n").getBytes(StandardCharsets.US_ASCII);
+                    write(ByteBuffer.wrap(size), ByteBuffer.wrap(bytes, offset, length), ByteBuffer.wrap(CRLF));
+                    count += length;
+                    return;
+                }
+            } else {
+                write(ByteBuffer.wrap(buffer, 0, index), ByteBuffer.wrap(bytes, offset, length));
+                index = 0;
+                count += length;
+                return;
+            }
+        }
+        System.arraycopy(bytes, offset, buffer, index, length);
+        index += length;
+        count += length;
+    }
+
+    /**
+     * Write a String of header characters.
+     *
+     * <p>
+     * The characters are put in the buffer directly as ISO-8859-1, without
+     * encoding the String to a byte array first. A character outside of
+     * ISO-8859-1 is written as <code>?</code>, and a control character other
+     * than a horizontal tab (including CR and LF) as a space, so a header
+     * value can never end the header line early.
+     * </p>
+     *
+     * @param string the String.
+     * @throws IOException when an I/O error occurs.
+     */
+    void writeAscii(String string) throws IOException {
+        int length = string.length();
+        for (int i = 0; i < length; i++) {
+            if (index == capacity()) {
+                flushBuffer(false);
+            }
+            char c = string.charAt(i);
+            if (c > 0xFF) {
+                c = '?';
+            } else if (c < 0x20 && c != '\t' || c == 0x7F) {
+                c = ' ';
+            }
+            buffer[index++] = (byte) c;
+        }
+        count += length;
+    }
+
+    /**
+     * {@return the capacity of the buffer for the bytes being written}
+     */
+    private int capacity() {
+        return chunkStart == -1 ? buffer.length : buffer.length - CHUNK_TRAILER;
+    }
+
+    /**
+     * Write the byte buffers, using one gathering write if possible.
+     *
+     * @param buffers the byte buffers.
+     * @throws IOException when an I/O error occurs.
+     */
+    private void write(ByteBuffer... buffers) throws IOException {
+        timeout.schedule(writeTimeout);
+        try {
+            if (channel != null) {
+                long remaining = 0;
+                for (ByteBuffer byteBuffer : buffers) {
+                    remaining += byteBuffer.remaining();
+                }
+                while (remaining > 0) {
+                    remaining -= channel.write(buffers);
+                }
+            } else {
+                for (ByteBuffer byteBuffer : buffers) {
+                    output.write(byteBuffer.array(), byteBuffer.arrayOffset() + byteBuffer.position(), byteBuffer.remaining());
+                }
+            }
+        } finally {
+            timeout.cancel();
+        }
+    }
+
+    /**
+     * Write a part of the buffer to the underlying output stream.
+     *
+     * @param offset the offset.
+     * @param length the length.
+     * @throws IOException when an I/O error occurs.
+     */
+    private void writeBuffer(int offset, int length) throws IOException {
+        timeout.schedule(writeTimeout);
+        try {
+            output.write(buffer, offset, length);
+        } finally {
+            timeout.cancel();
+        }
+    }
+
+    /**
+     * Write the buffer to the underlying output stream.
+     *
+     * <p>
+     * When the body is chunked the bytes written since the reserved chunk
+     * header become a chunk. Its size line is put right in front of it and any
+     * bytes in front of the chunk header (e.g. the response head) are moved up
+     * against it, so everything is written at once.
+     * </p>
+     *
+     * @param last true if the last chunk should be written.
+     * @throws IOException when an I/O error occurs.
+     */
+    private void flushBuffer(boolean last) throws IOException {
+        if (chunkStart == -1) {
+            if (index > 0) {
+                writeBuffer(0, index);
+                index = 0;
+            }
+            return;
+        }
+        int start = chunkStart + CHUNK_HEADER;
+        int length = index - start;
+        if (length == 0 && !last) {
+            if (chunkStart > 0) {
+                writeBuffer(0, chunkStart);
+                System.arraycopy(buffer, chunkStart, buffer, 0, CHUNK_HEADER);
+                chunkStart = 0;
+                index = CHUNK_HEADER;
+            }
+            return;
+        }
+        if (length > 0) {
+            byte[] size = Integer.toHexString(length).getBytes(StandardCharsets.US_ASCII);
+            start -= CRLF.length;
+            System.arraycopy(CRLF, 0, buffer, start, CRLF.length);
+            start -= size.length;
+            System.arraycopy(size, 0, buffer, start, size.length);
+            System.arraycopy(CRLF, 0, buffer, index, CRLF.length);
+            index += CRLF.length;
+        }
+        if (last) {
+            System.arraycopy(LAST_CHUNK, 0, buffer, index, LAST_CHUNK.length);
+            index += LAST_CHUNK.length;
+        }
+        if (chunkStart > 0) {
+            System.arraycopy(buffer, 0, buffer, start - chunkStart, chunkStart);
+            start -= chunkStart;
+        }
+        writeBuffer(start, index - start);
+        chunkStart = 0;
+        index = CHUNK_HEADER;
+    }
+}
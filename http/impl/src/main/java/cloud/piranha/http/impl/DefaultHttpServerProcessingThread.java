@@ -27,11 +27,13 @@
  */
 package cloud.piranha.http.impl;
 
+import static java.lang.System.Logger.Level.DEBUG;
 import static java.lang.System.Logger.Level.WARNING;
 
 import java.io.IOException;
-import java.net.Socket;
+import java.io.OutputStream;
 import java.lang.System.Logger;
+import java.nio.charset.StandardCharsets;
 
 /**
  * A processing thread used by the default implementation of HTTP server.
@@ -39,6 +41,8 @@ import java.lang.System.Logger;
  * <p>
  * This thread is used to process a HTTP Server Request and generate a HTTP
  * Server Response. It does so by giving it to a HTTP Server Processor.
+ * As long as the connection is kept alive it continues with the next request
+ * on the same connection.
  * </p>
  *
  * @author Manfred Riem (mriem@manorrock.com)
@@ -51,25 +55,31 @@ class DefaultHttpServerProcessingThread implements Runnable {
     private static final Logger LOGGER = System.getLogger(
             DefaultHttpServerProcessingThread.class.getPackageName());
 
+    /**
+     * Stores the pre-encoded headers of a rejected request.
+     */
+    private static final byte[] REJECT_HEADERS
+            = "Content-Length: 0\r\nConnection: close\r\n\r\n".getBytes(StandardCharsets.US_ASCII);
+
     /**
      * Stores the server.
      */
     private final DefaultHttpServer server;
 
     /**
-     * Stores the socket.
+     * Stores the connection.
      */
-    private final Socket socket;
+    private final DefaultHttpServerConnection connection;
 
     /**
      * Constructor.
      *
      * @param server the server we are working for.
-     * @param socket the socket we are dealing with.
+     * @param connection the connection we are dealing with.
      */
-    public DefaultHttpServerProcessingThread(DefaultHttpServer server, Socket socket) {
+    public DefaultHttpServerProcessingThread(DefaultHttpServer server, DefaultHttpServerConnection connection) {
         this.server = server;
-        this.socket = socket;
+        this.connection = connection;
     }
 
     /**
@@ -77,37 +87,84 @@ class DefaultHttpServerProcessingThread implements Runnable {
      */
     @Override
     public void run() {
-        boolean async = false;
-        DefaultHttpServerResponse response = null;
+        server.queued.decrementAndGet();
+        server.active.incrementAndGet();
         try {
-            DefaultHttpServerRequest request = new DefaultHttpServerRequest(socket);
-            response = new DefaultHttpServerResponse(socket);
-            async = server.processor.process(request, response);
+            processConnection();
         } finally {
-            if (!async) {
-                try {
-                    socket.shutdownInput();
+            server.active.decrementAndGet();
+        }
+    }
 
-                    // Give the client a chance to start reading the stream.
-                    // If we disconnect right away the client may get an
-                    // Unexpected Exception: java.net.SocketException: Connection reset
-                    //
-                    // If we don't disconnect the client may hang.
+    /**
+     * Process the requests on the connection for as long as it is kept alive.
+     */
+    private void processConnection() {
+        boolean next = true;
+        while (next) {
+            next = false;
+            DefaultHttpServerRequest request;
+            try {
+                connection.setIdle(true);
+                if (server.serverStopRequest) {
+                    connection.close();
+                    return;
+                }
+                connection.awaitRequest();
+                request = new DefaultHttpServerRequest(connection);
+                connection.setIdle(false);
+                int error = request.getError();
+                if (error == 0 && server.maxBodySize >= 0 && request.getBodyLength() > server.maxBodySize) {
+                    error = 413;
+                }
+                if (error != 0) {
+                    reject(error);
+                    server.closeConnection(connection);
+                    return;
+                }
+                if (request.getMethod() == null) {
+                    connection.close();
+                    return;
+                }
+                connection.incrementRequestCount();
+            } catch (IOException exception) {
+                LOGGER.log(connection.isExpired() || server.serverStopRequest ? DEBUG : WARNING,
+                        "An I/O error occurred while reading the request", exception);
+                connection.close();
+                return;
+            }
+            DefaultHttpServerResponse response = new DefaultHttpServerResponse(server, connection, request);
+            boolean async = false;
+            boolean failed = true;
+            try {
+                async = server.processor.process(request, response);
+                failed = false;
+            } finally {
+                if (failed) {
+                    connection.close();
+                } else if (!async || response.release()) {
                     try {
-                        Thread.sleep(5);
-                    } catch (InterruptedException e) {
-                        Thread.currentThread().interrupt();
+                        response.finishResponse();
+                        next = server.completed(connection, response.isKeepAlive());
+                    } catch (IOException exception) {
+                        LOGGER.log(WARNING, "An I/O error occurred during processing of the request", exception);
+                        connection.close();
                     }
-
-                    if (response != null) {
-                        response.closeResponse();
-                    } else {
-                        socket.close();
-                    }
-                } catch (IOException exception) {
-                    LOGGER.log(WARNING, "An I/O error occurred during processing of the request", exception);
                 }
             }
         }
     }
+
+    /**
+     * Reject a request with an invalid request head or a too large body.
+     *
+     * @param status the status.
+     * @throws IOException when an I/O error occurs.
+     */
+    private void reject(int status) throws IOException {
+        OutputStream outputStream = connection.getOutputStream();
+        outputStream.write(DefaultHttpServerResponse.getStatusLine(status));
+        outputStream.write(REJECT_HEADERS);
+        outputStream.flush();
+    }
 }
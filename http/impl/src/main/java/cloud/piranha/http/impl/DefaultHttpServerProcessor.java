@@ -27,14 +27,18 @@
  */
 package cloud.piranha.http.impl;
 
-import java.io.BufferedInputStream;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
-import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.PrintWriter;
 import java.lang.System.Logger;
+import java.nio.channels.FileChannel;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.Locale;
 
 import cloud.piranha.http.api.HttpServerProcessor;
 import cloud.piranha.http.api.HttpServerRequest;
@@ -51,6 +55,14 @@ import static java.lang.System.Logger.Level.ERROR;
  * will return a 404 error because neither could be found.
  * </p>
  *
+ * <p>
+ * Files are served with a Content-Length, an ETag and a Last-Modified header.
+ * Conditional GET requests (If-None-Match and If-Modified-Since) are answered
+ * with a 304 when the file did not change, and a single byte range (Range and
+ * If-Range) is answered with a 206. The file itself is transferred to the
+ * socket without copying it through user space when the server supports it.
+ * </p>
+ *
  * @author Manfred Riem (mriem@manorrock.com)
  */
 public class DefaultHttpServerProcessor implements HttpServerProcessor {
@@ -66,6 +78,17 @@ public class DefaultHttpServerProcessor implements HttpServerProcessor {
      */
     private static final String IO_ERROR_WRITING_RESPONSE = "An I/O error occurred while writing the response";
 
+    /**
+     * Stores the HTTP-date formatter.
+     */
+    private static final DateTimeFormatter HTTP_DATE = DateTimeFormatter.ofPattern(
+            "EEE, dd MMM yyyy HH:mm:ss 'GMT'", Locale.US).withZone(ZoneOffset.UTC);
+
+    /**
+     * Stores the range used to signal an unsatisfiable range.
+     */
+    private static final long[] UNSATISFIABLE = new long[0];
+
     /**
      * @see HttpServerProcessor#process(cloud.piranha.http.api.HttpServerRequest,
      * cloud.piranha.http.api.HttpServerResponse)
@@ -104,23 +127,7 @@ public class DefaultHttpServerProcessor implements HttpServerProcessor {
                 LOGGER.log(ERROR, IO_ERROR_WRITING_RESPONSE, exception);
             }
         } else if (file.exists() && !file.isDirectory()) {
-            response.setHeader("Content-Type", "application/octet-stream");
-            response.setHeader("Content-Length", Long.toString(file.length()));
-            try {
-                response.writeStatusLine();
-                response.writeHeaders();
-                OutputStream outputStream = response.getOutputStream();
-                try (InputStream inputStream = new BufferedInputStream(new FileInputStream(file))) {
-                    int read = inputStream.read();
-                    while (read != -1) {
-                        outputStream.write((char) read);
-                        read = inputStream.read();
-                    }
-                    outputStream.flush();
-                }
-            } catch (IOException exception) {
-                LOGGER.log(ERROR, IO_ERROR_WRITING_RESPONSE, exception);
-            }
+            processFile(request, response, file);
         } else {
             try {
                 response.setStatus(404);
@@ -133,4 +140,198 @@ public class DefaultHttpServerProcessor implements HttpServerProcessor {
 
         return false;
     }
+
+    /**
+     * Does the entity tag match any of the entity tags in the header.
+     *
+     * @param header the If-None-Match header.
+     * @param etag the entity tag.
+     * @return true if it does, false otherwise.
+     */
+    private boolean matchesEtag(String header, String etag) {
+        for (String candidate : header.split(",")) {
+            candidate = candidate.trim();
+            if (candidate.startsWith("W/")) {
+                candidate = candidate.substring(2);
+            }
+            if (candidate.equals("*") || candidate.equals(etag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Has the file not been modified according to the conditional headers.
+     *
+     * @param request the request.
+     * @param etag the entity tag of the file.
+     * @param lastModified the last modified time of the file.
+     * @return true if it has not, false otherwise.
+     */
+    private boolean isNotModified(HttpServerRequest request, String etag, long lastModified) {
+        if (!"GET".equals(request.getMethod()) && !"HEAD".equals(request.getMethod())) {
+            return false;
+        }
+        String ifNoneMatch = request.getHeader("If-None-Match");
+        if (ifNoneMatch != null) {
+            return matchesEtag(ifNoneMatch, etag);
+        }
+        String ifModifiedSince = request.getHeader("If-Modified-Since");
+        if (ifModifiedSince != null) {
+            long since = parseDate(ifModifiedSince);
+            return since != -1 && lastModified <= since;
+        }
+        return false;
+    }
+
+    /**
+     * Does the Range header of the request apply.
+     *
+     * <p>
+     * A Range header only applies to a GET request, and when an If-Range
+     * header is present only if it matches the current entity tag or last
+     * modified time of the file.
+     * </p>
+     *
+     * @param request the request.
+     * @param etag the entity tag of the file.
+     * @param lastModified the last modified time of the file.
+     * @return true if it does, false otherwise.
+     */
+    private boolean isRangeApplicable(HttpServerRequest request, String etag, long lastModified) {
+        if (!"GET".equals(request.getMethod())) {
+            return false;
+        }
+        String ifRange = request.getHeader("If-Range");
+        if (ifRange == null) {
+            return true;
+        }
+        ifRange = ifRange.trim();
+        if (ifRange.startsWith("\"")) {
+            return ifRange.equals(etag);
+        }
+        return parseDate(ifRange) == lastModified;
+    }
+
+    /**
+     * Parse a HTTP-date.
+     *
+     * @param value the value.
+     * @return the time in milliseconds, or -1 if the value is not a valid
+     * HTTP-date.
+     */
+    private long parseDate(String value) {
+        try {
+            return ZonedDateTime.parse(value.trim(), DateTimeFormatter.RFC_1123_DATE_TIME)
+                    .toInstant().toEpochMilli();
+        } catch (DateTimeParseException dtpe) {
+            return -1;
+        }
+    }
+
+    /**
+     * Parse a Range header.
+     *
+     * <p>
+     * Only a single byte range is supported. A header asking for multiple
+     * ranges is ignored, so the complete file is sent instead, which is
+     * allowed by RFC 7233.
+     * </p>
+     *
+     * @param range the Range header.
+     * @param length the length of the file.
+     * @return the first and last byte position, UNSATISFIABLE if the range
+     * cannot be satisfied, or null if the header should be ignored.
+     */
+    private long[] parseRange(String range, long length) {
+        range = range.trim();
+        if (!range.startsWith("bytes=") || range.indexOf(',') != -1) {
+            return null;
+        }
+        int dash = range.indexOf('-');
+        if (dash == -1) {
+            return null;
+        }
+        String first = range.substring(6, dash).trim();
+        String last = range.substring(dash + 1).trim();
+        try {
+            if (first.isEmpty()) {
+                long suffix = Long.parseLong(last);
+                if (suffix < 0) {
+                    return null;
+                }
+                if (suffix == 0 || length == 0) {
+                    return UNSATISFIABLE;
+                }
+                return new long[]{Math.max(0, length - suffix), length - 1};
+            }
+            long start = Long.parseLong(first);
+            long end = last.isEmpty() ? Long.MAX_VALUE : Long.parseLong(last);
+            if (start < 0 || end < start) {
+                return null;
+            }
+            if (start >= length) {
+                return UNSATISFIABLE;
+            }
+            return new long[]{start, Math.min(end, length - 1)};
+        } catch (NumberFormatException nfe) {
+            return null;
+        }
+    }
+
+    /**
+     * Process the request for a file.
+     *
+     * @param request the request.
+     * @param response the response.
+     * @param file the file.
+     */
+    private void processFile(HttpServerRequest request, HttpServerResponse response, File file) {
+        long length = file.length();
+        long modified = file.lastModified();
+        String etag = "\"" + Long.toHexString(length) + "-" + Long.toHexString(modified) + "\"";
+        long lastModified = modified / 1000 * 1000;
+        response.setHeader("Accept-Ranges", "bytes");
+        response.setHeader("ETag", etag);
+        response.setHeader("Last-Modified", HTTP_DATE.format(Instant.ofEpochMilli(lastModified)));
+        try (FileChannel fileChannel = FileChannel.open(file.toPath())) {
+            if (isNotModified(request, etag, lastModified)) {
+                response.setStatus(304);
+                response.writeStatusLine();
+                response.writeHeaders();
+                return;
+            }
+            long start = 0;
+            long count = length;
+            String rangeHeader = request.getHeader("Range");
+            if (rangeHeader != null && isRangeApplicable(request, etag, lastModified)) {
+                long[] range = parseRange(rangeHeader, length);
+                if (range == UNSATISFIABLE) {
+                    response.setStatus(416);
+                    response.setHeader("Content-Range", "bytes */" + length);
+                    response.setHeader("Content-Length", "0");
+                    response.writeStatusLine();
+                    response.writeHeaders();
+                    return;
+                }
+                if (range != null) {
+                    start = range[0];
+                    count = range[1] - range[0] + 1;
+                    response.setStatus(206);
+                    response.setHeader("Content-Range", "bytes " + range[0] + "-" + range[1] + "/" + length);
+                }
+            }
+            response.setHeader("Content-Type", "application/octet-stream");
+            response.setHeader("Content-Length", Long.toString(count));
+            response.writeStatusLine();
+            response.writeHeaders();
+            if (!"HEAD".equals(request.getMethod()) && count > 0) {
+                response.writeFile(fileChannel, start, count);
+                response.getOutputStream().flush();
+            }
+        } catch (IOException exception) {
+            LOGGER.log(ERROR, IO_ERROR_WRITING_RESPONSE, exception);
+        }
+    }
 }
@@ -39,12 +39,22 @@ import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
 import static java.lang.System.Logger.Level.WARNING;
+import static java.nio.charset.StandardCharsets.ISO_8859_1;
 import java.lang.System.Logger;
 
 /**
  * The default implementation of HTTP Server Request.
  *
+ * <p>
+ * The request keeps a copy of the bytes of its request head together with the
+ * offsets of the header fields. Strings for header names and values are only
+ * created when they are asked for.
+ * </p>
+ *
  * @author Manfred Riem (mriem@manorrock.com)
  */
 public class DefaultHttpServerRequest implements HttpServerRequest {
@@ -56,9 +66,60 @@ public class DefaultHttpServerRequest implements HttpServerRequest {
             DefaultHttpServerRequest.class.getPackageName());
 
     /**
-     * Stores the headers.
+     * Stores the well known methods.
+     */
+    private static final String[] METHODS = {"GET", "POST", "HEAD", "PUT", "DELETE", "OPTIONS", "PATCH", "TRACE"};
+
+    /**
+     * Stores the well known protocols.
+     */
+    private static final String[] PROTOCOLS = {"HTTP/1.1", "HTTP/1.0"};
+
+    /**
+     * Stores the maximum number of unread request body bytes that are skipped
+     * to keep the connection open.
+     */
+    private static final int MAX_SKIP = 65536;
+
+    /**
+     * Stores the length of the request body (-1 if it is chunked).
+     */
+    private long bodyLength;
+
+    /**
+     * Stores the connection.
+     */
+    private final DefaultHttpServerConnection connection;
+
+    /**
+     * Stores the error status of the request head (0 if there is no error).
+     */
+    private int error;
+
+    /**
+     * Stores the bytes of the request head.
+     */
+    private byte[] head;
+
+    /**
+     * Stores the number of parsed header fields.
+     */
+    private int headerCount;
+
+    /**
+     * Stores the offsets of the parsed header fields.
+     */
+    private int[] headerOffsets;
+
+    /**
+     * Stores the header values created so far.
+     */
+    private String[] headerValues;
+
+    /**
+     * Stores the headers that were added after parsing.
      */
-    private final Map<String, List<String>> headers;
+    private Map<String, List<String>> headers;
 
     /**
      * Stores the input stream.
@@ -85,11 +146,6 @@ public class DefaultHttpServerRequest implements HttpServerRequest {
      */
     private String requestTarget;
 
-    /**
-     * Stores the socket.
-     */
-    private final Socket socket;
-
     /**
      * Stores the protocol
      */
@@ -101,8 +157,24 @@ public class DefaultHttpServerRequest implements HttpServerRequest {
      * @param socket the socket.
      */
     public DefaultHttpServerRequest(Socket socket) {
-        this.headers = new HashMap<>(1);
-        this.socket = socket;
+        this.connection = new DefaultHttpServerConnection(socket);
+        protocol = "HTTP/1.1";
+        try {
+            parse();
+        } catch (IOException exception) {
+            LOGGER.log(WARNING, "An I/O error occurred while parsing the request", exception);
+        }
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param connection the connection.
+     * @throws IOException when an I/O error occurs while reading the request
+     * head.
+     */
+    DefaultHttpServerRequest(DefaultHttpServerConnection connection) throws IOException {
+        this.connection = connection;
         protocol = "HTTP/1.1";
         parse();
     }
@@ -114,34 +186,59 @@ public class DefaultHttpServerRequest implements HttpServerRequest {
      * @param value the value.
      */
     public void addHeader(String name, String value) {
-        if (!headers.containsKey(name)) {
-            ArrayList<String> values = new ArrayList<>();
-            values.add(value);
-            headers.put(name, values);
-        } else {
-            headers.get(name).add(value);
+        if (headers == null) {
+            headers = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
         }
+        headers.computeIfAbsent(name, key -> new ArrayList<>()).add(value);
     }
 
     @Override
     public String getHeader(String name) {
-        String header = null;
-        if (headers.get(name) != null) {
-            header = headers.get(name).isEmpty() ? null : headers.get(name).get(0);
+        for (int i = 0; i < headerCount; i++) {
+            if (isHeaderName(i, name)) {
+                return getHeaderValue(i);
+            }
         }
-        return header;
+        if (headers != null && headers.get(name) != null) {
+            return headers.get(name).isEmpty() ? null : headers.get(name).get(0);
+        }
+        return null;
     }
 
     @Override
     public Iterator<String> getHeaderNames() {
-        return headers.keySet().iterator();
+        Set<String> names = new TreeSet<>(String.CASE_INSENSITIVE_ORDER);
+        for (int i = 0; i < headerCount; i++) {
+            int offset = i * 4;
+            names.add(new String(head, headerOffsets[offset],
+                    headerOffsets[offset + 1] - headerOffsets[offset], ISO_8859_1));
+        }
+        if (headers != null) {
+            names.addAll(headers.keySet());
+        }
+        return names.iterator();
     }
 
     @Override
     public Iterator<String> getHeaders(String name) {
-        return headers.get(name) == null
-                ? Collections.EMPTY_LIST.iterator()
-                : headers.get(name).iterator();
+        List<String> values = null;
+        for (int i = 0; i < headerCount; i++) {
+            if (isHeaderName(i, name)) {
+                if (values == null) {
+                    values = new ArrayList<>(2);
+                }
+                values.add(getHeaderValue(i));
+            }
+        }
+        if (headers != null && headers.get(name) != null) {
+            if (values == null) {
+                return headers.get(name).iterator();
+            }
+            values.addAll(headers.get(name));
+        }
+        return values == null
+                ? Collections.emptyIterator()
+                : values.iterator();
     }
 
     @Override
@@ -150,7 +247,13 @@ public class DefaultHttpServerRequest implements HttpServerRequest {
 
         if (inputStream == null) {
             try {
-                inputStream = socket.getInputStream();
+                if (bodyLength == -1) {
+                    inputStream = new DefaultHttpServerChunkedInputStream(
+                            connection.getInputStream(), connection.getMaxBodySize());
+                } else {
+                    inputStream = new DefaultHttpServerLengthInputStream(
+                            connection.getInputStream(), bodyLength);
+                }
                 result = inputStream;
             } catch (IOException exception) {
                 LOGGER.log(WARNING, "An I/O error occurred while acquiring input stream", exception);
@@ -162,17 +265,17 @@ public class DefaultHttpServerRequest implements HttpServerRequest {
 
     @Override
     public String getLocalAddress() {
-        return socket.getLocalAddress().getHostAddress();
+        return connection.getSocket().getLocalAddress().getHostAddress();
     }
 
     @Override
     public String getLocalHostname() {
-        return socket.getLocalAddress().getHostName();
+        return connection.getSocket().getLocalAddress().getHostName();
     }
 
     @Override
     public int getLocalPort() {
-        return socket.getLocalPort();
+        return connection.getSocket().getLocalPort();
     }
 
     @Override
@@ -219,17 +322,17 @@ public class DefaultHttpServerRequest implements HttpServerRequest {
 
     @Override
     public String getRemoteAddress() {
-        return socket.getInetAddress().getHostAddress();
+        return connection.getSocket().getInetAddress().getHostAddress();
     }
 
     @Override
     public String getRemoteHostname() {
-        return socket.getInetAddress().getHostName();
+        return connection.getSocket().getInetAddress().getHostName();
     }
 
     @Override
     public int getRemotePort() {
-        return socket.getPort();
+        return connection.getSocket().getPort();
     }
 
     @Override
@@ -237,6 +340,76 @@ public class DefaultHttpServerRequest implements HttpServerRequest {
         return requestTarget;
     }
 
+    /**
+     * Finish the request body.
+     *
+     * <p>
+     * Whatever the processor did not read of the request body is skipped, so
+     * the connection is positioned at the next request.
+     * </p>
+     *
+     * @return true if the connection is positioned at the next request, false
+     * if the request body could not be skipped.
+     */
+    boolean finishBody() {
+        if (bodyLength == 0) {
+            return true;
+        }
+        InputStream input = getInputStream();
+        if (input == null) {
+            return false;
+        }
+        try {
+            if (input.read() == -1) {
+                return true;
+            }
+            byte[] skip = new byte[DefaultHttpServerConnection.BUFFER_SIZE];
+            long skipped = 1;
+            int read = input.read(skip);
+            while (read != -1) {
+                skipped += read;
+                if (skipped > MAX_SKIP) {
+                    return false;
+                }
+                read = input.read(skip);
+            }
+            return true;
+        } catch (IOException ioe) {
+            return false;
+        }
+    }
+
+    /**
+     * {@return the length of the request body, or -1 if it is chunked}
+     */
+    long getBodyLength() {
+        return bodyLength;
+    }
+
+    /**
+     * Does the client want to keep the connection open after this request.
+     *
+     * <p>
+     * A HTTP/1.1 connection is persistent unless the client sends
+     * <code>Connection: close</code>, a HTTP/1.0 connection is only persistent
+     * if the client sends <code>Connection: keep-alive</code>.
+     * </p>
+     *
+     * @return true if it does, false otherwise.
+     */
+    boolean isKeepAlive() {
+        Iterator<String> values = getHeaders("Connection");
+        boolean close = false;
+        boolean keepAlive = false;
+        while (values.hasNext()) {
+            for (String token : values.next().split(",")) {
+                close |= "close".equalsIgnoreCase(token.trim());
+                keepAlive |= "keep-alive".equalsIgnoreCase(token.trim());
+            }
+        }
+        return !close && ("HTTP/1.1".equals(protocol) || keepAlive);
+    }
+
     /**
      * Set the method.
      *
@@ -255,73 +428,151 @@ public class DefaultHttpServerRequest implements HttpServerRequest {
         this.requestTarget = requestTarget;
     }
 
+    /**
+     * {@return the error status of the request head, or 0 if there is no
+     * error}
+     */
+    int getError() {
+        return error;
+    }
+
+    /**
+     * Get the value of a parsed header field.
+     *
+     * @param index the index of the header field.
+     * @return the value.
+     */
+    private String getHeaderValue(int index) {
+        if (headerValues == null) {
+            headerValues = new String[headerCount];
+        }
+        if (headerValues[index] == null) {
+            int offset = index * 4 + 2;
+            headerValues[index] = new String(head, headerOffsets[offset],
+                    headerOffsets[offset + 1] - headerOffsets[offset], ISO_8859_1);
+        }
+        return headerValues[index];
+    }
+
+    /**
+     * Does the parsed header field have the given name.
+     *
+     * @param index the index of the header field.
+     * @param name the name (compared case-insensitively).
+     * @return true if it does, false otherwise.
+     */
+    private boolean isHeaderName(int index, String name) {
+        int start = headerOffsets[index * 4];
+        int length = headerOffsets[index * 4 + 1] - start;
+        if (length != name.length()) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            int c = head[start + i];
+            int n = name.charAt(i);
+            if (c != n && Character.toLowerCase(c) != Character.toLowerCase(n)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
     /**
      * Parse the request.
      *
+     * @throws IOException when an I/O error occurs.
      */
-    private void parse() {
+    private void parse() throws IOException {
+        DefaultHttpServerRequestParser parser = connection.getParser();
         try {
-            InputStream parseStream = socket.getInputStream();
-            StringBuilder line = new StringBuilder();
-            int read = parseStream.read();
-            boolean requestLineParsed = false;
-            if (read != -1) {
-                while (read != -1 && parseStream.available() > 0) {
-                    if ('\r' != (char) read) {
-                        line.append((char) read);
-                    }
-                    read = parseStream.read();
-                    if ('\n' == (char) read) {
-                        if (line.length() > 0) {
-                            if (!requestLineParsed) {
-                                parseRequestLine(line.toString());
-                                requestLineParsed = true;
-                            } else {
-                                parseHeader(line.toString());
-                            }
-                            line = new StringBuilder();
-                            read = parseStream.read();
-                        } else {
-                            read = -1;
-                        }
-                    }
+            if (connection.readRequestHead()) {
+                error = parser.getError();
+                if (error == 0) {
+                    head = connection.takeRequestHead();
+                    headerCount = parser.getHeaderCount();
+                    headerOffsets = parser.getHeaderOffsets();
+                    method = toString(METHODS, parser.getMethodStart(), parser.getMethodEnd());
+                    protocol = toString(PROTOCOLS, parser.getProtocolStart(), parser.getProtocolEnd());
+                    parseRequestTarget(parser.getTargetStart(), parser.getTargetEnd());
+                    parseBodyLength();
                 }
             }
-        } catch (IOException exception) {
-            LOGGER.log(WARNING, "An I/O error occurred while parsing the request", exception);
+        } finally {
+            parser.reset();
         }
     }
 
     /**
-     * Parse the header.
-     *
-     * @param line the header line.
+     * Parse the length of the request body from the Transfer-Encoding and
+     * Content-Length headers.
      */
-    private void parseHeader(String line) {
-        String name = line.substring(0, line.indexOf(':')).trim();
-        String value = line.substring(line.indexOf(':') + 1).trim();
-        addHeader(name, value);
+    private void parseBodyLength() {
+        String transferEncoding = getHeader("Transfer-Encoding");
+        if (transferEncoding != null) {
+            String[] codings = transferEncoding.split(",");
+            if ("chunked".equalsIgnoreCase(codings[codings.length - 1].trim())) {
+                bodyLength = -1;
+            } else {
+                error = 400;
+            }
+            return;
+        }
+        Iterator<String> values = getHeaders("Content-Length");
+        while (values.hasNext()) {
+            try {
+                long length = Long.parseLong(values.next().trim());
+                if (length < 0 || bodyLength != 0 && bodyLength != length) {
+                    error = 400;
+                    return;
+                }
+                bodyLength = length;
+            } catch (NumberFormatException nfe) {
+                error = 400;
+                return;
+            }
+        }
     }
 
     /**
-     * Parse the request line.
+     * Parse the request target.
      *
-     * @param line the request line.
-     */
-    private void parseRequestLine(String line) {
-        int index = line.indexOf(' ');
-        setMethod(line.substring(0, index));
-        line = line.substring(index + 1);
-        index = line.indexOf(' ');
-        requestTarget = line.substring(0, index);
-        if (requestTarget.contains("?")) {
-            queryString = requestTarget.substring(requestTarget.indexOf("?") + 1);
-            requestTarget = requestTarget.substring(0, requestTarget.indexOf("?"));
+     * @param start the start of the request target.
+     * @param end the end of the request target.
+     */
+    private void parseRequestTarget(int start, int end) {
+        int query = start;
+        while (query < end && head[query] != '?') {
+            query++;
         }
-        String protocolRequestLine = line.substring(index + 1);
-        if (!protocol.isEmpty()) {
-            protocol = protocolRequestLine;
+        requestTarget = new String(head, start, query - start, ISO_8859_1);
+        if (query < end) {
+            queryString = new String(head, query + 1, end - query - 1, ISO_8859_1);
+        }
+    }
+
+    /**
+     * Convert a part of the request head to a String, reusing a well known
+     * value if it matches.
+     *
+     * @param values the well known values.
+     * @param start the start.
+     * @param end the end.
+     * @return the String.
+     */
+    private String toString(String[] values, int start, int end) {
+        int length = end - start;
+        for (String value : values) {
+            if (value.length() == length) {
+                int i = 0;
+                while (i < length && head[start + i] == value.charAt(i)) {
+                    i++;
+                }
+                if (i == length) {
+                    return value;
+                }
+            }
         }
+        return new String(head, start, length, ISO_8859_1);
     }
 
     @Override
@@ -0,0 +1,412 @@
+/*
+ * Copyright (c) 2002-2021 Manorrock.com. All Rights Reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   1. Redistributions of source code must retain the above copyright notice,
+ *      this list of conditions and the following disclaimer.
+ *   2. Redistributions in binary form must reproduce the above copyright
+ *      notice, this list of conditions and the following disclaimer in the
+ *      documentation and/or other materials provided with the distribution.
+ *   3. Neither the name of the copyright holder nor the names of its
+ *      contributors may be used to endorse or promote products derived from
+ *      this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package cloud.piranha.http.impl;
+
+import java.util.Arrays;
+
+/**
+ * The request head parser used by the default implementation of HTTP server.
+ *
+ * <p>
+ * The parser is a state machine that works directly on the read buffer of a
+ * connection. It records the offsets of the request line and header fields
+ * relative to the start of the request head, so it can resume where it left
+ * off when more bytes arrive and no Strings are created while parsing. The
+ * size of the request head and the number of header fields are limited.
+ * </p>
+ *
+ * @author Manfred Riem (mriem@manorrock.com)
+ */
+class DefaultHttpServerRequestParser {
+
+    /**
+     * Stores the state while skipping empty lines before the request line.
+     */
+    private static final int START = 0;
+
+    /**
+     * Stores the state while parsing the method.
+     */
+    private static final int METHOD = 1;
+
+    /**
+     * Stores the state while parsing the request target.
+     */
+    private static final int TARGET = 2;
+
+    /**
+     * Stores the state while parsing the protocol.
+     */
+    private static final int PROTOCOL = 3;
+
+    /**
+     * Stores the state at the start of a header line.
+     */
+    private static final int LINE_START = 4;
+
+    /**
+     * Stores the state while parsing a header name.
+     */
+    private static final int NAME = 5;
+
+    /**
+     * Stores the state while parsing a header value.
+     */
+    private static final int VALUE = 6;
+
+    /**
+     * Stores the state once the request head is complete.
+     */
+    private static final int DONE = 7;
+
+    /**
+     * Stores the error status (0 if there is no error).
+     */
+    private int error;
+
+    /**
+     * Stores the number of header fields.
+     */
+    private int headerCount;
+
+    /**
+     * Stores the header offsets (name start, name end, value start and value
+     * end for every header field).
+     */
+    private int[] headerOffsets;
+
+    /**
+     * Stores the index of the next byte to parse.
+     */
+    private int index;
+
+    /**
+     * Stores the maximum number of header fields.
+     */
+    private final int maxHeaderCount;
+
+    /**
+     * Stores the maximum size of the request head.
+     */
+    private final int maxHeaderSize;
+
+    /**
+     * Stores the end of the method.
+     */
+    private int methodEnd;
+
+    /**
+     * Stores the start of the method.
+     */
+    private int methodStart;
+
+    /**
+     * Stores the end of the current header name.
+     */
+    private int nameEnd;
+
+    /**
+     * Stores the start of the current header name.
+     */
+    private int nameStart;
+
+    /**
+     * Stores the end of the protocol.
+     */
+    private int protocolEnd;
+
+    /**
+     * Stores the start of the protocol.
+     */
+    private int protocolStart;
+
+    /**
+     * Stores the state.
+     */
+    private int state;
+
+    /**
+     * Stores the end of the request target.
+     */
+    private int targetEnd;
+
+    /**
+     * Stores the start of the request target.
+     */
+    private int targetStart;
+
+    /**
+     * Stores the end of the current header value.
+     */
+    private int valueEnd;
+
+    /**
+     * Stores the start of the current header value (-1 while not found).
+     */
+    private int valueStart;
+
+    /**
+     * Constructor.
+     *
+     * @param maxHeaderSize the maximum size of the request head.
+     * @param maxHeaderCount the maximum number of header fields.
+     */
+    DefaultHttpServerRequestParser(int maxHeaderSize, int maxHeaderCount) {
+        this.headerOffsets = new int[64];
+        this.maxHeaderCount = maxHeaderCount;
+        this.maxHeaderSize = maxHeaderSize;
+    }
+
+    /**
+     * {@return the error status, or 0 if the request head is valid}
+     */
+    int getError() {
+        return error;
+    }
+
+    /**
+     * {@return the number of header fields}
+     */
+    int getHeaderCount() {
+        return headerCount;
+    }
+
+    /**
+     * {@return a copy of the header offsets}
+     */
+    int[] getHeaderOffsets() {
+        return Arrays.copyOf(headerOffsets, headerCount * 4);
+    }
+
+    /**
+     * {@return the length of the request head}
+     */
+    int getHeadLength() {
+        return index;
+    }
+
+    /**
+     * {@return the end of the method}
+     */
+    int getMethodEnd() {
+        return methodEnd;
+    }
+
+    /**
+     * {@return the start of the method}
+     */
+    int getMethodStart() {
+        return methodStart;
+    }
+
+    /**
+     * {@return the end of the protocol}
+     */
+    int getProtocolEnd() {
+        return protocolEnd;
+    }
+
+    /**
+     * {@return the start of the protocol}
+     */
+    int getProtocolStart() {
+        return protocolStart;
+    }
+
+    /**
+     * {@return the end of the request target}
+     */
+    int getTargetEnd() {
+        return targetEnd;
+    }
+
+    /**
+     * {@return the start of the request target}
+     */
+    int getTargetStart() {
+        return targetStart;
+    }
+
+    /**
+     * Parse the bytes that are available.
+     *
+     * <p>
+     * All offsets are relative to the start of the request head, which should
+     * be the same for every call until the parser is reset.
+     * </p>
+     *
+     * @param buffer the buffer.
+     * @param start the start of the request head in the buffer.
+     * @param limit the limit of the valid data in the buffer.
+     * @return true if the request head is complete or invalid, false if more
+     * bytes are needed.
+     */
+    boolean parse(byte[] buffer, int start, int limit) {
+        if (state == DONE) {
+            return true;
+        }
+        int available = Math.min(limit - start, maxHeaderSize);
+        while (index < available) {
+            int b = buffer[start + index] & 0xff;
+            switch (state) {
+                case START -> {
+                    if (b != '\r' && b != '\n') {
+                        if (!isVisible(b)) {
+                            return fail(400);
+                        }
+                        methodStart = index;
+                        state = METHOD;
+                    }
+                }
+                case METHOD -> {
+                    if (b == ' ') {
+                        methodEnd = index;
+                        targetStart = index + 1;
+                        state = TARGET;
+                    } else if (!isVisible(b)) {
+                        return fail(400);
+                    }
+                }
+                case TARGET -> {
+                    if (b == ' ') {
+                        if (index == targetStart) {
+                            return fail(400);
+                        }
+                        targetEnd = index;
+                        protocolStart = index + 1;
+                        state = PROTOCOL;
+                    } else if (!isVisible(b)) {
+                        return fail(400);
+                    }
+                }
+                case PROTOCOL -> {
+                    if (b == '\n') {
+                        protocolEnd = buffer[start + index - 1] == '\r' ? index - 1 : index;
+                        if (protocolEnd == protocolStart) {
+                            return fail(400);
+                        }
+                        state = LINE_START;
+                    } else if (b != '\r' && !isVisible(b)) {
+                        return fail(400);
+                    }
+                }
+                case LINE_START -> {
+                    if (b == '\n') {
+                        index++;
+                        state = DONE;
+                        return true;
+                    } else if (b != '\r') {
+                        if (!isVisible(b) || b == ':') {
+                            return fail(400);
+                        }
+                        if (headerCount == maxHeaderCount) {
+                            return fail(431);
+                        }
+                        nameStart = index;
+                        state = NAME;
+                    }
+                }
+                case NAME -> {
+                    if (b == ':') {
+                        nameEnd = index;
+                        valueStart = -1;
+                        state = VALUE;
+                    } else if (!isVisible(b)) {
+                        return fail(400);
+                    }
+                }
+                case VALUE -> {
+                    if (b == '\n') {
+                        addHeader();
+                        state = LINE_START;
+                    } else if (b != ' ' && b != '\t' && b != '\r') {
+                        if (valueStart == -1) {
+                            valueStart = index;
+                        }
+                        valueEnd = index + 1;
+                    }
+                }
+                default -> {
+                    return fail(400);
+                }
+            }
+            index++;
+        }
+        if (index >= maxHeaderSize) {
+            return fail(431);
+        }
+        return false;
+    }
+
+    /**
+     * Reset the parser so it can parse the next request head.
+     */
+    void reset() {
+        error = 0;
+        headerCount = 0;
+        index = 0;
+        state = START;
+    }
+
+    /**
+     * Add the current header field.
+     */
+    private void addHeader() {
+        if (headerCount * 4 == headerOffsets.length) {
+            headerOffsets = Arrays.copyOf(headerOffsets, headerOffsets.length * 2);
+        }
+        int offset = headerCount * 4;
+        headerOffsets[offset] = nameStart;
+        headerOffsets[offset + 1] = nameEnd;
+        headerOffsets[offset + 2] = valueStart == -1 ? index : valueStart;
+        headerOffsets[offset + 3] = valueStart == -1 ? index : valueEnd;
+        headerCount++;
+    }
+
+    /**
+     * Mark the request head as invalid.
+     *
+     * @param status the error status.
+     * @return true as parsing is finished.
+     */
+    private boolean fail(int status) {
+        error = status;
+        state = DONE;
+        return true;
+    }
+
+    /**
+     * Is the byte a visible US-ASCII character.
+     *
+     * @param b the byte.
+     * @return true if it is, false otherwise.
+     */
+    private static boolean isVisible(int b) {
+        return b > ' ' && b < 0x7f;
+    }
+}
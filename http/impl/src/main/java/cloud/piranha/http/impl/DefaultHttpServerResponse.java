@@ -28,10 +28,12 @@
 package cloud.piranha.http.impl;
 
 import static java.lang.System.Logger.Level.WARNING;
+import static java.nio.charset.StandardCharsets.US_ASCII;
 
 import java.io.IOException;
 import java.io.OutputStream;
 import java.net.Socket;
+import java.nio.channels.FileChannel;
 import java.util.Iterator;
 import java.util.Map;
 import java.lang.System.Logger;
@@ -40,10 +42,18 @@ import cloud.piranha.http.api.HttpServerResponse;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * The default implementation of HTTP Server Response.
  *
+ * <p>
+ * The status line and headers are written to the buffered output stream of
+ * the connection using pre-encoded status lines and header names, so the
+ * response head goes out together with the start of the body.
+ * </p>
+ *
  * @author Manfred Riem (mriem@manorrock.com)
  */
 public class DefaultHttpServerResponse implements HttpServerResponse {
@@ -54,20 +64,92 @@ public class DefaultHttpServerResponse implements HttpServerResponse {
     private static final Logger LOGGER = System.getLogger(
             DefaultHttpServerResponse.class.getPackageName());
 
+    /**
+     * Stores the ": " bytes.
+     */
+    private static final byte[] COLON_SPACE = {':', ' '};
+
+    /**
+     * Stores the CRLF bytes.
+     */
+    private static final byte[] CRLF = {'\r', '\n'};
+
+    /**
+     * Stores the pre-encoded common header names (including ": ").
+     */
+    private static final Map<String, byte[]> HEADER_NAMES = new HashMap<>();
+
+    /**
+     * Stores the pre-encoded status lines (including CRLF).
+     */
+    private static final byte[][] STATUS_LINES = new byte[600][];
+
+    static {
+        for (String name : new String[]{"Cache-Control", "Connection", "Content-Language",
+            "Content-Length", "Content-Range", "Content-Type", "Date", "ETag",
+            "Last-Modified", "Location", "Set-Cookie", "Transfer-Encoding"}) {
+            HEADER_NAMES.put(name, (name + ": ").getBytes(US_ASCII));
+        }
+        for (int status = 100; status < STATUS_LINES.length; status++) {
+            STATUS_LINES[status] = ("HTTP/1.1 " + status + " " + getReasonPhrase(status) + "\r\n").getBytes(US_ASCII);
+        }
+    }
+
+    /**
+     * Stores the number of bytes written before the body started, or -1 if
+     * the headers have not been written.
+     */
+    private long bodyStart;
+
+    /**
+     * Stores the chunked flag.
+     */
+    private boolean chunked;
+
+    /**
+     * Stores the connection.
+     */
+    private final DefaultHttpServerConnection connection;
+
+    /**
+     * Stores the content length, or -1 if the response does not declare one.
+     */
+    private long contentLength;
+
+    /**
+     * Stores the finished flag.
+     */
+    private boolean finished;
+
     /**
      * Stores the headers.
      */
     private final Map<String, List<String>> headers;
 
+    /**
+     * Stores the keep-alive flag.
+     */
+    private boolean keepAlive;
+
     /**
      * Stores the output stream.
      */
-    private OutputStream outputStream;
+    private DefaultHttpServerOutputStream outputStream;
+
+    /**
+     * Stores the released flag.
+     */
+    private final AtomicBoolean released;
+
+    /**
+     * Stores the request (null when used outside of a server).
+     */
+    private final DefaultHttpServerRequest request;
 
     /**
-     * Stores the socket.
+     * Stores the server (null when used outside of a server).
      */
-    private final Socket socket;
+    private final DefaultHttpServer server;
 
     /**
      * Stores the status.
@@ -80,25 +162,50 @@ public class DefaultHttpServerResponse implements HttpServerResponse {
      * @param socket the socket.
      */
     public DefaultHttpServerResponse(Socket socket) {
-        this.headers = new HashMap<>(1);
-        this.socket = socket;
+        this(null, new DefaultHttpServerConnection(socket), null);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param server the server we are working for.
+     * @param connection the connection.
+     * @param request the request we are responding to.
+     */
+    DefaultHttpServerResponse(DefaultHttpServer server,
+            DefaultHttpServerConnection connection, DefaultHttpServerRequest request) {
+        this.bodyStart = -1;
+        this.connection = connection;
+        this.contentLength = -1;
+        this.headers = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+        this.released = new AtomicBoolean();
+        this.request = request;
+        this.server = server;
     }
 
     @Override
     public void addHeader(String name, String value) {
-        List<String> values = headers.get(name);
-        if (values == null) {
-            synchronized (this) {
-                values = new ArrayList<>();
-            }
-        }
-        values.add(value);
+        headers.computeIfAbsent(name, key -> new ArrayList<>()).add(value);
     }
 
+    /**
+     * Close the response.
+     *
+     * <p>
+     * When the response is completed asynchronously the connection is either
+     * closed or kept open for the next request.
+     * </p>
+     *
+     * @throws IOException when an I/O error occurs.
+     */
     @Override
     public void closeResponse() throws IOException {
-        HttpServerResponse.super.closeResponse();
-        socket.close();
+        finishResponse();
+        if (server == null) {
+            connection.close();
+        } else if (release()) {
+            server.resume(connection, keepAlive);
+        }
     }
 
     @Override
@@ -110,7 +217,7 @@ public class DefaultHttpServerResponse implements HttpServerResponse {
     public OutputStream getOutputStream() {
         if (outputStream == null) {
             try {
-                outputStream = socket.getOutputStream();
+                outputStream = connection.getOutputStream();
             } catch (IOException exception) {
                 LOGGER.log(WARNING, () -> "An I/O error occurred while acquiring the output stream", exception);
             }
@@ -119,6 +226,21 @@ public class DefaultHttpServerResponse implements HttpServerResponse {
         return outputStream;
     }
 
+    /**
+     * Is chunked transfer-encoding supported for the response body.
+     *
+     * <p>
+     * Chunked transfer-encoding is supported when responding to a HTTP/1.1
+     * request.
+     * </p>
+     *
+     * @return true if it is, false otherwise.
+     */
+    @Override
+    public boolean isChunkedEncodingSupported() {
+        return request != null && "HTTP/1.1".equals(request.getProtocol());
+    }
+
     @Override
     public void setHeader(String name, String value) {
         ArrayList<String> values = new ArrayList<>();
@@ -138,36 +260,240 @@ public class DefaultHttpServerResponse implements HttpServerResponse {
      * @throws IOException when an I/O error occurs.
      */
     private void writeHeader(String name) throws IOException {
-        OutputStream output = getOutputStream();
-        output.write(name.getBytes());
-        output.write(": ".getBytes());
-        Iterator<String> values = headers.get(name).iterator();
-        while (values.hasNext()) {
-            output.write(values.next().getBytes());
-            if (values.hasNext()) {
-                output.write(",".getBytes());
+        byte[] encodedName = HEADER_NAMES.get(name);
+        for (String value : headers.get(name)) {
+            if (encodedName != null) {
+                outputStream.write(encodedName);
+            } else {
+                outputStream.writeAscii(name);
+                outputStream.write(COLON_SPACE);
             }
+            outputStream.writeAscii(value);
+            outputStream.write(CRLF);
         }
-        output.write("\n".getBytes());
     }
 
     @Override
     public void writeHeaders() throws IOException {
+        String transferEncoding = getHeader("Transfer-Encoding");
+        if (transferEncoding != null && "chunked".equalsIgnoreCase(transferEncoding.trim())) {
+            if (isChunkedEncodingSupported()) {
+                headers.remove("Content-Length");
+                chunked = hasBody();
+                if (!chunked && !"HEAD".equals(request.getMethod())) {
+                    headers.remove("Transfer-Encoding");
+                }
+            } else {
+                headers.remove("Transfer-Encoding");
+            }
+        }
+        keepAlive = isKeepAlivePossible();
+        if (!keepAlive) {
+            setHeader("Connection", "close");
+        } else if (!"HTTP/1.1".equals(request.getProtocol())) {
+            setHeader("Connection", "keep-alive");
+        }
+        getOutputStream();
         Iterator<String> names = headers.keySet().iterator();
         while (names.hasNext()) {
             String name = names.next();
             writeHeader(name);
         }
-        OutputStream output = getOutputStream();
-        output.write("\n".getBytes());
+        outputStream.write(CRLF);
+        if (chunked) {
+            outputStream.startChunking();
+        }
+        bodyStart = outputStream.getCount();
     }
 
     @Override
     public void writeStatusLine() throws IOException {
-        OutputStream output = getOutputStream();
-        output.write("HTTP/1.0".getBytes());
-        output.write(" ".getBytes());
-        output.write(Integer.toString(status).getBytes());
-        output.write("\n".getBytes());
+        getOutputStream().write(getStatusLine(status));
+    }
+
+    /**
+     * Finish the response.
+     *
+     * <p>
+     * This flushes the response and verifies the number of body bytes
+     * written matches what the headers announced, and skips the part of the
+     * request body that was not read. If either fails the connection cannot
+     * be reused.
+     * </p>
+     *
+     * @throws IOException when an I/O error occurs.
+     */
+    void finishResponse() throws IOException {
+        if (finished) {
+            return;
+        }
+        finished = true;
+        if (outputStream != null) {
+            outputStream.finish();
+        }
+        if (keepAlive && !chunked) {
+            long bodyLength = outputStream.getCount() - bodyStart;
+            long expectedLength = hasBody() ? contentLength : 0;
+            keepAlive = bodyLength == expectedLength;
+        }
+        if (keepAlive) {
+            keepAlive = request.finishBody();
+        }
+    }
+
+    /**
+     * Get the status line.
+     *
+     * @param status the status.
+     * @return the encoded status line (including CRLF).
+     */
+    static byte[] getStatusLine(int status) {
+        if (status >= 100 && status < STATUS_LINES.length) {
+            return STATUS_LINES[status];
+        }
+        return ("HTTP/1.1 " + status + " \r\n").getBytes(US_ASCII);
+    }
+
+    /**
+     * Get the reason phrase.
+     *
+     * @param status the status.
+     * @return the reason phrase, or an empty String if the status is not
+     * known.
+     */
+    static String getReasonPhrase(int status) {
+        return switch (status) {
+            case 100 -> "Continue";
+            case 101 -> "Switching Protocols";
+            case 200 -> "OK";
+            case 201 -> "Created";
+            case 202 -> "Accepted";
+            case 204 -> "No Content";
+            case 206 -> "Partial Content";
+            case 301 -> "Moved Permanently";
+            case 302 -> "Found";
+            case 303 -> "See Other";
+            case 304 -> "Not Modified";
+            case 307 -> "Temporary Redirect";
+            case 308 -> "Permanent Redirect";
+            case 400 -> "Bad Request";
+            case 401 -> "Unauthorized";
+            case 403 -> "Forbidden";
+            case 404 -> "Not Found";
+            case 405 -> "Method Not Allowed";
+            case 406 -> "Not Acceptable";
+            case 408 -> "Request Timeout";
+            case 409 -> "Conflict";
+            case 410 -> "Gone";
+            case 411 -> "Length Required";
+            case 412 -> "Precondition Failed";
+            case 413 -> "Payload Too Large";
+            case 414 -> "URI Too Long";
+            case 415 -> "Unsupported Media Type";
+            case 416 -> "Range Not Satisfiable";
+            case 417 -> "Expectation Failed";
+            case 429 -> "Too Many Requests";
+            case 431 -> "Request Header Fields Too Large";
+            case 500 -> "Internal Server Error";
+            case 501 -> "Not Implemented";
+            case 502 -> "Bad Gateway";
+            case 503 -> "Service Unavailable";
+            case 504 -> "Gateway Timeout";
+            case 505 -> "HTTP Version Not Supported";
+            default -> "";
+        };
+    }
+
+    /**
+     * Can the connection be kept open after this response.
+     *
+     * @return true if it can, false otherwise.
+     */
+    boolean isKeepAlive() {
+        return keepAlive;
+    }
+
+    /**
+     * Release the response.
+     *
+     * <p>
+     * Both the processing thread (once the processor started async processing)
+     * and the asynchronous completion release the response. Whichever comes
+     * second is responsible for continuing with the connection.
+     * </p>
+     *
+     * @return true if the response was already released, false otherwise.
+     */
+    boolean release() {
+        return released.getAndSet(true);
+    }
+
+    /**
+     * Write a region of a file as response body.
+     *
+     * <p>
+     * The region is transferred to the connection directly when possible,
+     * otherwise it is copied to the output stream.
+     * </p>
+     *
+     * @param fileChannel the file channel.
+     * @param position the position of the region in the file.
+     * @param length the length of the region.
+     * @throws IOException when an I/O error occurs.
+     * @see DefaultHttpServerOutputStream#transferFrom(FileChannel, long, long)
+     */
+    @Override
+    public void writeFile(FileChannel fileChannel, long position, long length) throws IOException {
+        getOutputStream();
+        if (!outputStream.transferFrom(fileChannel, position, length)) {
+            HttpServerResponse.super.writeFile(fileChannel, position, length);
+        }
+    }
+
+    /**
+     * Does the response have a body.
+     *
+     * @return true if it does, false otherwise.
+     */
+    private boolean hasBody() {
+        return !"HEAD".equals(request.getMethod())
+                && status >= 200 && status != 204 && status != 304;
+    }
+
+    /**
+     * Is it possible to keep the connection open after this response.
+     *
+     * <p>
+     * This requires a server that is not stopping, a client asking for a
+     * persistent connection, a response whose
+     * end can be determined from its headers (a Content-Length or chunked
+     * transfer-encoding), and the maximum number of
+     * requests per connection not having been reached yet.
+     * </p>
+     *
+     * @return true if it is, false otherwise.
+     */
+    private boolean isKeepAlivePossible() {
+        if (server == null || server.serverStopRequest
+                || !request.isKeepAlive()) {
+            return false;
+        }
+        if (server.maxKeepAliveRequests > 0
+                && connection.getRequestCount() >= server.maxKeepAliveRequests) {
+            return false;
+        }
+        String connectionHeader = getHeader("Connection");
+        if (connectionHeader != null && connectionHeader.toLowerCase().contains("close")) {
+            return false;
+        }
+        String contentLengthHeader = getHeader("Content-Length");
+        if (contentLengthHeader != null) {
+            try {
+                contentLength = Long.parseLong(contentLengthHeader.trim());
+            } catch (NumberFormatException nfe) {
+                return false;
+            }
+        }
+        return chunked || contentLength >= 0 || !hasBody();
     }
 }
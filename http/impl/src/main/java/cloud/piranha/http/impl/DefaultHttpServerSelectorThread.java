@@ -0,0 +1,257 @@
+/*
+ * Copyright (c) 2002-2021 Manorrock.com. All Rights Reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   1. Redistributions of source code must retain the above copyright notice,
+ *      this list of conditions and the following disclaimer.
+ *   2. Redistributions in binary form must reproduce the above copyright
+ *      notice, this list of conditions and the following disclaimer in the
+ *      documentation and/or other materials provided with the distribution.
+ *   3. Neither the name of the copyright holder nor the names of its
+ *      contributors may be used to endorse or promote products derived from
+ *      this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package cloud.piranha.http.impl;
+
+import static java.lang.System.Logger.Level.WARNING;
+
+import java.io.IOException;
+import java.lang.System.Logger;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * The selector thread used by the NIO mode of the default implementation of
+ * HTTP server.
+ *
+ * <p>
+ * This thread accepts socket connections and reads from them without
+ * blocking. Only once a complete request head has arrived is the connection
+ * handed off for processing to a processing thread, so idle connections do
+ * not occupy a thread. Idle and slow connections are closed by the timer
+ * wheel once their deadline passes.
+ * </p>
+ *
+ * @author Manfred Riem (mriem@manorrock.com)
+ */
+class DefaultHttpServerSelectorThread implements Runnable {
+
+    /**
+     * Stores the logger.
+     */
+    private static final Logger LOGGER = System.getLogger(
+            DefaultHttpServerSelectorThread.class.getPackageName());
+
+    /**
+     * Stores the connections waiting to be registered with the selector.
+     */
+    private final Queue<DefaultHttpServerConnection> registrations;
+
+    /**
+     * Stores the selector.
+     */
+    private final Selector selector;
+
+    /**
+     * Stores the HTTP server.
+     */
+    private final DefaultHttpServer server;
+
+    /**
+     * Constructor.
+     *
+     * @param server the server we are working for.
+     * @throws IOException when an I/O error occurs.
+     */
+    DefaultHttpServerSelectorThread(DefaultHttpServer server) throws IOException {
+        this.registrations = new ConcurrentLinkedQueue<>();
+        this.selector = Selector.open();
+        this.server = server;
+    }
+
+    /**
+     * @see Runnable#run()
+     */
+    @Override
+    public void run() {
+        try {
+            ServerSocketChannel serverChannel = server.serverSocket.getChannel();
+            serverChannel.configureBlocking(false);
+            serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+            List<DefaultHttpServerConnection> dispatches = new ArrayList<>();
+            while (!server.serverStopRequest) {
+                selector.select(1000);
+                registerConnections();
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    try {
+                        if (!key.isValid()) {
+                            continue;
+                        }
+                        if (key.isAcceptable()) {
+                            accept(serverChannel);
+                        } else if (key.isReadable()) {
+                            read(key, dispatches);
+                        }
+                    } catch (IOException ioe) {
+                        key.cancel();
+                        if (key.attachment() instanceof DefaultHttpServerConnection connection) {
+                            connection.close();
+                        }
+                    }
+                }
+                if (!dispatches.isEmpty()) {
+                    dispatch(dispatches);
+                }
+            }
+        } catch (IOException | RuntimeException exception) {
+            if (!server.serverStopRequest) {
+                LOGGER.log(WARNING, "An error occurred in the selector thread", exception);
+            }
+        } finally {
+            close();
+        }
+    }
+
+    /**
+     * Register a kept alive connection with the selector so it can wait for
+     * its next request without occupying a thread.
+     *
+     * @param connection the connection.
+     */
+    void register(DefaultHttpServerConnection connection) {
+        registrations.add(connection);
+        selector.wakeup();
+    }
+
+    /**
+     * Wake up the selector.
+     */
+    void wakeup() {
+        selector.wakeup();
+    }
+
+    /**
+     * Accept all pending socket connections.
+     *
+     * @param serverChannel the server channel.
+     * @throws IOException when an I/O error occurs.
+     */
+    private void accept(ServerSocketChannel serverChannel) throws IOException {
+        SocketChannel channel = serverChannel.accept();
+        while (channel != null) {
+            channel.configureBlocking(false);
+            DefaultHttpServerConnection connection = new DefaultHttpServerConnection(server, channel.socket());
+            connection.setIdle(true);
+            connection.awaitRequest();
+            channel.register(selector, SelectionKey.OP_READ, connection);
+            channel = serverChannel.accept();
+        }
+    }
+
+    /**
+     * Close the selector and all the connections still registered with it.
+     */
+    private void close() {
+        DefaultHttpServerConnection connection = registrations.poll();
+        while (connection != null) {
+            connection.close();
+            connection = registrations.poll();
+        }
+        try {
+            for (SelectionKey key : selector.keys()) {
+                if (key.attachment() instanceof DefaultHttpServerConnection registered) {
+                    registered.close();
+                }
+            }
+            selector.close();
+        } catch (IOException ioe) {
+            LOGGER.log(WARNING, "An I/O error occurred while closing the selector", ioe);
+        }
+    }
+
+    /**
+     * Dispatch the connections to processing threads.
+     *
+     * <p>
+     * The selection keys of the connections have already been cancelled, but
+     * a channel is only deregistered during the next selection operation. Only
+     * after that can it be switched to blocking mode for the processing thread.
+     * </p>
+     *
+     * @param dispatches the connections to dispatch.
+     * @throws IOException when an I/O error occurs.
+     */
+    private void dispatch(List<DefaultHttpServerConnection> dispatches) throws IOException {
+        selector.selectNow();
+        for (DefaultHttpServerConnection connection : dispatches) {
+            try {
+                connection.getChannel().configureBlocking(true);
+                server.execute(connection);
+            } catch (IOException | RuntimeException exception) {
+                LOGGER.log(WARNING, "An error occurred while dispatching a connection", exception);
+                connection.close();
+            }
+        }
+        dispatches.clear();
+    }
+
+    /**
+     * Register the connections waiting to be registered with the selector.
+     */
+    private void registerConnections() {
+        DefaultHttpServerConnection connection = registrations.poll();
+        while (connection != null) {
+            try {
+                connection.getChannel().configureBlocking(false);
+                connection.awaitRequest();
+                connection.getChannel().register(selector, SelectionKey.OP_READ, connection);
+            } catch (IOException ioe) {
+                connection.close();
+            }
+            connection = registrations.poll();
+        }
+    }
+
+    /**
+     * Read from a connection.
+     *
+     * @param key the selection key.
+     * @param dispatches the connections ready to be dispatched.
+     * @throws IOException when an I/O error occurs.
+     */
+    private void read(SelectionKey key, List<DefaultHttpServerConnection> dispatches) throws IOException {
+        DefaultHttpServerConnection connection = (DefaultHttpServerConnection) key.attachment();
+        if (connection.readNonBlocking() == -1) {
+            key.cancel();
+            connection.close();
+        } else if (connection.parseRequestHead()) {
+            key.cancel();
+            connection.getTimeout().cancel();
+            dispatches.add(connection);
+        }
+    }
+}
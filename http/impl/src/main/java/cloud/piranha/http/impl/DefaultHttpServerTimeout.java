@@ -0,0 +1,152 @@
+/*
+ * Copyright (c) 2002-2021 Manorrock.com. All Rights Reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   1. Redistributions of source code must retain the above copyright notice,
+ *      this list of conditions and the following disclaimer.
+ *   2. Redistributions in binary form must reproduce the above copyright
+ *      notice, this list of conditions and the following disclaimer in the
+ *      documentation and/or other materials provided with the distribution.
+ *   3. Neither the name of the copyright holder nor the names of its
+ *      contributors may be used to endorse or promote products derived from
+ *      this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package cloud.piranha.http.impl;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The deadline of a connection used by the default implementation of HTTP
+ * server.
+ *
+ * <p>
+ * Every connection has a single deadline, which is moved along as the
+ * connection goes from waiting for a request to reading its head, reading its
+ * body, writing the response and lingering. Moving the deadline later only
+ * updates it, the timer wheel picks up the new deadline once the old one
+ * comes up. Cancelling it only clears it. Only moving it earlier hands the
+ * timeout to the timer wheel again, so the processing threads hardly ever
+ * have to touch the wheel.
+ * </p>
+ *
+ * @author Manfred Riem (mriem@manorrock.com)
+ * @see DefaultHttpServerTimerWheel
+ */
+class DefaultHttpServerTimeout {
+
+    /**
+     * Stores the connection.
+     */
+    final DefaultHttpServerConnection connection;
+
+    /**
+     * Stores the deadline (0 if there is none).
+     */
+    final AtomicLong deadline;
+
+    /**
+     * Stores the time the timer wheel looks at the timeout again (0 if it is
+     * not in the timer wheel).
+     */
+    volatile long expiry;
+
+    /**
+     * Stores the tick the timeout is filed under (only used by the timer
+     * wheel).
+     */
+    long expiryTick;
+
+    /**
+     * Stores the next timeout in the same bucket (only used by the timer
+     * wheel).
+     */
+    DefaultHttpServerTimeout next;
+
+    /**
+     * Stores the previous timeout in the same bucket (only used by the timer
+     * wheel).
+     */
+    DefaultHttpServerTimeout previous;
+
+    /**
+     * Stores the queued flag, set while the timeout waits to be filed by the
+     * timer wheel.
+     */
+    final AtomicBoolean queued;
+
+    /**
+     * Stores the timer wheel (null when used outside of a server).
+     */
+    private final DefaultHttpServerTimerWheel wheel;
+
+    /**
+     * Constructor.
+     *
+     * @param wheel the timer wheel, or null.
+     * @param connection the connection.
+     */
+    DefaultHttpServerTimeout(DefaultHttpServerTimerWheel wheel, DefaultHttpServerConnection connection) {
+        this.connection = connection;
+        this.deadline = new AtomicLong();
+        this.queued = new AtomicBoolean();
+        this.wheel = wheel;
+    }
+
+    /**
+     * Cancel the deadline.
+     */
+    void cancel() {
+        deadline.set(0);
+    }
+
+    /**
+     * Compute a deadline.
+     *
+     * @param timeout the timeout (in milliseconds).
+     * @return the deadline, or 0 if there is no timer wheel or the timeout is
+     * 0 or less.
+     */
+    long deadline(int timeout) {
+        return wheel == null || timeout <= 0 ? 0 : wheel.now() + timeout;
+    }
+
+    /**
+     * Set the deadline to the given timeout from now.
+     *
+     * @param timeout the timeout (in milliseconds), 0 or less to cancel.
+     */
+    void schedule(int timeout) {
+        scheduleAt(deadline(timeout));
+    }
+
+    /**
+     * Set the deadline.
+     *
+     * @param deadline the deadline, 0 to cancel.
+     */
+    void scheduleAt(long deadline) {
+        this.deadline.set(deadline);
+        if (deadline != 0) {
+            long current = expiry;
+            if ((current == 0 || deadline <= current - DefaultHttpServerTimerWheel.TICK)
+                    && queued.compareAndSet(false, true)) {
+                wheel.add(this);
+            }
+        }
+    }
+}
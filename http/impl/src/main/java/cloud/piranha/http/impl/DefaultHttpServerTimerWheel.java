@@ -0,0 +1,239 @@
+/*
+ * Copyright (c) 2002-2021 Manorrock.com. All Rights Reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   1. Redistributions of source code must retain the above copyright notice,
+ *      this list of conditions and the following disclaimer.
+ *   2. Redistributions in binary form must reproduce the above copyright
+ *      notice, this list of conditions and the following disclaimer in the
+ *      documentation and/or other materials provided with the distribution.
+ *   3. Neither the name of the copyright holder nor the names of its
+ *      contributors may be used to endorse or promote products derived from
+ *      this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package cloud.piranha.http.impl;
+
+import static java.lang.System.Logger.Level.WARNING;
+
+import java.lang.System.Logger;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * The timer wheel used by the default implementation of HTTP server.
+ *
+ * <p>
+ * This is a hashed timer wheel that manages the deadlines of all
+ * connections, instead of every socket having its own timer. The wheel has
+ * a fixed number of buckets, each covering one tick. A timeout is filed in
+ * the bucket of the tick its deadline falls in, deadlines further away than
+ * one turn of the wheel simply stay in their bucket for more turns. Every
+ * tick only the bucket of that tick is visited, and a connection whose
+ * deadline has passed is closed. Closing the socket also ends any read or
+ * write a processing thread is blocked in.
+ * </p>
+ *
+ * <p>
+ * The buckets are only touched by the timer thread itself. Other threads
+ * hand it the timeouts that need to be (re)filed through a queue.
+ * </p>
+ *
+ * @author Manfred Riem (mriem@manorrock.com)
+ * @see DefaultHttpServerTimeout
+ */
+class DefaultHttpServerTimerWheel implements Runnable {
+
+    /**
+     * Stores the duration of a tick (in milliseconds).
+     */
+    static final int TICK = 100;
+
+    /**
+     * Stores the logger.
+     */
+    private static final Logger LOGGER = System.getLogger(
+            DefaultHttpServerTimerWheel.class.getPackageName());
+
+    /**
+     * Stores the number of buckets (a power of 2).
+     */
+    private static final int WHEEL_SIZE = 512;
+
+    /**
+     * Stores the buckets.
+     */
+    private final DefaultHttpServerTimeout[] buckets;
+
+    /**
+     * Stores the timeouts waiting to be filed.
+     */
+    private final Queue<DefaultHttpServerTimeout> pending;
+
+    /**
+     * Stores the start time (in nanoseconds).
+     */
+    private final long start;
+
+    /**
+     * Stores the stopped flag.
+     */
+    private volatile boolean stopped;
+
+    /**
+     * Stores the next tick to process.
+     */
+    private long tick;
+
+    /**
+     * Constructor.
+     */
+    DefaultHttpServerTimerWheel() {
+        this.buckets = new DefaultHttpServerTimeout[WHEEL_SIZE];
+        this.pending = new ConcurrentLinkedQueue<>();
+        this.start = System.nanoTime();
+    }
+
+    /**
+     * @see Runnable#run()
+     */
+    @Override
+    public void run() {
+        try {
+            while (!stopped) {
+                long now = now();
+                long due = tick * TICK;
+                if (now < due) {
+                    Thread.sleep(due - now);
+                    continue;
+                }
+                fileTimeouts();
+                expireTimeouts(now);
+                tick++;
+            }
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+        } catch (RuntimeException re) {
+            LOGGER.log(WARNING, "An error occurred in the timer thread", re);
+        }
+    }
+
+    /**
+     * Hand a timeout to the timer wheel for filing.
+     *
+     * @param timeout the timeout.
+     */
+    void add(DefaultHttpServerTimeout timeout) {
+        pending.add(timeout);
+    }
+
+    /**
+     * {@return the current time of the timer wheel (in milliseconds)}
+     */
+    long now() {
+        return (System.nanoTime() - start) / 1_000_000;
+    }
+
+    /**
+     * Stop the timer wheel.
+     */
+    void stop() {
+        stopped = true;
+    }
+
+    /**
+     * Close the connections whose deadline has passed in the bucket of the
+     * current tick.
+     *
+     * @param now the current time.
+     */
+    private void expireTimeouts(long now) {
+        DefaultHttpServerTimeout timeout = buckets[(int) (tick & (WHEEL_SIZE - 1))];
+        while (timeout != null) {
+            DefaultHttpServerTimeout next = timeout.next;
+            if (timeout.expiryTick <= tick) {
+                unlink(timeout);
+                long deadline = timeout.deadline.get();
+                if (deadline > now) {
+                    link(timeout, deadline);
+                } else if (deadline != 0 && timeout.deadline.compareAndSet(deadline, 0)) {
+                    timeout.connection.expire();
+                }
+            }
+            timeout = next;
+        }
+    }
+
+    /**
+     * File the timeouts waiting to be filed.
+     */
+    private void fileTimeouts() {
+        DefaultHttpServerTimeout timeout = pending.poll();
+        while (timeout != null) {
+            timeout.queued.set(false);
+            long deadline = timeout.deadline.get();
+            if (deadline != 0) {
+                if (timeout.expiry != 0) {
+                    unlink(timeout);
+                }
+                link(timeout, deadline);
+            }
+            timeout = pending.poll();
+        }
+    }
+
+    /**
+     * Link a timeout into the bucket of its deadline.
+     *
+     * @param timeout the timeout.
+     * @param deadline the deadline.
+     */
+    private void link(DefaultHttpServerTimeout timeout, long deadline) {
+        long expiryTick = Math.max((deadline + TICK - 1) / TICK, tick);
+        int index = (int) (expiryTick & (WHEEL_SIZE - 1));
+        timeout.expiryTick = expiryTick;
+        timeout.previous = null;
+        timeout.next = buckets[index];
+        if (timeout.next != null) {
+            timeout.next.previous = timeout;
+        }
+        buckets[index] = timeout;
+        timeout.expiry = expiryTick * TICK;
+        long current = timeout.deadline.get();
+        if (current != 0 && current <= timeout.expiry - TICK && timeout.queued.compareAndSet(false, true)) {
+            pending.add(timeout);
+        }
+    }
+
+    /**
+     * Unlink a timeout from its bucket.
+     *
+     * @param timeout the timeout.
+     */
+    private void unlink(DefaultHttpServerTimeout timeout) {
+        timeout.expiry = 0;
+        if (timeout.previous != null) {
+            timeout.previous.next = timeout.next;
+        } else {
+            buckets[(int) (timeout.expiryTick & (WHEEL_SIZE - 1))] = timeout.next;
+        }
+        if (timeout.next != null) {
+            timeout.next.previous = timeout.previous;
+        }
+        timeout.next = null;
+        timeout.previous = null;
+    }
+}
@@ -0,0 +1,112 @@
+/*
+ * Copyright (c) 2002-2021 Manorrock.com. All Rights Reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   1. Redistributions of source code must retain the above copyright notice,
+ *      this list of conditions and the following disclaimer.
+ *   2. Redistributions in binary form must reproduce the above copyright
+ *      notice, this list of conditions and the following disclaimer in the
+ *      documentation and/or other materials provided with the distribution.
+ *   3. Neither the name of the copyright holder nor the names of its
+ *      contributors may be used to endorse or promote products derived from
+ *      this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package cloud.piranha.http.impl.tests;
+
+import cloud.piranha.http.api.HttpServer;
+import cloud.piranha.http.api.HttpServerProcessor;
+import cloud.piranha.http.impl.DefaultHttpServer;
+import cloud.piranha.http.tests.HttpServerTest;
+import cloud.piranha.http.tests.TestHttpServerProcessor;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * The JUnit tests for the DefaultHttpServer class running in NIO mode.
+ *
+ * @author Manfred Riem (mriem@manorrock.com)
+ */
+class DefaultHttpServerNioTest extends HttpServerTest {
+
+    /**
+     * Create the server.
+     *
+     * @param portNumber the port number.
+     * @return the HTTP server.
+     */
+    @Override
+    protected HttpServer createServer(int portNumber) {
+        return createServer(portNumber, new TestHttpServerProcessor());
+    }
+
+    /**
+     * Create the server.
+     *
+     * @param portNumber the port number.
+     * @param processor the HTTP server processor.
+     * @return the HTTP server.
+     */
+    @Override
+    protected HttpServer createServer(int portNumber, HttpServerProcessor processor) {
+        DefaultHttpServer server = new DefaultHttpServer(portNumber, processor, false);
+        server.setNio(true);
+        return server;
+    }
+
+    /**
+     * Test a request head that arrives in multiple parts while other
+     * connections sit idle.
+     *
+     * @throws Exception when an error occurs.
+     */
+    @Test
+    void testSplitRequestHead() throws Exception {
+        HttpServer server = createServer(8753);
+        server.start();
+        List<Socket> idleSockets = new ArrayList<>();
+        try {
+            for (int i = 0; i < 10; i++) {
+                idleSockets.add(new Socket("localhost", 8753));
+            }
+            try (Socket socket = new Socket("localhost", 8753)) {
+                OutputStream outputStream = socket.getOutputStream();
+                outputStream.write("GET /pom.xml HTTP/1.1\r\n".getBytes(StandardCharsets.UTF_8));
+                outputStream.flush();
+                Thread.sleep(100);
+                outputStream.write("Host: localhost:8753\r\nConnection: close\r\n\r\n".getBytes(StandardCharsets.UTF_8));
+                outputStream.flush();
+                InputStream inputStream = socket.getInputStream();
+                ByteArrayOutputStream response = new ByteArrayOutputStream();
+                inputStream.transferTo(response);
+                assertTrue(response.toString(StandardCharsets.UTF_8).contains("modelVersion"));
+            }
+        } finally {
+            for (Socket idleSocket : idleSockets) {
+                idleSocket.close();
+            }
+            server.stop();
+        }
+    }
+}
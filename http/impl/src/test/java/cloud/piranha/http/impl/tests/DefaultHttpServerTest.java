@@ -29,19 +29,35 @@ package cloud.piranha.http.impl.tests;
 
 import cloud.piranha.http.api.HttpServer;
 import cloud.piranha.http.api.HttpServerProcessor;
+import cloud.piranha.http.api.HttpServerRequest;
+import cloud.piranha.http.api.HttpServerResponse;
 import cloud.piranha.http.impl.DefaultHttpServer;
+import cloud.piranha.http.impl.DefaultHttpServerProcessor;
 import cloud.piranha.http.tests.HttpServerTest;
 import cloud.piranha.http.tests.TestHttpServerProcessor;
 import org.junit.jupiter.api.Test;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
 import java.net.URI;
 import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
 import java.security.NoSuchAlgorithmException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.security.SecureRandom;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 
 /**
  * The JUnit tests for the DefaultHttpServer class.
@@ -103,4 +119,634 @@ class DefaultHttpServerTest extends HttpServerTest {
             server.stop();
         }
     }
+
+    /**
+     * Test pipelined requests on a persistent connection.
+     *
+     * @throws Exception when an error occurs.
+     */
+    @Test
+    void testKeepAlive() throws Exception {
+        DefaultHttpServer server = new DefaultHttpServer(8752, DefaultHttpServerTest::returnTarget, false);
+        server.start();
+        try {
+            String response = send(8752, "GET /first HTTP/1.1\r\nHost: localhost\r\n\r\n"
+                    + "GET /second HTTP/1.1\r\nHost: localhost\r\nConnection: close\r\n\r\n");
+            assertTrue(response.indexOf("/first") < response.indexOf("/second"));
+            assertEquals(2, response.split("HTTP/1.1 200").length - 1);
+            assertEquals(1, response.split("Connection: close").length - 1);
+        } finally {
+            server.stop();
+        }
+    }
+
+    /**
+     * Test pipelined requests on a persistent connection in NIO mode.
+     *
+     * @throws Exception when an error occurs.
+     */
+    @Test
+    void testKeepAliveNio() throws Exception {
+        DefaultHttpServer server = new DefaultHttpServer(8751, DefaultHttpServerTest::returnTarget, false);
+        server.setNio(true);
+        server.start();
+        try {
+            String response = send(8751, "GET /first HTTP/1.1\r\nHost: localhost\r\n\r\n"
+                    + "GET /second HTTP/1.1\r\nHost: localhost\r\n\r\n"
+                    + "GET /third HTTP/1.1\r\nHost: localhost\r\nConnection: close\r\n\r\n");
+            assertTrue(response.indexOf("/first") < response.indexOf("/second"));
+            assertTrue(response.indexOf("/second") < response.indexOf("/third"));
+            assertEquals(3, response.split("HTTP/1.1 200").length - 1);
+        } finally {
+            server.stop();
+        }
+    }
+
+    /**
+     * Test the maximum number of requests per connection.
+     *
+     * @throws Exception when an error occurs.
+     */
+    @Test
+    void testMaxKeepAliveRequests() throws Exception {
+        DefaultHttpServer server = new DefaultHttpServer(8750, DefaultHttpServerTest::returnTarget, false);
+        server.setMaxKeepAliveRequests(1);
+        assertEquals(1, server.getMaxKeepAliveRequests());
+        server.start();
+        try {
+            String response = send(8750, "GET /first HTTP/1.1\r\nHost: localhost\r\n\r\n"
+                    + "GET /second HTTP/1.1\r\nHost: localhost\r\n\r\n");
+            assertTrue(response.contains("Connection: close"));
+            assertTrue(response.endsWith("/first"));
+        } finally {
+            server.stop();
+        }
+    }
+
+    /**
+     * Test a HTTP/1.0 request without keep-alive closes the connection.
+     *
+     * @throws Exception when an error occurs.
+     */
+    @Test
+    void testKeepAliveHttp10() throws Exception {
+        DefaultHttpServer server = new DefaultHttpServer(8749, DefaultHttpServerTest::returnTarget, false);
+        server.start();
+        try {
+            String response = send(8749, "GET /first HTTP/1.0\r\n\r\nGET /second HTTP/1.0\r\n\r\n");
+            assertTrue(response.contains("Connection: close"));
+            assertTrue(response.endsWith("/first"));
+        } finally {
+            server.stop();
+        }
+    }
+
+    /**
+     * Test a request head that arrives in multiple parts.
+     *
+     * @throws Exception when an error occurs.
+     */
+    @Test
+    void testSplitRequestHead() throws Exception {
+        DefaultHttpServer server = new DefaultHttpServer(8748, DefaultHttpServerTest::returnTarget, false);
+        server.start();
+        try (Socket socket = new Socket("localhost", 8748)) {
+            socket.setSoTimeout(10000);
+            OutputStream outputStream = socket.getOutputStream();
+            outputStream.write("GET /split HTTP/1.1\r\nHo".getBytes(StandardCharsets.UTF_8));
+            outputStream.flush();
+            Thread.sleep(100);
+            outputStream.write("st: localhost\r\nConnection: close\r\n\r\n".getBytes(StandardCharsets.UTF_8));
+            outputStream.flush();
+            ByteArrayOutputStream response = new ByteArrayOutputStream();
+            socket.getInputStream().transferTo(response);
+            assertTrue(response.toString(StandardCharsets.UTF_8).endsWith("/split"));
+        } finally {
+            server.stop();
+        }
+    }
+
+    /**
+     * Test the request headers.
+     *
+     * @throws Exception when an error occurs.
+     */
+    @Test
+    void testRequestHeaders() throws Exception {
+        DefaultHttpServer server = new DefaultHttpServer(8747, (request, response) -> {
+            StringBuilder builder = new StringBuilder(request.getHeader("x-single"));
+            request.getHeaders("X-MULTIPLE").forEachRemaining(value -> builder.append(',').append(value));
+            builder.append(',').append(request.getHeader("X-Empty").isEmpty());
+            builder.append(',').append(request.getHeader("X-Missing"));
+            builder.append(',').append(request.getQueryString());
+            return returnBody(response, builder.toString());
+        }, false);
+        server.start();
+        try {
+            String response = send(8747, "GET /headers?a=b HTTP/1.1\r\nHost: localhost\r\n"
+                    + "X-Single:  one \r\nX-Multiple: two\r\nx-multiple:three\r\nX-Empty:\r\n"
+                    + "Connection: close\r\n\r\n");
+            assertTrue(response.endsWith("one,two,three,true,null,a=b"));
+        } finally {
+            server.stop();
+        }
+    }
+
+    /**
+     * Test response header values cannot end the header line early.
+     *
+     * @throws Exception when an error occurs.
+     */
+    @Test
+    void testResponseHeaderSplitting() throws Exception {
+        DefaultHttpServer server = new DefaultHttpServer(8766, (request, response) -> {
+            response.setHeader("X-Wide", "a\u010d\u010aInjected: wide");
+            response.setHeader("X-Control", "b\r\nInjected: control");
+            return returnBody(response, "ok");
+        }, false);
+        server.start();
+        try {
+            String response = send(8766, "GET / HTTP/1.1\r\nHost: localhost\r\nConnection: close\r\n\r\n");
+            assertTrue(response.contains("X-Wide: a??Injected: wide\r\n"));
+            assertTrue(response.contains("X-Control: b  Injected: control\r\n"));
+            assertFalse(response.contains("\nInjected"));
+        } finally {
+            server.stop();
+        }
+    }
+
+    /**
+     * Test a malformed request line.
+     *
+     * @throws Exception when an error occurs.
+     */
+    @Test
+    void testBadRequest() throws Exception {
+        DefaultHttpServer server = new DefaultHttpServer(8746, DefaultHttpServerTest::returnTarget, false);
+        server.start();
+        try {
+            String response = send(8746, "GET /bad\r\nHost: localhost\r\n\r\n");
+            assertTrue(response.startsWith("HTTP/1.1 400"));
+        } finally {
+            server.stop();
+        }
+    }
+
+    /**
+     * Test the maximum number of request header fields.
+     *
+     * @throws Exception when an error occurs.
+     */
+    @Test
+    void testMaxHeaderCount() throws Exception {
+        DefaultHttpServer server = new DefaultHttpServer(8745, DefaultHttpServerTest::returnTarget, false);
+        server.setMaxHeaderCount(2);
+        assertEquals(2, server.getMaxHeaderCount());
+        server.start();
+        try {
+            String response = send(8745, "GET / HTTP/1.1\r\nHost: localhost\r\nA: 1\r\nB: 2\r\n\r\n");
+            assertTrue(response.startsWith("HTTP/1.1 431"));
+        } finally {
+            server.stop();
+        }
+    }
+
+    /**
+     * Test the maximum size of the request head.
+     *
+     * @throws Exception when an error occurs.
+     */
+    @Test
+    void testMaxHeaderSize() throws Exception {
+        DefaultHttpServer server = new DefaultHttpServer(8744, DefaultHttpServerTest::returnTarget, false);
+        server.setMaxHeaderSize(64);
+        assertEquals(64, server.getMaxHeaderSize());
+        server.start();
+        try {
+            String response = send(8744, "GET / HTTP/1.1\r\nHost: localhost\r\nX-Large: "
+                    + "x".repeat(64) + "\r\n\r\n");
+            assertTrue(response.startsWith("HTTP/1.1 431"));
+        } finally {
+            server.stop();
+        }
+    }
+
+    /**
+     * Test the virtual threads mode.
+     *
+     * @throws Exception when an error occurs.
+     */
+    @Test
+    void testVirtualThreads() throws Exception {
+        DefaultHttpServer server = new DefaultHttpServer(8743, DefaultHttpServerTest::returnTarget, false);
+        server.setVirtualThreads(true);
+        assertTrue(server.isVirtualThreads());
+        server.start();
+        try {
+            String response = send(8743, "GET /first HTTP/1.1\r\nHost: localhost\r\n\r\n"
+                    + "GET /second HTTP/1.1\r\nHost: localhost\r\nConnection: close\r\n\r\n");
+            assertEquals(2, response.split("HTTP/1.1 200").length - 1);
+        } finally {
+            server.stop();
+        }
+    }
+
+    /**
+     * Test a saturated bounded thread pool rejects connections.
+     *
+     * @throws Exception when an error occurs.
+     */
+    @Test
+    void testMaxThreads() throws Exception {
+        CountDownLatch latch = new CountDownLatch(1);
+        DefaultHttpServer server = new DefaultHttpServer(8742, (request, response) -> {
+            try {
+                latch.await(10, TimeUnit.SECONDS);
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+            }
+            return returnTarget(request, response);
+        }, false);
+        server.setMaxThreads(1);
+        server.setMaxQueueSize(0);
+        server.setRetryAfter(5);
+        assertEquals(1, server.getMaxThreads());
+        assertEquals(0, server.getMaxQueueSize());
+        assertEquals(5, server.getRetryAfter());
+        server.start();
+        try (Socket busy = new Socket("localhost", 8742)) {
+            busy.getOutputStream().write("GET /busy HTTP/1.1\r\nHost: localhost\r\nConnection: close\r\n\r\n"
+                    .getBytes(StandardCharsets.UTF_8));
+            busy.getOutputStream().flush();
+            while (server.getActiveCount() == 0) {
+                Thread.sleep(10);
+            }
+            try (Socket socket = new Socket("localhost", 8742)) {
+                socket.setSoTimeout(10000);
+                ByteArrayOutputStream response = new ByteArrayOutputStream();
+                socket.getInputStream().transferTo(response);
+                String result = response.toString(StandardCharsets.UTF_8);
+                assertTrue(result.startsWith("HTTP/1.1 503"));
+                assertTrue(result.contains("Retry-After: 5"));
+            }
+            assertEquals(1, server.getRejectedCount());
+            assertEquals(0, server.getQueuedCount());
+            latch.countDown();
+            busy.setSoTimeout(10000);
+            ByteArrayOutputStream response = new ByteArrayOutputStream();
+            busy.getInputStream().transferTo(response);
+            assertTrue(response.toString(StandardCharsets.UTF_8).endsWith("/busy"));
+        } finally {
+            latch.countDown();
+            server.stop();
+        }
+    }
+
+    /**
+     * Test the connection is closed without a reset while the client is
+     * still sending.
+     *
+     * @throws Exception when an error occurs.
+     */
+    @Test
+    void testLingeringClose() throws Exception {
+        DefaultHttpServer server = new DefaultHttpServer(8741, DefaultHttpServerTest::returnTarget, false);
+        server.setLingerTimeout(5000);
+        assertEquals(5000, server.getLingerTimeout());
+        server.start();
+        try (Socket socket = new Socket("localhost", 8741)) {
+            socket.setSoTimeout(10000);
+            OutputStream outputStream = socket.getOutputStream();
+            outputStream.write("GET /first HTTP/1.1\r\nHost: localhost\r\nConnection: close\r\n\r\n"
+                    .getBytes(StandardCharsets.UTF_8));
+            outputStream.flush();
+            InputStream inputStream = socket.getInputStream();
+            ByteArrayOutputStream response = new ByteArrayOutputStream();
+            int read = inputStream.read();
+            outputStream.write(new byte[65536]);
+            outputStream.flush();
+            while (read != -1) {
+                response.write(read);
+                read = inputStream.read();
+            }
+            assertTrue(response.toString(StandardCharsets.UTF_8).endsWith("/first"));
+        } finally {
+            server.stop();
+        }
+    }
+
+    /**
+     * Test a chunked response on a persistent connection.
+     *
+     * @throws Exception when an error occurs.
+     */
+    @Test
+    void testChunked() throws Exception {
+        DefaultHttpServer server = new DefaultHttpServer(8740, (request, response) -> {
+            if (request.getRequestTarget().equals("/second")) {
+                return returnTarget(request, response);
+            }
+            try {
+                response.setStatus(200);
+                response.setHeader("Transfer-Encoding", "chunked");
+                response.writeStatusLine();
+                response.writeHeaders();
+                OutputStream outputStream = response.getOutputStream();
+                outputStream.write("first".getBytes(StandardCharsets.UTF_8));
+                outputStream.flush();
+                outputStream.write(new byte[10000]);
+            } catch (IOException ioe) {
+            }
+            return false;
+        }, false);
+        server.start();
+        try {
+            String response = send(8740, "GET /first HTTP/1.1\r\nHost: localhost\r\n\r\n"
+                    + "GET /second HTTP/1.1\r\nHost: localhost\r\nConnection: close\r\n\r\n");
+            assertTrue(response.contains("Transfer-Encoding: chunked\r\n\r\n5\r\nfirst\r\n2710\r\n"));
+            assertTrue(response.contains("\r\n0\r\n\r\nHTTP/1.1 200"));
+            assertTrue(response.endsWith("/second"));
+        } finally {
+            server.stop();
+        }
+    }
+
+    /**
+     * Test a chunked request body followed by a pipelined request.
+     *
+     * @throws Exception when an error occurs.
+     */
+    @Test
+    void testChunkedRequest() throws Exception {
+        DefaultHttpServer server = new DefaultHttpServer(8739, (request, response) -> {
+            try {
+                return returnBody(response, request.getRequestTarget() + ":"
+                        + new String(request.getInputStream().readAllBytes(), StandardCharsets.UTF_8));
+            } catch (IOException ioe) {
+                return false;
+            }
+        }, false);
+        server.start();
+        try {
+            String response = send(8739, "POST /first HTTP/1.1\r\nHost: localhost\r\nTransfer-Encoding: chunked\r\n\r\n"
+                    + "5\r\nhello\r\n6;name=value\r\n world\r\n0\r\nX-Trailer: value\r\n\r\n"
+                    + "GET /second HTTP/1.1\r\nHost: localhost\r\nConnection: close\r\n\r\n");
+            assertTrue(response.contains("/first:hello world"));
+            assertTrue(response.endsWith("/second:"));
+        } finally {
+            server.stop();
+        }
+    }
+
+    /**
+     * Test an unread request body is skipped to get to the next request.
+     *
+     * @throws Exception when an error occurs.
+     */
+    @Test
+    void testUnreadRequestBody() throws Exception {
+        DefaultHttpServer server = new DefaultHttpServer(8738, DefaultHttpServerTest::returnTarget, false);
+        server.start();
+        try {
+            String response = send(8738, "POST /first HTTP/1.1\r\nHost: localhost\r\nContent-Length: 10\r\n\r\n"
+                    + "0123456789GET /second HTTP/1.1\r\nHost: localhost\r\nConnection: close\r\n\r\n");
+            assertEquals(2, response.split("HTTP/1.1 200").length - 1);
+            assertTrue(response.endsWith("/second"));
+        } finally {
+            server.stop();
+        }
+    }
+
+    /**
+     * Test the maximum size of a request body.
+     *
+     * @throws Exception when an error occurs.
+     */
+    @Test
+    void testMaxBodySize() throws Exception {
+        DefaultHttpServer server = new DefaultHttpServer(8737, DefaultHttpServerTest::returnTarget, false);
+        server.setMaxBodySize(5);
+        assertEquals(5, server.getMaxBodySize());
+        server.start();
+        try {
+            String response = send(8737, "POST / HTTP/1.1\r\nHost: localhost\r\nContent-Length: 10\r\n\r\n0123456789");
+            assertTrue(response.startsWith("HTTP/1.1 413"));
+        } finally {
+            server.stop();
+        }
+    }
+
+    /**
+     * Test serving a file with the DefaultHttpServerProcessor.
+     *
+     * @throws Exception when an error occurs.
+     */
+    @Test
+    void testProcessorFile() throws Exception {
+        byte[] bytes = new byte[20000];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = (byte) ('a' + i % 26);
+        }
+        Path file = Path.of("target", "testProcessorFile.txt");
+        Files.write(file, bytes);
+        DefaultHttpServer server = new DefaultHttpServer(8736, new DefaultHttpServerProcessor(), false);
+        server.start();
+        try {
+            String request = "GET /target/testProcessorFile.txt HTTP/1.1\r\nHost: localhost\r\n";
+            String response = send(8736, request + "\r\n"
+                    + request + "Range: bytes=10000-10009\r\n\r\n"
+                    + request + "Range: bytes=20000-\r\n\r\n"
+                    + request + "If-None-Match: *\r\nConnection: close\r\n\r\n");
+            String[] responses = response.split("HTTP/1.1 ");
+            assertEquals(5, responses.length);
+            assertTrue(responses[1].startsWith("200"));
+            assertTrue(responses[1].contains("Content-Length: 20000\r\n"));
+            assertTrue(responses[1].endsWith(new String(bytes, StandardCharsets.US_ASCII)));
+            assertTrue(responses[2].startsWith("206"));
+            assertTrue(responses[2].contains("Content-Range: bytes 10000-10009/20000\r\n"));
+            assertTrue(responses[2].endsWith("\r\n\r\nqrstuvwxyz"));
+            assertTrue(responses[3].startsWith("416"));
+            assertTrue(responses[3].contains("Content-Range: bytes */20000\r\n"));
+            assertTrue(responses[4].startsWith("304"));
+            assertTrue(responses[4].endsWith("\r\n\r\n"));
+        } finally {
+            server.stop();
+            Files.delete(file);
+        }
+    }
+
+    /**
+     * Test that a client sending its request head one byte at a time is
+     * closed once the header timeout expires.
+     *
+     * @throws Exception when an error occurs.
+     */
+    @Test
+    void testHeaderTimeout() throws Exception {
+        DefaultHttpServer server = new DefaultHttpServer(8735, DefaultHttpServerTest::returnTarget, false);
+        server.setHeaderTimeout(1000);
+        assertEquals(1000, server.getHeaderTimeout());
+        server.start();
+        try {
+            assertTrue(dribble(8735, "GET / HTTP/1.1\r\nX-Slow: ") < 5000);
+        } finally {
+            server.stop();
+        }
+    }
+
+    /**
+     * Test that a client sending its request head one byte at a time is
+     * closed once the header timeout expires in NIO mode.
+     *
+     * @throws Exception when an error occurs.
+     */
+    @Test
+    void testHeaderTimeoutNio() throws Exception {
+        DefaultHttpServer server = new DefaultHttpServer(8734, DefaultHttpServerTest::returnTarget, false);
+        server.setNio(true);
+        server.setHeaderTimeout(1000);
+        server.start();
+        try {
+            assertTrue(dribble(8734, "GET / HTTP/1.1\r\nX-Slow: ") < 5000);
+        } finally {
+            server.stop();
+        }
+    }
+
+    /**
+     * Test that a client sending its request body one byte at a time is
+     * closed once the body timeout expires.
+     *
+     * @throws Exception when an error occurs.
+     */
+    @Test
+    void testBodyTimeout() throws Exception {
+        DefaultHttpServer server = new DefaultHttpServer(8733, (request, response) -> {
+            try {
+                return returnBody(response, new String(request.getInputStream().readAllBytes(), StandardCharsets.UTF_8));
+            } catch (IOException ioe) {
+                return false;
+            }
+        }, false);
+        server.setBodyTimeout(1000);
+        assertEquals(1000, server.getBodyTimeout());
+        server.start();
+        try {
+            assertTrue(dribble(8733, "POST / HTTP/1.1\r\nHost: localhost\r\nContent-Length: 1000\r\n\r\n") < 5000);
+        } finally {
+            server.stop();
+        }
+    }
+
+    /**
+     * Test that an idle kept alive connection is closed once the keep-alive
+     * timeout expires.
+     *
+     * @throws Exception when an error occurs.
+     */
+    @Test
+    void testKeepAliveTimeout() throws Exception {
+        DefaultHttpServer server = new DefaultHttpServer(8732, DefaultHttpServerTest::returnTarget, false);
+        server.setKeepAliveTimeout(500);
+        server.setWriteTimeout(5000);
+        assertEquals(5000, server.getWriteTimeout());
+        server.start();
+        try (Socket socket = new Socket("localhost", 8732)) {
+            socket.setSoTimeout(10000);
+            socket.getOutputStream().write("GET /idle HTTP/1.1\r\nHost: localhost\r\n\r\n".getBytes(StandardCharsets.UTF_8));
+            ByteArrayOutputStream response = new ByteArrayOutputStream();
+            socket.getInputStream().transferTo(response);
+            assertTrue(response.toString(StandardCharsets.UTF_8).endsWith("/idle"));
+        } finally {
+            server.stop();
+        }
+    }
+
+    /**
+     * Send the start of a request and then send one more byte every 100
+     * milliseconds until the server closes the connection.
+     *
+     * @param port the port.
+     * @param start the start of the request.
+     * @return the time it took the server to close the connection (in
+     * milliseconds).
+     * @throws IOException when an I/O error occurs.
+     */
+    private static long dribble(int port, String start) throws IOException {
+        long begin = System.currentTimeMillis();
+        try (Socket socket = new Socket("localhost", port)) {
+            socket.setSoTimeout(100);
+            OutputStream outputStream = socket.getOutputStream();
+            InputStream inputStream = socket.getInputStream();
+            outputStream.write(start.getBytes(StandardCharsets.UTF_8));
+            while (System.currentTimeMillis() - begin < 10000) {
+                try {
+                    if (inputStream.read() == -1) {
+                        break;
+                    }
+                } catch (SocketTimeoutException ste) {
+                    outputStream.write('x');
+                }
+            }
+        } catch (SocketException se) {
+            // the server closed the connection while we were still sending.
+        }
+        return System.currentTimeMillis() - begin;
+    }
+
+    /**
+     * Return the request target with a Content-Length.
+     *
+     * @param request the request.
+     * @param response the response.
+     * @return false as this HTTP processor does not support async.
+     */
+    private static boolean returnTarget(HttpServerRequest request, HttpServerResponse response) {
+        return returnBody(response, request.getRequestTarget());
+    }
+
+    /**
+     * Return the given body with a Content-Length.
+     *
+     * @param response the response.
+     * @param text the body.
+     * @return false as this HTTP processor does not support async.
+     */
+    private static boolean returnBody(HttpServerResponse response, String text) {
+        try {
+            byte[] body = text.getBytes(StandardCharsets.UTF_8);
+            response.setStatus(200);
+            response.setHeader("Content-Type", "text/plain");
+            response.setHeader("Content-Length", Integer.toString(body.length));
+            response.writeStatusLine();
+            response.writeHeaders();
+            OutputStream outputStream = response.getOutputStream();
+            outputStream.write(body);
+            outputStream.flush();
+        } catch (IOException ioe) {
+        }
+        return false;
+    }
+
+    /**
+     * Send raw requests and read the response until the server closes the
+     * connection.
+     *
+     * @param port the port.
+     * @param requests the raw requests.
+     * @return the raw response.
+     * @throws IOException when an I/O error occurs.
+     */
+    private static String send(int port, String requests) throws IOException {
+        try (Socket socket = new Socket("localhost", port)) {
+            socket.setSoTimeout(10000);
+            OutputStream outputStream = socket.getOutputStream();
+            outputStream.write(requests.getBytes(StandardCharsets.UTF_8));
+            outputStream.flush();
+            InputStream inputStream = socket.getInputStream();
+            ByteArrayOutputStream response = new ByteArrayOutputStream();
+            inputStream.transferTo(response);
+            return response.toString(StandardCharsets.UTF_8);
+        }
+    }
 }
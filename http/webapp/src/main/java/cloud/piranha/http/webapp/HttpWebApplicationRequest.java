@@ -28,22 +28,75 @@
 package cloud.piranha.http.webapp;
 
 import cloud.piranha.http.api.HttpServerRequest;
+import cloud.piranha.webapp.impl.CookieParser;
 import cloud.piranha.webapp.impl.DefaultWebApplicationRequest;
+import jakarta.servlet.ServletInputStream;
+import jakarta.servlet.http.Cookie;
+import jakarta.servlet.http.HttpSession;
+import java.io.IOException;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Enumeration;
+import java.util.Iterator;
 
 /**
  * The HttpServerRequest variant of WebApplicationRequest.
  *
+ * <p>
+ * The request line, Content-Type and Content-Length are taken over from the
+ * wrapped HttpServerRequest right away. Everything else is only taken over
+ * when it is first asked for. Headers are read from the wrapped request
+ * until one is set, after which they are copied. Cookies are parsed, the
+ * requested session id is determined, and the addresses and ports are asked
+ * for only once they are needed.
+ * </p>
+ *
+ * <p>
+ * When recycling is enabled on the HttpWebApplicationServer the request is
+ * recycled once it has been processed, and reused for a next HTTP server
+ * request. A recycled request that has not yet been reused refuses to be used.
+ * </p>
+ *
  * @author Manfred Riem (mriem@manorrock.com)
  */
 public class HttpWebApplicationRequest extends DefaultWebApplicationRequest {
 
+    /**
+     * Stores the session id path parameter.
+     */
+    private static final String JSESSIONID = ";jsessionid=";
+
+    /**
+     * Stores the cookies parsed flag.
+     */
+    private boolean cookiesParsed;
+
+    /**
+     * Stores the headers copied flag.
+     */
+    private boolean headersCopied;
+
+    /**
+     * Stores the recycled flag.
+     */
+    private boolean recycled;
+
+    /**
+     * Stores the requested session id resolved flag.
+     */
+    private boolean requestedSessionIdResolved;
+
+    /**
+     * Stores the session id taken from the request target, if any.
+     */
+    private String urlSessionId;
+
     /**
      * Stores the wrapped HttpServerRequest.
      */
-    private final HttpServerRequest wrapped;
+    private HttpServerRequest wrapped;
 
     /**
      * Constructor.
@@ -51,16 +104,65 @@ public class HttpWebApplicationRequest extends DefaultWebApplicationRequest {
      * @param wrapped the wrapped HttpServerRequest.
      */
     public HttpWebApplicationRequest(HttpServerRequest wrapped) {
-        this.wrapped = wrapped;
+        wrap(wrapped);
+    }
+
+    @Override
+    public Object getAttribute(String name) {
+        verifyNotRecycled();
+        return super.getAttribute(name);
+    }
+
+    @Override
+    public Cookie[] getCookies() {
+        verifyNotRecycled();
+        if (!cookiesParsed) {
+            cookiesParsed = true;
+            String cookieHeader = getHeader("Cookie");
+            if (cookieHeader != null) {
+                setCookies(CookieParser.parse(cookieHeader));
+            }
+        }
+        return super.getCookies();
+    }
+
+    /**
+     * Get the date header.
+     *
+     * <p>
+     * The value is parsed from the header as it is, so the headers are not
+     * copied just to read it.
+     * </p>
+     *
+     * @param name the name.
+     * @return the date, or -1 if there is no such header.
+     * @throws IllegalArgumentException when the header is not a date.
+     */
+    @Override
+    public long getDateHeader(String name) {
+        String value = getHeader(name);
+        if (value == null) {
+            return -1;
+        }
+        try {
+            return new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss zzz").parse(value).getTime();
+        } catch (ParseException exception) {
+            throw new IllegalArgumentException("Cannot convert header to a date", exception);
+        }
     }
 
     @Override
     public String getHeader(String name) {
-        return wrapped.getHeader(name);
+        verifyNotRecycled();
+        return headersCopied ? super.getHeader(name) : wrapped.getHeader(name);
     }
 
     @Override
     public Enumeration<String> getHeaderNames() {
+        verifyNotRecycled();
+        if (headersCopied) {
+            return super.getHeaderNames();
+        }
         ArrayList<String> headerNames = new ArrayList<>();
         wrapped.getHeaderNames().forEachRemaining(headerNames::add);
         return Collections.enumeration(headerNames);
@@ -68,8 +170,300 @@ public class HttpWebApplicationRequest extends DefaultWebApplicationRequest {
 
     @Override
     public Enumeration<String> getHeaders(String name) {
+        verifyNotRecycled();
+        if (headersCopied) {
+            return super.getHeaders(name);
+        }
         ArrayList<String> headers = new ArrayList<>();
         wrapped.getHeaders(name).forEachRemaining(headers::add);
         return Collections.enumeration(headers);
     }
+
+    /**
+     * Get the int header.
+     *
+     * <p>
+     * The value is parsed from the header as it is, so the headers are not
+     * copied just to read it.
+     * </p>
+     *
+     * @param name the name.
+     * @return the int, or -1 if there is no such header.
+     * @throws NumberFormatException when the header is not an int.
+     */
+    @Override
+    public int getIntHeader(String name) {
+        String value = getHeader(name);
+        if (value == null) {
+            return -1;
+        }
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException exception) {
+            throw new NumberFormatException("Cannot convert header to an int");
+        }
+    }
+
+    @Override
+    public ServletInputStream getInputStream() throws IOException {
+        verifyNotRecycled();
+        return super.getInputStream();
+    }
+
+    @Override
+    public String getLocalAddr() {
+        if (localAddress == null) {
+            verifyNotRecycled();
+            localAddress = wrapped.getLocalAddress();
+        }
+        return localAddress;
+    }
+
+    @Override
+    public int getLocalPort() {
+        if (localPort == 0) {
+            verifyNotRecycled();
+            localPort = wrapped.getLocalPort();
+        }
+        return localPort;
+    }
+
+    @Override
+    public String getParameter(String name) {
+        verifyNotRecycled();
+        return super.getParameter(name);
+    }
+
+    @Override
+    public String getRemoteAddr() {
+        if (remoteAddr == null) {
+            verifyNotRecycled();
+            remoteAddr = wrapped.getRemoteAddress();
+        }
+        return remoteAddr;
+    }
+
+    @Override
+    public int getRemotePort() {
+        if (remotePort == 0) {
+            verifyNotRecycled();
+            remotePort = wrapped.getRemotePort();
+        }
+        return remotePort;
+    }
+
+    @Override
+    public String getRequestedSessionId() {
+        resolveRequestedSessionId();
+        return requestedSessionId;
+    }
+
+    /**
+     * {@return the server name}
+     *
+     * <p>
+     * The server name is taken from the Host header. Without one it is the
+     * local name.
+     * </p>
+     */
+    @Override
+    public String getServerName() {
+        if (serverName == null) {
+            String host = getHeader("Host");
+            if (host != null && !host.isBlank()) {
+                host = host.trim();
+                int end = host.startsWith("[") ? host.indexOf(']') + 1 : host.indexOf(':');
+                serverName = end > 0 ? host.substring(0, end) : host;
+            }
+        }
+        return super.getServerName();
+    }
+
+    @Override
+    public int getServerPort() {
+        if (serverPort == 0) {
+            serverPort = getLocalPort();
+        }
+        return serverPort;
+    }
+
+    @Override
+    public HttpSession getSession(boolean create) {
+        verifyNotRecycled();
+        return super.getSession(create);
+    }
+
+    @Override
+    public boolean isRequestedSessionIdFromCookie() {
+        resolveRequestedSessionId();
+        return requestedSessionIdFromCookie;
+    }
+
+    @Override
+    public boolean isRequestedSessionIdFromURL() {
+        resolveRequestedSessionId();
+        return requestedSessionIdFromURL;
+    }
+
+    /**
+     * Recycle the request.
+     *
+     * <p>
+     * Besides putting the request back in its initial state this lets go of
+     * the wrapped HttpServerRequest.
+     * </p>
+     */
+    @Override
+    public void recycle() {
+        super.recycle();
+        cookiesParsed = false;
+        headersCopied = false;
+        requestedSessionIdResolved = false;
+        urlSessionId = null;
+        wrapped = null;
+        recycled = true;
+    }
+
+    @Override
+    public void setAttribute(String name, Object value) {
+        verifyNotRecycled();
+        super.setAttribute(name, value);
+    }
+
+    @Override
+    public void setCookies(Cookie[] cookies) {
+        cookiesParsed = true;
+        super.setCookies(cookies);
+    }
+
+    @Override
+    public void setHeader(String name, String value) {
+        copyHeaders();
+        super.setHeader(name, value);
+    }
+
+    @Override
+    public void setRequestedSessionId(String requestedSessionId) {
+        requestedSessionIdResolved = true;
+        super.setRequestedSessionId(requestedSessionId);
+    }
+
+    /**
+     * {@return true if the request can be recycled once it has been processed}
+     *
+     * <p>
+     * A request that has gone async or has been upgraded may still be used by
+     * another thread, so it cannot be recycled.
+     * </p>
+     */
+    boolean isRecyclable() {
+        return asyncContext == null && !upgraded;
+    }
+
+    /**
+     * Reuse the recycled request for the given HttpServerRequest.
+     *
+     * @param wrapped the wrapped HttpServerRequest.
+     */
+    void reuse(HttpServerRequest wrapped) {
+        recycled = false;
+        wrap(wrapped);
+    }
+
+    /**
+     * Copy the headers of the wrapped request, so they can be changed.
+     */
+    private void copyHeaders() {
+        if (!headersCopied) {
+            verifyNotRecycled();
+            Iterator<String> names = wrapped.getHeaderNames();
+            while (names.hasNext()) {
+                String name = names.next();
+                Iterator<String> values = wrapped.getHeaders(name);
+                if (values.hasNext()) {
+                    headerManager.setHeader(name, values.next());
+                }
+                while (values.hasNext()) {
+                    headerManager.addHeader(name, values.next());
+                }
+            }
+            headersCopied = true;
+        }
+    }
+
+    /**
+     * Determine the requested session id.
+     *
+     * <p>
+     * A JSESSIONID cookie takes precedence over a session id in the request
+     * target.
+     * </p>
+     */
+    private void resolveRequestedSessionId() {
+        if (!requestedSessionIdResolved) {
+            requestedSessionIdResolved = true;
+            Cookie[] requestCookies = getCookies();
+            if (requestCookies != null) {
+                for (Cookie cookie : requestCookies) {
+                    if ("JSESSIONID".equals(cookie.getName())) {
+                        requestedSessionId = cookie.getValue();
+                        requestedSessionIdFromCookie = true;
+                        return;
+                    }
+                }
+            }
+            if (urlSessionId != null) {
+                requestedSessionId = urlSessionId;
+                requestedSessionIdFromURL = true;
+            }
+        }
+    }
+
+    /**
+     * Verify the request has not been recycled.
+     *
+     * @throws IllegalStateException when the request has been recycled.
+     */
+    private void verifyNotRecycled() {
+        if (recycled) {
+            throw new IllegalStateException("The request was used after it was recycled");
+        }
+    }
+
+    /**
+     * Take over the request line, Content-Type and Content-Length of the given
+     * HttpServerRequest.
+     *
+     * @param wrapped the wrapped HttpServerRequest.
+     */
+    private void wrap(HttpServerRequest wrapped) {
+        this.wrapped = wrapped;
+        this.serverName = null;
+        this.serverPort = 0;
+        setMethod(wrapped.getMethod());
+        setProtocol(wrapped.getProtocol());
+        setQueryString(wrapped.getQueryString());
+        setInputStream(wrapped.getInputStream());
+        String target = wrapped.getRequestTarget();
+        if (target != null) {
+            int index = target.indexOf(JSESSIONID);
+            if (index > -1) {
+                urlSessionId = target.substring(index + JSESSIONID.length());
+                target = target.substring(0, index);
+            }
+            setContextPath(target);
+        }
+        String contentTypeHeader = wrapped.getHeader("Content-Type");
+        if (contentTypeHeader != null) {
+            setContentType(contentTypeHeader);
+        }
+        String contentLengthHeader = wrapped.getHeader("Content-Length");
+        if (contentLengthHeader != null) {
+            try {
+                setContentLength(Integer.parseInt(contentLengthHeader.trim()));
+            } catch (NumberFormatException nfe) {
+                // the content length stays unknown.
+            }
+        }
+    }
 }
@@ -29,11 +29,20 @@ package cloud.piranha.http.webapp;
 
 import cloud.piranha.http.api.HttpServerResponse;
 import cloud.piranha.webapp.impl.DefaultWebApplicationResponse;
+import jakarta.servlet.http.Cookie;
 import java.io.IOException;
+import java.nio.channels.FileChannel;
 
 /**
  * The HttpServerResponse variant of WebApplicationResponse.
  *
+ * <p>
+ * When recycling is enabled on the HttpWebApplicationServer the response is
+ * recycled once it has been processed, and reused for a next HTTP server
+ * response. In recycling debug mode a RecyclingCheckResponse is used
+ * instead, which refuses to be used once it has been recycled.
+ * </p>
+ *
  * @author Manfred Riem (mriem@manorrock.com)
  */
 public class HttpWebApplicationResponse extends DefaultWebApplicationResponse {
@@ -41,7 +50,7 @@ public class HttpWebApplicationResponse extends DefaultWebApplicationResponse {
     /**
      * Stores the wrapped HttpServerResponse.
      */
-    private final HttpServerResponse wrapped;
+    private HttpServerResponse wrapped;
 
     /**
      * Constructor.
@@ -53,12 +62,58 @@ public class HttpWebApplicationResponse extends DefaultWebApplicationResponse {
         setUnderlyingOutputStream(wrapped.getOutputStream());
     }
 
+    /**
+     * Recycle the response.
+     *
+     * <p>
+     * Besides putting the response back in its initial state this lets go of
+     * the wrapped HttpServerResponse.
+     * </p>
+     */
+    @Override
+    public void recycle() {
+        super.recycle();
+        outputStream = null;
+        responseCloser = null;
+        wrapped = null;
+    }
+
+    /**
+     * Transfer a region of a file.
+     *
+     * <p>
+     * The region is handed to the wrapped HttpServerResponse, which can send
+     * it to the connection without copying it through the heap.
+     * </p>
+     *
+     * @param fileChannel the file channel.
+     * @param position the position of the region in the file.
+     * @param length the length of the region.
+     * @throws IOException when an I/O error occurs.
+     */
+    @Override
+    protected void transferFile(FileChannel fileChannel, long position, long length) throws IOException {
+        wrapped.writeFile(fileChannel, position, length);
+    }
+
     @Override
     public void writeStatusLine() throws IOException {
         wrapped.setStatus(status);
         wrapped.writeStatusLine();
     }
 
+    /**
+     * Write the headers.
+     *
+     * <p>
+     * The headers are handed to the wrapped HttpServerResponse so the HTTP
+     * server knows how the response is framed (e.g. whether it can keep the
+     * connection open). If the content length is not known at this point the
+     * body is sent with chunked transfer-encoding, when supported.
+     * </p>
+     *
+     * @throws IOException when an I/O error occurs.
+     */
     @Override
     public void writeHeaders() throws IOException {
         if (contentType != null) {
@@ -69,11 +124,36 @@ public class HttpWebApplicationResponse extends DefaultWebApplicationResponse {
                         .append(";charset=")
                         .append(characterEncoding);
             }
-            setHeader("Content-Type", contentTypeBuilder.toString());
+            wrapped.setHeader("Content-Type", contentTypeBuilder.toString());
         }
         if (contentLanguage != null) {
-            setHeader("Content-Language", contentLanguage);
+            wrapped.setHeader("Content-Language", contentLanguage);
+        }
+        for (Cookie cookie : cookies) {
+            wrapped.addHeader("Set-Cookie", formatCookie(cookie));
+        }
+        for (String name : getHeaderNames()) {
+            for (String value : getHeaders(name)) {
+                if (value != null) {
+                    wrapped.addHeader(name, value);
+                }
+            }
+        }
+        if (wrapped.getHeader("Content-Length") == null
+                && wrapped.getHeader("Transfer-Encoding") == null
+                && wrapped.isChunkedEncodingSupported()) {
+            wrapped.setHeader("Transfer-Encoding", "chunked");
         }
         wrapped.writeHeaders();
     }
+
+    /**
+     * Reuse the recycled response for the given HttpServerResponse.
+     *
+     * @param wrapped the wrapped HttpServerResponse.
+     */
+    void reuse(HttpServerResponse wrapped) {
+        this.wrapped = wrapped;
+        setUnderlyingOutputStream(wrapped.getOutputStream());
+    }
 }
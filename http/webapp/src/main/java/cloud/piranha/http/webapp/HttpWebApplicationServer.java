@@ -34,11 +34,9 @@ import java.util.Iterator;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 import java.lang.System.Logger;
-import java.util.stream.Stream;
 
-import cloud.piranha.webapp.impl.CookieParser;
+import cloud.piranha.webapp.impl.DefaultHostNameResolver;
 import jakarta.servlet.ServletException;
-import jakarta.servlet.http.Cookie;
 
 import cloud.piranha.webapp.api.WebApplicationServer;
 import cloud.piranha.webapp.api.WebApplicationServerRequestMapper;
@@ -49,7 +47,6 @@ import cloud.piranha.naming.thread.ThreadInitialContextFactory;
 import cloud.piranha.webapp.api.WebApplication;
 import cloud.piranha.webapp.api.WebApplicationRequest;
 import cloud.piranha.webapp.api.WebApplicationResponse;
-import cloud.piranha.webapp.impl.DefaultWebApplicationRequest;
 import cloud.piranha.webapp.impl.DefaultWebApplicationResponse;
 import static java.lang.System.Logger.Level.ERROR;
 import static java.lang.System.Logger.Level.INFO;
@@ -66,6 +63,21 @@ public class HttpWebApplicationServer implements HttpServerProcessor, WebApplica
      */
     private static final Logger LOGGER = System.getLogger(HttpWebApplicationServer.class.getPackageName());
     
+    /**
+     * Stores the host name resolver.
+     */
+    protected DefaultHostNameResolver hostNameResolver;
+
+    /**
+     * Stores the recycling flag.
+     */
+    protected boolean recycling;
+
+    /**
+     * Stores the recycling debug flag.
+     */
+    protected boolean recyclingDebug;
+
     /**
      * Stores the request mapper.
      */
@@ -76,12 +88,25 @@ public class HttpWebApplicationServer implements HttpServerProcessor, WebApplica
      */
     protected final Map<String, WebApplication> webApplications;
 
+    /**
+     * Stores the recycled request of the current thread.
+     */
+    private final ThreadLocal<HttpWebApplicationRequest> recycledRequest;
+
+    /**
+     * Stores the recycled response of the current thread.
+     */
+    private final ThreadLocal<HttpWebApplicationResponse> recycledResponse;
+
     /**
      * Constructor.
      */
     public HttpWebApplicationServer() {
+        this.hostNameResolver = new DefaultHostNameResolver();
         this.requestMapper = new HttpWebApplicationServerRequestMapper();
         this.webApplications = new ConcurrentHashMap<>();
+        this.recycledRequest = new ThreadLocal<>();
+        this.recycledResponse = new ThreadLocal<>();
     }
 
     /**
@@ -111,85 +136,49 @@ public class HttpWebApplicationServer implements HttpServerProcessor, WebApplica
     /**
      * Create the web application server request.
      *
+     * <p>
+     * The request only takes over what it needs from the HTTP server request
+     * when it is first asked for. When recycling is enabled the recycled
+     * request of the current thread is reused, if there is one.
+     * </p>
+     *
      * @param request the HTTP server request.
      * @return the web application server request.
      */
-    private WebApplicationRequest createRequest(HttpServerRequest request) {
-        DefaultWebApplicationRequest applicationServerRequest = new DefaultWebApplicationRequest();
-        copyHttpRequestToApplicationRequest(request, applicationServerRequest);
-        applicationServerRequest.setServletPath("");
-
-        Iterator<String> headerNames = request.getHeaderNames();
-        while (headerNames.hasNext()) {
-            String name = headerNames.next();
-            String value = request.getHeader(name);
-            applicationServerRequest.setHeader(name, value);
-            if (name.equalsIgnoreCase("Content-Type")) {
-                applicationServerRequest.setContentType(value);
-            }
-            if (name.equalsIgnoreCase("Content-Length")) {
-                applicationServerRequest.setContentLength(Integer.parseInt(value));
-            }
-            if (name.equalsIgnoreCase("COOKIE")) {
-                applicationServerRequest.setCookies(processCookies(applicationServerRequest, value));
-            }
+    private HttpWebApplicationRequest createRequest(HttpServerRequest request) {
+        HttpWebApplicationRequest applicationServerRequest = recycling ? recycledRequest.get() : null;
+        if (applicationServerRequest != null) {
+            recycledRequest.remove();
+            applicationServerRequest.reuse(request);
+        } else {
+            applicationServerRequest = new HttpWebApplicationRequest(request);
         }
-
-        String contextPath = applicationServerRequest.getContextPath();
-        if (contextPath != null) {
-            String jsessionid = ";jsessionid=";
-            int indexJsessionid = contextPath.indexOf(jsessionid);
-            if (indexJsessionid > -1) {
-                applicationServerRequest.setContextPath(contextPath.substring(0, indexJsessionid));
-                if (!applicationServerRequest.isRequestedSessionIdFromCookie()) {
-                    applicationServerRequest.setRequestedSessionIdFromURL(true);
-                    applicationServerRequest.setRequestedSessionId(contextPath.substring(indexJsessionid + jsessionid.length()));
-                }
-            }
-        }
-
+        applicationServerRequest.setHostNameResolver(hostNameResolver);
         return applicationServerRequest;
     }
 
-    private Cookie[] processCookies(DefaultWebApplicationRequest result, String cookiesValue) {
-        Cookie[] cookies = CookieParser.parse(cookiesValue);
-
-        Stream.of(cookies)
-                .filter(x -> "JSESSIONID".equals(x.getName()))
-                .findAny()
-                .ifPresent(cookie -> {
-                    result.setRequestedSessionIdFromCookie(true);
-                    result.setRequestedSessionId(cookie.getValue());
-                });
-
-        return cookies;
-    }
-
-    private void copyHttpRequestToApplicationRequest(HttpServerRequest httpRequest, DefaultWebApplicationRequest applicationRequest) {
-        applicationRequest.setLocalAddr(httpRequest.getLocalAddress());
-        applicationRequest.setLocalName(httpRequest.getLocalHostname());
-        applicationRequest.setLocalPort(httpRequest.getLocalPort());
-        applicationRequest.setRemoteAddr(httpRequest.getRemoteAddress());
-        applicationRequest.setRemoteHost(httpRequest.getRemoteHostname());
-        applicationRequest.setRemotePort(httpRequest.getRemotePort());
-        applicationRequest.setServerName(httpRequest.getLocalHostname());
-        applicationRequest.setServerPort(httpRequest.getLocalPort());
-        applicationRequest.setMethod(httpRequest.getMethod());
-        applicationRequest.setContextPath(httpRequest.getRequestTarget());
-        applicationRequest.setQueryString(httpRequest.getQueryString());
-        applicationRequest.setInputStream(httpRequest.getInputStream());
-        applicationRequest.setProtocol(httpRequest.getProtocol());
-    }
-
     /**
      * Create the web application server response.
      *
+     * <p>
+     * When recycling is enabled the recycled response of the current thread
+     * is reused, if there is one. In recycling debug mode the response checks
+     * it is not used after it was recycled.
+     * </p>
+     *
      * @param httpResponse the HTTP server response.
      * @return the web application server response.
      */
     public DefaultWebApplicationResponse createResponse(HttpServerResponse httpResponse) {
-        DefaultWebApplicationResponse applicationResponse = new DefaultWebApplicationResponse();
-        applicationResponse.setUnderlyingOutputStream(httpResponse.getOutputStream());
+        HttpWebApplicationResponse applicationResponse = recycling ? recycledResponse.get() : null;
+        if (applicationResponse != null) {
+            recycledResponse.remove();
+            applicationResponse.reuse(httpResponse);
+        } else if (recycling && recyclingDebug) {
+            applicationResponse = new RecyclingCheckResponse(httpResponse);
+        } else {
+            applicationResponse = new HttpWebApplicationResponse(httpResponse);
+        }
 
         applicationResponse.setResponseCloser(() -> {
             try {
@@ -202,6 +191,13 @@ public class HttpWebApplicationServer implements HttpServerProcessor, WebApplica
         return applicationResponse;
     }
 
+    /**
+     * {@return the host name resolver}
+     */
+    public DefaultHostNameResolver getHostNameResolver() {
+        return hostNameResolver;
+    }
+
     /**
      * {@return the request mapper}
      */
@@ -225,19 +221,60 @@ public class HttpWebApplicationServer implements HttpServerProcessor, WebApplica
         LOGGER.log(INFO, "Finished initialization of {0} web application(s)", webApplications.size());
     }
 
+    /**
+     * {@return the recycling flag}
+     */
+    public boolean isRecycling() {
+        return recycling;
+    }
+
+    /**
+     * {@return the recycling debug flag}
+     */
+    public boolean isRecyclingDebug() {
+        return recyclingDebug;
+    }
+
     @Override
     public boolean process(HttpServerRequest request, HttpServerResponse response) {
         try {
-            DefaultWebApplicationRequest serverRequest = (DefaultWebApplicationRequest) createRequest(request);
-            DefaultWebApplicationResponse serverResponse = (DefaultWebApplicationResponse) createResponse(response);
+            HttpWebApplicationRequest serverRequest = createRequest(request);
+            DefaultWebApplicationResponse serverResponse = createResponse(response);
             service(serverRequest, serverResponse);
-            return serverRequest.isAsyncStarted();
+            boolean asyncStarted = serverRequest.isAsyncStarted();
+            if (recycling) {
+                recycle(serverRequest, serverResponse);
+            }
+            return asyncStarted;
         } catch (Throwable t) {
             LOGGER.log(ERROR, "An error occurred while processing the request", t);
         }
         return false;
     }
 
+    /**
+     * Recycle the request and response once they have been processed.
+     *
+     * <p>
+     * A request that has gone async or has been upgraded is left alone, as is
+     * its response. In debug mode the recycled request and response are not
+     * reused, so any use of them afterwards fails.
+     * </p>
+     *
+     * @param request the request.
+     * @param response the response.
+     */
+    private void recycle(HttpWebApplicationRequest request, DefaultWebApplicationResponse response) {
+        if (request.isRecyclable() && response instanceof HttpWebApplicationResponse httpResponse) {
+            request.recycle();
+            httpResponse.recycle();
+            if (!recyclingDebug) {
+                recycledRequest.set(request);
+                recycledResponse.set(httpResponse);
+            }
+        }
+    }
+
     /**
      * Service method.
      *
@@ -280,6 +317,45 @@ public class HttpWebApplicationServer implements HttpServerProcessor, WebApplica
         }
     }
 
+    /**
+     * Set the host name resolver.
+     *
+     * @param hostNameResolver the host name resolver.
+     */
+    public void setHostNameResolver(DefaultHostNameResolver hostNameResolver) {
+        this.hostNameResolver = hostNameResolver;
+    }
+
+    /**
+     * Set the recycling flag.
+     *
+     * <p>
+     * When enabled the request and response objects are recycled once a
+     * request has been processed, and reused by the next request processed on
+     * the same thread.
+     * </p>
+     *
+     * @param recycling the recycling flag.
+     */
+    public void setRecycling(boolean recycling) {
+        this.recycling = recycling;
+    }
+
+    /**
+     * Set the recycling debug flag.
+     *
+     * <p>
+     * When enabled together with recycling the request and response objects
+     * are recycled but never reused, so a request or response that is used
+     * after it was recycled is detected by an IllegalStateException.
+     * </p>
+     *
+     * @param recyclingDebug the recycling debug flag.
+     */
+    public void setRecyclingDebug(boolean recyclingDebug) {
+        this.recyclingDebug = recyclingDebug;
+    }
+
     /**
      * Set the request mapper.
      *
@@ -27,10 +27,11 @@
  */
 package cloud.piranha.http.webapp;
 
-import java.util.Enumeration;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.Set;
-import java.util.concurrent.ConcurrentHashMap;
 
 import cloud.piranha.webapp.api.WebApplicationServerRequestMapper;
 import cloud.piranha.webapp.api.WebApplication;
@@ -38,6 +39,19 @@ import cloud.piranha.webapp.api.WebApplication;
 /**
  * The default WebApplicationServerRequestMapper.
  *
+ * <p>
+ * The context paths are kept in a trie of path segments, so finding the web
+ * application for a path only looks at the segments of that path and not at
+ * every context path. A context path matches a path when all its segments are
+ * the leading segments of the path, and the longest matching context path
+ * wins. The empty context path matches every path.
+ * </p>
+ *
+ * <p>
+ * The trie is never changed once it is published. Adding a mapping builds a
+ * new trie and publishes it, so finding a mapping does not need a lock.
+ * </p>
+ *
  * @author Manfred Riem (mriem@manorrock.com)
  */
 public class HttpWebApplicationServerRequestMapper implements WebApplicationServerRequestMapper {
@@ -45,7 +59,12 @@ public class HttpWebApplicationServerRequestMapper implements WebApplicationServ
     /**
      * Stores the mappings.
      */
-    private final ConcurrentHashMap<String, WebApplication> mappings = new ConcurrentHashMap<>();
+    private final Map<String, WebApplication> mappings = new LinkedHashMap<>();
+
+    /**
+     * Stores the root of the trie.
+     */
+    private volatile Node root = new Node();
 
     /**
      * Add a mapping.
@@ -55,7 +74,7 @@ public class HttpWebApplicationServerRequestMapper implements WebApplicationServ
      * @return the url patterns not added.
      */
     @Override
-    public Set<String> addMapping(WebApplication webApplication, String... urlPatterns) {
+    public synchronized Set<String> addMapping(WebApplication webApplication, String... urlPatterns) {
         Set<String> result = new HashSet<>();
 
         for (String urlPattern : urlPatterns) {
@@ -66,6 +85,12 @@ public class HttpWebApplicationServerRequestMapper implements WebApplicationServ
             }
         }
 
+        if (result.size() < urlPatterns.length) {
+            Node newRoot = new Node();
+            mappings.forEach((contextPath, mappedWebApplication) -> newRoot.add(contextPath, mappedWebApplication));
+            root = newRoot;
+        }
+
         return result;
     }
 
@@ -77,62 +102,93 @@ public class HttpWebApplicationServerRequestMapper implements WebApplicationServ
      */
     @Override
     public WebApplication findMapping(String path) {
-        WebApplication result = null;
-        String mapping = findPrefixMatch(path);
-        if (mapping != null) {
-            result = this.mappings.get(mapping);
-        }
-        return result;
+        Node node = findNode(path);
+        return node != null ? node.webApplication : null;
     }
 
     /**
-     * Find a mapping with the longest prefix mapping.
+     * Find the longest context path that matches the given path.
      *
      * @param path the path.
-     * @return the mapping, or null if not found.
+     * @return the context path, or null if not found.
      */
-    private String findPrefixMatch(String path) {
-        String result = null;
-        String found;
-
-        for (;;) {
-            found = findPrefixMatch(path, result);
-            if (found != null) {
-                result = found;
-            } else {
-                break;
-            }
-        }
-
-        return result;
+    public String findPrefixMatch(String path) {
+        Node node = findNode(path);
+        return node != null ? node.contextPath : null;
     }
 
     /**
-     * Find a mapping with a prefix mapping longer than the given current
-     * prefix.
+     * Find the deepest trie node with a mapping that matches the given path.
      *
      * @param path the path.
-     * @param currentPrefix the current matched prefix.
-     * @return the mapping, or null if not found.
+     * @return the node, or null if not found.
      */
-    public String findPrefixMatch(String path, String currentPrefix) {
-        String result = null;
-        Enumeration<String> prefixes = mappings.keys();
-
-        while (prefixes.hasMoreElements()) {
-            String prefix = prefixes.nextElement();
-            if (path.startsWith(prefix)) {
-                if (result == null) {
-                    result = prefix;
-                }
+    private Node findNode(String path) {
+        Node node = root;
+        Node result = node.webApplication != null ? node : null;
+        int length = path.length();
+        int start = 0;
+        while (start < length && node.children != null) {
+            if (path.charAt(start) == '/') {
+                start++;
+                continue;
+            }
+            int end = path.indexOf('/', start);
+            if (end == -1) {
+                end = length;
+            }
+            node = node.children.get(path.substring(start, end));
+            if (node == null) {
                 break;
             }
+            if (node.webApplication != null) {
+                result = node;
+            }
+            start = end;
         }
+        return result;
+    }
+
+    /**
+     * A node in the trie of context path segments.
+     */
+    private static class Node {
+
+        /**
+         * Stores the child nodes by path segment (null if there are none).
+         */
+        private Map<String, Node> children;
+
+        /**
+         * Stores the context path mapped to this node (null if none).
+         */
+        private String contextPath;
+
+        /**
+         * Stores the web application mapped to this node (null if none).
+         */
+        private WebApplication webApplication;
 
-        if (result != null && currentPrefix != null
-                && result.length() <= currentPrefix.length()) {
-            result = null;
+        /**
+         * Add a context path below this node.
+         *
+         * @param contextPath the context path.
+         * @param webApplication the web application.
+         */
+        void add(String contextPath, WebApplication webApplication) {
+            Node node = this;
+            for (String segment : contextPath.split("/")) {
+                if (!segment.isEmpty()) {
+                    if (node.children == null) {
+                        node.children = new HashMap<>();
+                    }
+                    node = node.children.computeIfAbsent(segment, key -> new Node());
+                }
+            }
+            if (node.webApplication == null) {
+                node.contextPath = contextPath;
+                node.webApplication = webApplication;
+            }
         }
-        return result;
     }
 }
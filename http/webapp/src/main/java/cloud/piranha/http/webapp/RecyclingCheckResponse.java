@@ -0,0 +1,326 @@
+/*
+ * Copyright (c) 2002-2021 Manorrock.com. All Rights Reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   1. Redistributions of source code must retain the above copyright notice,
+ *      this list of conditions and the following disclaimer.
+ *   2. Redistributions in binary form must reproduce the above copyright
+ *      notice, this list of conditions and the following disclaimer in the
+ *      documentation and/or other materials provided with the distribution.
+ *   3. Neither the name of the copyright holder nor the names of its
+ *      contributors may be used to endorse or promote products derived from
+ *      this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package cloud.piranha.http.webapp;
+
+import cloud.piranha.http.api.HttpServerResponse;
+import jakarta.servlet.ServletOutputStream;
+import jakarta.servlet.http.Cookie;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Locale;
+
+/**
+ * The HttpWebApplicationResponse used in recycling debug mode.
+ *
+ * <p>
+ * Once recycled the response refuses to be used, including through an
+ * output stream or writer obtained before it was recycled. As these checks
+ * cost something on every call they are only installed in recycling debug
+ * mode, where a recycled response is never reused.
+ * </p>
+ *
+ * @author Manfred Riem (mriem@manorrock.com)
+ */
+class RecyclingCheckResponse extends HttpWebApplicationResponse {
+
+    /**
+     * Stores the recycled flag.
+     */
+    private boolean recycled;
+
+    /**
+     * Constructor.
+     *
+     * @param wrapped the wrapped HttpServerResponse.
+     */
+    RecyclingCheckResponse(HttpServerResponse wrapped) {
+        super(wrapped);
+    }
+
+    @Override
+    public void addCookie(Cookie cookie) {
+        verifyNotRecycled();
+        super.addCookie(cookie);
+    }
+
+    @Override
+    public void addDateHeader(String name, long date) {
+        verifyNotRecycled();
+        super.addDateHeader(name, date);
+    }
+
+    @Override
+    public void addHeader(String name, String value) {
+        verifyNotRecycled();
+        super.addHeader(name, value);
+    }
+
+    @Override
+    public void addIntHeader(String name, int value) {
+        verifyNotRecycled();
+        super.addIntHeader(name, value);
+    }
+
+    @Override
+    public void close() throws IOException {
+        verifyNotRecycled();
+        super.close();
+    }
+
+    @Override
+    public void flush() throws IOException {
+        verifyNotRecycled();
+        super.flush();
+    }
+
+    @Override
+    public void flushBuffer() throws IOException {
+        verifyNotRecycled();
+        super.flushBuffer();
+    }
+
+    @Override
+    public ServletOutputStream getOutputStream() throws IOException {
+        verifyNotRecycled();
+        return super.getOutputStream();
+    }
+
+    /**
+     * Get the writer.
+     *
+     * <p>
+     * The writer verifies the response has not been recycled whenever it is
+     * written to or flushed.
+     * </p>
+     *
+     * @return the writer.
+     * @throws IOException when an I/O error occurs.
+     */
+    @Override
+    public PrintWriter getWriter() throws IOException {
+        verifyNotRecycled();
+        PrintWriter result = super.getWriter();
+        if (!(result instanceof RecyclingCheckWriter)) {
+            writer = new RecyclingCheckWriter(result);
+            result = writer;
+        }
+        return result;
+    }
+
+    /**
+     * Recycle the response.
+     *
+     * <p>
+     * A recycled response is never reused, so any use of it afterwards
+     * fails.
+     * </p>
+     */
+    @Override
+    public void recycle() {
+        super.recycle();
+        recycled = true;
+    }
+
+    @Override
+    public void reset() {
+        verifyNotRecycled();
+        super.reset();
+    }
+
+    @Override
+    public void resetBuffer() {
+        verifyNotRecycled();
+        super.resetBuffer();
+    }
+
+    @Override
+    public void sendError(int status) throws IOException {
+        verifyNotRecycled();
+        super.sendError(status);
+    }
+
+    @Override
+    public void sendError(int status, String statusMessage) throws IOException {
+        verifyNotRecycled();
+        super.sendError(status, statusMessage);
+    }
+
+    @Override
+    public void sendRedirect(String location) throws IOException {
+        verifyNotRecycled();
+        super.sendRedirect(location);
+    }
+
+    @Override
+    public void setBufferSize(int bufferSize) {
+        verifyNotRecycled();
+        super.setBufferSize(bufferSize);
+    }
+
+    @Override
+    public void setCharacterEncoding(String characterEncoding) {
+        verifyNotRecycled();
+        super.setCharacterEncoding(characterEncoding);
+    }
+
+    @Override
+    public void setContentLength(int contentLength) {
+        verifyNotRecycled();
+        super.setContentLength(contentLength);
+    }
+
+    @Override
+    public void setContentLengthLong(long contentLength) {
+        verifyNotRecycled();
+        super.setContentLengthLong(contentLength);
+    }
+
+    @Override
+    public void setContentType(String type) {
+        verifyNotRecycled();
+        super.setContentType(type);
+    }
+
+    @Override
+    public void setDateHeader(String name, long date) {
+        verifyNotRecycled();
+        super.setDateHeader(name, date);
+    }
+
+    @Override
+    public void setHeader(String name, String value) {
+        verifyNotRecycled();
+        super.setHeader(name, value);
+    }
+
+    @Override
+    public void setIntHeader(String name, int value) {
+        verifyNotRecycled();
+        super.setIntHeader(name, value);
+    }
+
+    @Override
+    public void setLocale(Locale locale) {
+        verifyNotRecycled();
+        super.setLocale(locale);
+    }
+
+    @Override
+    public void setStatus(int status) {
+        verifyNotRecycled();
+        super.setStatus(status);
+    }
+
+    @Override
+    public void setStatus(int status, String statusMessage) {
+        verifyNotRecycled();
+        super.setStatus(status, statusMessage);
+    }
+
+    @Override
+    public void write(int integer) throws IOException {
+        verifyNotRecycled();
+        super.write(integer);
+    }
+
+    @Override
+    public void write(byte[] bytes, int offset, int length) throws IOException {
+        verifyNotRecycled();
+        super.write(bytes, offset, length);
+    }
+
+    @Override
+    public void write(ByteBuffer byteBuffer) throws IOException {
+        verifyNotRecycled();
+        super.write(byteBuffer);
+    }
+
+    @Override
+    public void writeFile(FileChannel fileChannel, long position, long length) throws IOException {
+        verifyNotRecycled();
+        super.writeFile(fileChannel, position, length);
+    }
+
+    /**
+     * Verify the response has not been recycled.
+     *
+     * @throws IllegalStateException when the response has been recycled.
+     */
+    private void verifyNotRecycled() {
+        if (recycled) {
+            throw new IllegalStateException("The response was used after it was recycled");
+        }
+    }
+
+    /**
+     * The writer that verifies the response has not been recycled.
+     */
+    private class RecyclingCheckWriter extends PrintWriter {
+
+        /**
+         * Constructor.
+         *
+         * @param writer the writer of the response.
+         */
+        RecyclingCheckWriter(PrintWriter writer) {
+            super(writer, false);
+        }
+
+        @Override
+        public void close() {
+            verifyNotRecycled();
+            super.close();
+        }
+
+        @Override
+        public void flush() {
+            verifyNotRecycled();
+            super.flush();
+        }
+
+        @Override
+        public void write(char[] buffer, int offset, int length) {
+            verifyNotRecycled();
+            super.write(buffer, offset, length);
+        }
+
+        @Override
+        public void write(int character) {
+            verifyNotRecycled();
+            super.write(character);
+        }
+
+        @Override
+        public void write(String string, int offset, int length) {
+            verifyNotRecycled();
+            super.write(string, offset, length);
+        }
+    }
+}
@@ -0,0 +1,263 @@
+/*
+ * Copyright (c) 2002-2021 Manorrock.com. All Rights Reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   1. Redistributions of source code must retain the above copyright notice,
+ *      this list of conditions and the following disclaimer.
+ *   2. Redistributions in binary form must reproduce the above copyright
+ *      notice, this list of conditions and the following disclaimer in the
+ *      documentation and/or other materials provided with the distribution.
+ *   3. Neither the name of the copyright holder nor the names of its
+ *      contributors may be used to endorse or promote products derived from
+ *      this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package cloud.piranha.http.webapp.tests;
+
+import cloud.piranha.http.api.HttpServerRequest;
+import cloud.piranha.http.webapp.HttpWebApplicationRequest;
+import jakarta.servlet.http.Cookie;
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+
+/**
+ * The JUnit tests for the HttpWebApplicationRequest class.
+ *
+ * @author Manfred Riem (mriem@manorrock.com)
+ */
+class HttpWebApplicationRequestTest {
+
+    /**
+     * Test that the remote address is only taken when asked for.
+     */
+    @Test
+    void testGetRemoteAddr() {
+        TestRequest wrapped = new TestRequest("/context/path");
+        HttpWebApplicationRequest request = new HttpWebApplicationRequest(wrapped);
+        assertEquals(0, wrapped.remoteAddressCalls);
+        assertEquals("127.0.0.2", request.getRemoteAddr());
+        assertEquals("127.0.0.2", request.getRemoteAddr());
+        assertEquals(1, wrapped.remoteAddressCalls);
+        assertEquals(9999, request.getRemotePort());
+        assertEquals("127.0.0.1", request.getLocalAddr());
+        assertEquals(8080, request.getLocalPort());
+    }
+
+    /**
+     * Test getHeader and setHeader methods.
+     */
+    @Test
+    void testGetHeader() {
+        TestRequest wrapped = new TestRequest("/context/path");
+        wrapped.headers.put("X-Test", "value");
+        HttpWebApplicationRequest request = new HttpWebApplicationRequest(wrapped);
+        assertEquals("value", request.getHeader("X-Test"));
+        request.setHeader("X-Other", "other");
+        assertEquals("value", request.getHeader("X-Test"));
+        assertEquals("other", request.getHeader("X-Other"));
+    }
+
+    /**
+     * Test getIntHeader and getDateHeader methods do not copy the headers.
+     */
+    @Test
+    void testGetIntAndDateHeader() {
+        TestRequest wrapped = new TestRequest("/context/path");
+        wrapped.headers.put("X-Int", "42");
+        wrapped.headers.put("X-Date", "Thu, 01 Jan 1970 00:00:01 GMT");
+        HttpWebApplicationRequest request = new HttpWebApplicationRequest(wrapped);
+        assertEquals(42, request.getIntHeader("X-Int"));
+        assertEquals(-1, request.getIntHeader("X-Missing"));
+        assertEquals(1000, request.getDateHeader("X-Date"));
+        assertEquals(-1, request.getDateHeader("X-Missing"));
+        assertThrows(NumberFormatException.class, () -> request.getIntHeader("X-Date"));
+        assertThrows(IllegalArgumentException.class, () -> request.getDateHeader("X-Int"));
+        assertEquals(0, wrapped.headerNamesCalls);
+    }
+
+    /**
+     * Test getCookies method.
+     */
+    @Test
+    void testGetCookies() {
+        TestRequest wrapped = new TestRequest("/context/path");
+        wrapped.headers.put("Cookie", "name=value");
+        HttpWebApplicationRequest request = new HttpWebApplicationRequest(wrapped);
+        Cookie[] cookies = request.getCookies();
+        assertEquals(1, cookies.length);
+        assertEquals("value", cookies[0].getValue());
+    }
+
+    /**
+     * Test getRequestedSessionId method with the session id in the URL.
+     */
+    @Test
+    void testGetRequestedSessionIdFromURL() {
+        TestRequest wrapped = new TestRequest("/context/path;jsessionid=1234");
+        HttpWebApplicationRequest request = new HttpWebApplicationRequest(wrapped);
+        assertEquals("/context/path", request.getContextPath());
+        assertEquals("1234", request.getRequestedSessionId());
+        assertTrue(request.isRequestedSessionIdFromURL());
+        assertFalse(request.isRequestedSessionIdFromCookie());
+    }
+
+    /**
+     * Test getRequestedSessionId method with the session id in a cookie.
+     */
+    @Test
+    void testGetRequestedSessionIdFromCookie() {
+        TestRequest wrapped = new TestRequest("/context/path;jsessionid=1234");
+        wrapped.headers.put("Cookie", "JSESSIONID=5678");
+        HttpWebApplicationRequest request = new HttpWebApplicationRequest(wrapped);
+        assertEquals("5678", request.getRequestedSessionId());
+        assertTrue(request.isRequestedSessionIdFromCookie());
+        assertFalse(request.isRequestedSessionIdFromURL());
+    }
+
+    /**
+     * Test getServerName method.
+     */
+    @Test
+    void testGetServerName() {
+        TestRequest wrapped = new TestRequest("/context/path");
+        wrapped.headers.put("Host", "[::1]:8080");
+        HttpWebApplicationRequest request = new HttpWebApplicationRequest(wrapped);
+        assertEquals("[::1]", request.getServerName());
+        assertEquals(8080, request.getServerPort());
+        assertNull(request.getHeader("X-Missing"));
+    }
+
+    /**
+     * A test HttpServerRequest that counts how often its remote address is
+     * asked for.
+     */
+    static class TestRequest implements HttpServerRequest {
+
+        /**
+         * Stores the headers.
+         */
+        final Map<String, String> headers = new HashMap<>();
+
+        /**
+         * Stores the number of calls to getHeaderNames.
+         */
+        int headerNamesCalls;
+
+        /**
+         * Stores the number of calls to getRemoteAddress.
+         */
+        int remoteAddressCalls;
+
+        /**
+         * Stores the request target.
+         */
+        final String requestTarget;
+
+        /**
+         * Constructor.
+         *
+         * @param requestTarget the request target.
+         */
+        TestRequest(String requestTarget) {
+            this.requestTarget = requestTarget;
+        }
+
+        @Override
+        public String getHeader(String name) {
+            return headers.get(name);
+        }
+
+        @Override
+        public Iterator<String> getHeaders(String name) {
+            return headers.containsKey(name)
+                    ? Collections.singletonList(headers.get(name)).iterator()
+                    : Collections.emptyIterator();
+        }
+
+        @Override
+        public Iterator<String> getHeaderNames() {
+            headerNamesCalls++;
+            return headers.keySet().iterator();
+        }
+
+        @Override
+        public InputStream getInputStream() {
+            return new ByteArrayInputStream(new byte[0]);
+        }
+
+        @Override
+        public String getLocalAddress() {
+            return "127.0.0.1";
+        }
+
+        @Override
+        public String getLocalHostname() {
+            return "localhost";
+        }
+
+        @Override
+        public int getLocalPort() {
+            return 8080;
+        }
+
+        @Override
+        public String getMethod() {
+            return "GET";
+        }
+
+        @Override
+        public String getQueryParameter(String name) {
+            return null;
+        }
+
+        @Override
+        public String getQueryString() {
+            return null;
+        }
+
+        @Override
+        public String getRemoteAddress() {
+            remoteAddressCalls++;
+            return "127.0.0.2";
+        }
+
+        @Override
+        public String getRemoteHostname() {
+            return "localhost";
+        }
+
+        @Override
+        public int getRemotePort() {
+            return 9999;
+        }
+
+        @Override
+        public String getRequestTarget() {
+            return requestTarget;
+        }
+    }
+}
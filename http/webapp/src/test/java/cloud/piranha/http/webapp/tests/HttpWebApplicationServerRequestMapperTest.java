@@ -0,0 +1,88 @@
+/*
+ * Copyright (c) 2002-2021 Manorrock.com. All Rights Reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   1. Redistributions of source code must retain the above copyright notice,
+ *      this list of conditions and the following disclaimer.
+ *   2. Redistributions in binary form must reproduce the above copyright
+ *      notice, this list of conditions and the following disclaimer in the
+ *      documentation and/or other materials provided with the distribution.
+ *   3. Neither the name of the copyright holder nor the names of its
+ *      contributors may be used to endorse or promote products derived from
+ *      this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package cloud.piranha.http.webapp.tests;
+
+import cloud.piranha.http.webapp.HttpWebApplicationServerRequestMapper;
+import cloud.piranha.webapp.impl.DefaultWebApplication;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+
+/**
+ * The JUnit tests for the HttpWebApplicationServerRequestMapper class.
+ *
+ * @author Manfred Riem (mriem@manorrock.com)
+ */
+class HttpWebApplicationServerRequestMapperTest {
+
+    /**
+     * Test addMapping method with a mapping that is already there.
+     */
+    @Test
+    void testAddMapping() {
+        HttpWebApplicationServerRequestMapper mapper = new HttpWebApplicationServerRequestMapper();
+        DefaultWebApplication webApp = new DefaultWebApplication();
+        assertTrue(mapper.addMapping(webApp, "/context").isEmpty());
+        assertTrue(mapper.addMapping(webApp, "/context").contains("/context"));
+    }
+
+    /**
+     * Test findMapping method picks the longest matching context path.
+     */
+    @Test
+    void testFindMappingLongestPrefix() {
+        HttpWebApplicationServerRequestMapper mapper = new HttpWebApplicationServerRequestMapper();
+        DefaultWebApplication root = new DefaultWebApplication();
+        DefaultWebApplication shop = new DefaultWebApplication();
+        DefaultWebApplication shopAdmin = new DefaultWebApplication();
+        mapper.addMapping(root, "");
+        mapper.addMapping(shop, "/shop");
+        mapper.addMapping(shopAdmin, "/shop/admin");
+        assertEquals(shopAdmin, mapper.findMapping("/shop/admin/index.html"));
+        assertEquals(shopAdmin, mapper.findMapping("/shop/admin"));
+        assertEquals(shop, mapper.findMapping("/shop/cart"));
+        assertEquals(shop, mapper.findMapping("/shop"));
+        assertEquals(root, mapper.findMapping("/other"));
+        assertEquals("/shop/admin", mapper.findPrefixMatch("/shop/admin/index.html"));
+    }
+
+    /**
+     * Test findMapping method only matches whole path segments.
+     */
+    @Test
+    void testFindMappingSegments() {
+        HttpWebApplicationServerRequestMapper mapper = new HttpWebApplicationServerRequestMapper();
+        DefaultWebApplication shop = new DefaultWebApplication();
+        mapper.addMapping(shop, "/shop");
+        assertNull(mapper.findMapping("/shopping"));
+        assertNull(mapper.findMapping("/"));
+        assertEquals(shop, mapper.findMapping("/shop/"));
+    }
+}
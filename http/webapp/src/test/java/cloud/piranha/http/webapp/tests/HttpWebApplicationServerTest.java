@@ -27,16 +27,28 @@
  */
 package cloud.piranha.http.webapp.tests;
 
+import cloud.piranha.resource.DirectoryResource;
+import cloud.piranha.webapp.impl.DefaultServlet;
 import cloud.piranha.webapp.impl.DefaultWebApplication;
 import cloud.piranha.http.impl.DefaultHttpServer;
 import cloud.piranha.http.api.HttpServer;
+import cloud.piranha.http.webapp.HttpWebApplicationRequest;
 import cloud.piranha.http.webapp.HttpWebApplicationServer;
 import cloud.piranha.http.webapp.HttpWebApplicationServerRequestMapper;
+import jakarta.servlet.http.HttpServlet;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import java.io.File;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintWriter;
 import java.net.URI;
 import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
@@ -129,6 +141,123 @@ class HttpWebApplicationServerTest {
         server.stop();
     }
 
+    /**
+     * Test a response that fits in the buffer is sent with a Content-Length
+     * header.
+     *
+     * @throws Exception when a serious error occurs.
+     */
+    @Test
+    void testContentLengthResponse() throws Exception {
+        HttpWebApplicationServer server = new HttpWebApplicationServer();
+        HttpServer httpServer = new DefaultHttpServer(8186, server, false);
+        DefaultWebApplication application = new DefaultWebApplication();
+        application.setContextPath("/context");
+        application.addServlet("small", new HttpServlet() {
+            @Override
+            protected void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException {
+                response.getWriter().print("Hello World");
+            }
+        });
+        application.addServletMapping("small", "/small");
+        server.addWebApplication(application);
+        server.initialize();
+        server.start();
+        httpServer.start();
+        try {
+            HttpClient client = HttpClient.newHttpClient();
+            HttpRequest request = HttpRequest.newBuilder(new URI("http://localhost:8186/context/small")).build();
+            HttpResponse<String> response = client.send(request, HttpResponse.BodyHandlers.ofString());
+            assertEquals(200, response.statusCode());
+            assertEquals("11", response.headers().firstValue("Content-Length").orElse(null));
+            assertTrue(response.headers().firstValue("Transfer-Encoding").isEmpty());
+            assertEquals("Hello World", response.body());
+        } finally {
+            httpServer.stop();
+            server.stop();
+        }
+    }
+
+    /**
+     * Test a large static file is sent as a file region by the NIO mode of
+     * the default HTTP server.
+     *
+     * @throws Exception when a serious error occurs.
+     */
+    @Test
+    void testStaticFileResponse() throws Exception {
+        File directory = new File("target/static-file");
+        directory.mkdirs();
+        byte[] content = new byte[300000];
+        for (int i = 0; i < content.length; i++) {
+            content[i] = (byte) ('a' + i % 26);
+        }
+        Files.write(new File(directory, "large.txt").toPath(), content);
+        HttpWebApplicationServer server = new HttpWebApplicationServer();
+        DefaultHttpServer httpServer = new DefaultHttpServer(8187, server, false);
+        httpServer.setNio(true);
+        DefaultWebApplication application = new DefaultWebApplication();
+        application.setContextPath("/context");
+        application.addResource(new DirectoryResource(directory));
+        application.setDefaultServlet(new DefaultServlet());
+        server.addWebApplication(application);
+        server.initialize();
+        server.start();
+        httpServer.start();
+        try {
+            HttpClient client = HttpClient.newHttpClient();
+            HttpRequest request = HttpRequest.newBuilder(new URI("http://localhost:8187/context/large.txt")).build();
+            HttpResponse<byte[]> response = client.send(request, HttpResponse.BodyHandlers.ofByteArray());
+            assertEquals(200, response.statusCode());
+            assertEquals("300000", response.headers().firstValue("Content-Length").orElse(null));
+            assertTrue(Arrays.equals(content, response.body()));
+            request = HttpRequest.newBuilder(new URI("http://localhost:8187/context/large.txt"))
+                    .header("Range", "bytes=100000-199999").build();
+            response = client.send(request, HttpResponse.BodyHandlers.ofByteArray());
+            assertEquals(206, response.statusCode());
+            assertTrue(Arrays.equals(Arrays.copyOfRange(content, 100000, 200000), response.body()));
+        } finally {
+            httpServer.stop();
+            server.stop();
+        }
+    }
+
+    /**
+     * Test a response larger than the buffer without a content length is
+     * sent with chunked transfer-encoding.
+     *
+     * @throws Exception when a serious error occurs.
+     */
+    @Test
+    void testChunkedResponse() throws Exception {
+        HttpWebApplicationServer server = new HttpWebApplicationServer();
+        HttpServer httpServer = new DefaultHttpServer(8183, server, false);
+        DefaultWebApplication application = new DefaultWebApplication();
+        application.setContextPath("/context");
+        application.addServlet("large", new HttpServlet() {
+            @Override
+            protected void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException {
+                response.getOutputStream().write(new byte[20000]);
+            }
+        });
+        application.addServletMapping("large", "/large");
+        server.addWebApplication(application);
+        server.initialize();
+        server.start();
+        httpServer.start();
+        try {
+            HttpClient client = HttpClient.newHttpClient();
+            HttpRequest request = HttpRequest.newBuilder(new URI("http://localhost:8183/context/large")).build();
+            HttpResponse<byte[]> response = client.send(request, HttpResponse.BodyHandlers.ofByteArray());
+            assertEquals(200, response.statusCode());
+            assertEquals("chunked", response.headers().firstValue("Transfer-Encoding").orElse(null));
+            assertEquals(20000, response.body().length);
+        } finally {
+            httpServer.stop();
+            server.stop();
+        }
+    }
+
     @Test
     void testSessionUrlRewriting() throws Exception {
         HttpWebApplicationServer server = new HttpWebApplicationServer();
@@ -180,4 +309,224 @@ class HttpWebApplicationServerTest {
         httpServer.stop();
         server.stop();
     }
+
+    /**
+     * Test that recycled requests and responses do not carry over state from
+     * one request to the next.
+     *
+     * @throws Exception when a serious error occurs.
+     */
+    @Test
+    void testRecycling() throws Exception {
+        HttpWebApplicationServer server = new HttpWebApplicationServer();
+        server.setRecycling(true);
+        HttpServer httpServer = new DefaultHttpServer(8184, server, false);
+        DefaultWebApplication application = new DefaultWebApplication();
+        application.setContextPath("/context");
+        application.addServlet("recycle", new HttpServlet() {
+            @Override
+            protected void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException {
+                if (request.getParameter("first") != null) {
+                    response.setHeader("X-First", "true");
+                }
+                response.getWriter().print(request.getAttribute("seen") + ":" + request.getHeader("X-Test"));
+                request.setAttribute("seen", "true");
+            }
+        });
+        application.addServletMapping("recycle", "/recycle");
+        server.addWebApplication(application);
+        server.initialize();
+        server.start();
+        httpServer.start();
+        try {
+            HttpClient client = HttpClient.newHttpClient();
+            HttpResponse<String> response = client.send(HttpRequest.newBuilder(
+                    new URI("http://localhost:8184/context/recycle?first=true"))
+                    .header("X-Test", "one").build(), HttpResponse.BodyHandlers.ofString());
+            assertEquals("null:one", response.body());
+            assertEquals("true", response.headers().firstValue("X-First").orElse(null));
+            for (int i = 0; i < 5; i++) {
+                response = client.send(HttpRequest.newBuilder(
+                        new URI("http://localhost:8184/context/recycle"))
+                        .header("X-Test", "two").build(), HttpResponse.BodyHandlers.ofString());
+                assertEquals(200, response.statusCode());
+                assertEquals("null:two", response.body());
+                assertTrue(response.headers().firstValue("X-First").isEmpty());
+            }
+        } finally {
+            httpServer.stop();
+            server.stop();
+        }
+    }
+
+    /**
+     * Test that using a request after it was recycled is detected in
+     * recycling debug mode.
+     *
+     * @throws Exception when a serious error occurs.
+     */
+    @Test
+    void testRecyclingDebug() throws Exception {
+        HttpWebApplicationServer server = new HttpWebApplicationServer();
+        server.setRecycling(true);
+        server.setRecyclingDebug(true);
+        HttpServer httpServer = new DefaultHttpServer(8185, server, false);
+        DefaultWebApplication application = new DefaultWebApplication();
+        application.setContextPath("/context");
+        HttpServletRequest[] previous = new HttpServletRequest[1];
+        application.addServlet("recycle", new HttpServlet() {
+            @Override
+            protected void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException {
+                String result = "none";
+                if (previous[0] != null) {
+                    try {
+                        previous[0].getHeader("X-Test");
+                        result = "used";
+                    } catch (IllegalStateException ise) {
+                        result = "recycled";
+                    }
+                }
+                previous[0] = request;
+                response.getWriter().print(result);
+            }
+        });
+        application.addServletMapping("recycle", "/recycle");
+        server.addWebApplication(application);
+        server.initialize();
+        server.start();
+        httpServer.start();
+        try {
+            HttpClient client = HttpClient.newHttpClient();
+            HttpRequest request = HttpRequest.newBuilder(new URI("http://localhost:8185/context/recycle")).build();
+            assertEquals("none", client.send(request, HttpResponse.BodyHandlers.ofString()).body());
+            assertEquals("recycled", client.send(request, HttpResponse.BodyHandlers.ofString()).body());
+        } finally {
+            httpServer.stop();
+            server.stop();
+        }
+    }
+    /**
+     * Test that asking a recycled request for its addresses, ports or for
+     * a header change is detected in recycling debug mode.
+     *
+     * @throws Exception when a serious error occurs.
+     */
+    @Test
+    void testRecyclingDebugAddresses() throws Exception {
+        HttpWebApplicationServer server = new HttpWebApplicationServer();
+        server.setRecycling(true);
+        server.setRecyclingDebug(true);
+        HttpServer httpServer = new DefaultHttpServer(8189, server, false);
+        DefaultWebApplication application = new DefaultWebApplication();
+        application.setContextPath("/context");
+        HttpWebApplicationRequest[] previous = new HttpWebApplicationRequest[1];
+        application.addServlet("recycle", new HttpServlet() {
+            @Override
+            protected void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException {
+                String result = "none";
+                if (previous[0] != null) {
+                    HttpWebApplicationRequest recycled = previous[0];
+                    List<Runnable> uses = List.of(
+                            recycled::getLocalAddr,
+                            recycled::getLocalPort,
+                            recycled::getRemoteAddr,
+                            recycled::getRemotePort,
+                            () -> recycled.setHeader("X-Test", "test"));
+                    result = "recycled";
+                    for (Runnable use : uses) {
+                        try {
+                            use.run();
+                            result = "used";
+                        } catch (IllegalStateException ise) {
+                            // expected
+                        }
+                    }
+                }
+                previous[0] = (HttpWebApplicationRequest) request;
+                response.getWriter().print(result);
+            }
+        });
+        application.addServletMapping("recycle", "/recycle");
+        server.addWebApplication(application);
+        server.initialize();
+        server.start();
+        httpServer.start();
+        try {
+            HttpClient client = HttpClient.newHttpClient();
+            HttpRequest request = HttpRequest.newBuilder(new URI("http://localhost:8189/context/recycle")).build();
+            assertEquals("none", client.send(request, HttpResponse.BodyHandlers.ofString()).body());
+            assertEquals("recycled", client.send(request, HttpResponse.BodyHandlers.ofString()).body());
+        } finally {
+            httpServer.stop();
+            server.stop();
+        }
+    }
+
+    /**
+     * Test that writing to an output stream or writer obtained before the
+     * response was recycled is detected in recycling debug mode.
+     *
+     * @throws Exception when a serious error occurs.
+     */
+    @Test
+    void testRecyclingDebugStream() throws Exception {
+        HttpWebApplicationServer server = new HttpWebApplicationServer();
+        server.setRecycling(true);
+        server.setRecyclingDebug(true);
+        HttpServer httpServer = new DefaultHttpServer(8188, server, false);
+        DefaultWebApplication application = new DefaultWebApplication();
+        application.setContextPath("/context");
+        OutputStream[] previousStream = new OutputStream[1];
+        PrintWriter[] previousWriter = new PrintWriter[1];
+        application.addServlet("stream", new HttpServlet() {
+            @Override
+            protected void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException {
+                String result = "none";
+                if (previousStream[0] != null) {
+                    try {
+                        previousStream[0].write('x');
+                        result = "used";
+                    } catch (IllegalStateException ise) {
+                        result = "recycled";
+                    }
+                }
+                previousStream[0] = response.getOutputStream();
+                previousStream[0].write(result.getBytes());
+            }
+        });
+        application.addServletMapping("stream", "/stream");
+        application.addServlet("writer", new HttpServlet() {
+            @Override
+            protected void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException {
+                String result = "none";
+                if (previousWriter[0] != null) {
+                    try {
+                        previousWriter[0].print('x');
+                        result = "used";
+                    } catch (IllegalStateException ise) {
+                        result = "recycled";
+                    }
+                }
+                previousWriter[0] = response.getWriter();
+                previousWriter[0].print(result);
+            }
+        });
+        application.addServletMapping("writer", "/writer");
+        server.addWebApplication(application);
+        server.initialize();
+        server.start();
+        httpServer.start();
+        try {
+            HttpClient client = HttpClient.newHttpClient();
+            HttpRequest request = HttpRequest.newBuilder(new URI("http://localhost:8188/context/stream")).build();
+            assertEquals("none", client.send(request, HttpResponse.BodyHandlers.ofString()).body());
+            assertEquals("recycled", client.send(request, HttpResponse.BodyHandlers.ofString()).body());
+            request = HttpRequest.newBuilder(new URI("http://localhost:8188/context/writer")).build();
+            assertEquals("none", client.send(request, HttpResponse.BodyHandlers.ofString()).body());
+            assertEquals("recycled", client.send(request, HttpResponse.BodyHandlers.ofString()).body());
+        } finally {
+            httpServer.stop();
+            server.stop();
+        }
+    }
 }
@@ -45,6 +45,7 @@ module cloud.piranha.http.webapp.tests {
     requires cloud.piranha.http.webapp;
     requires cloud.piranha.naming.api;
     requires cloud.piranha.naming.thread;
+    requires cloud.piranha.resource;
     requires cloud.piranha.webapp.api;
     requires cloud.piranha.webapp.impl;
     requires jakarta.servlet;
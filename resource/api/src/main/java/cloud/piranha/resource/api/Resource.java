@@ -29,6 +29,7 @@ package cloud.piranha.resource.api;
 
 import java.io.InputStream;
 import java.net.URL;
+import java.nio.channels.SeekableByteChannel;
 import java.util.stream.Stream;
 
 /**
@@ -54,11 +55,47 @@ public interface Resource {
      */
     InputStream getResourceAsStream(String location);
 
+    /**
+     * Get the resource as a seekable byte channel.
+     *
+     * <p>
+     * A channel allows reading any part of the resource without reading what
+     * comes before it.
+     * </p>
+     *
+     * @param location the location.
+     * @return the channel, or null if not found or not supported.
+     */
+    default SeekableByteChannel getResourceAsChannel(String location) {
+        return null;
+    }
+
     /**
      * {@return all the locations for this resource}
      */
     Stream<String> getAllLocations();
 
+    /**
+     * Get the last modified time of the resource at the given location.
+     *
+     * @param location the location.
+     * @return the last modified time (in milliseconds since the epoch), or -1
+     * if not found or not known.
+     */
+    default long getLastModified(String location) {
+        return -1;
+    }
+
+    /**
+     * Get the length of the resource at the given location.
+     *
+     * @param location the location.
+     * @return the length (in bytes), or -1 if not found or not known.
+     */
+    default long getLength(String location) {
+        return -1;
+    }
+
     /**
      * Get the name of this resource
      * @return the name
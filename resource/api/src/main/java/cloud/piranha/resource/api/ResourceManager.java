@@ -66,6 +66,17 @@ public interface ResourceManager {
      */
     Collection<URL> getResources(String location) throws MalformedURLException;
 
+    /**
+     * Find the resource that serves the given location.
+     *
+     * @param location the location.
+     * @return the resource, or null if not found or only available from the
+     * class path.
+     */
+    default Resource findResource(String location) {
+        return null;
+    }
+
     /**
      * Get the resource as a stream.
      *
@@ -30,9 +30,13 @@ package cloud.piranha.resource;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
+import java.io.IOException;
 import java.io.InputStream;
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.file.StandardOpenOption;
 import java.util.stream.Stream;
 
 import cloud.piranha.resource.api.Resource;
@@ -111,6 +115,44 @@ public class AliasedDirectoryResource implements Resource {
         return result;
     }
     
+    @Override
+    public SeekableByteChannel getResourceAsChannel(String location) {
+        File file = getFile(location);
+        if (file == null || !file.isFile()) {
+            return null;
+        }
+        try {
+            return FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        } catch (IOException ioe) {
+            return null;
+        }
+    }
+
+    @Override
+    public long getLastModified(String location) {
+        File file = getFile(location);
+        return file != null && file.isFile() ? file.lastModified() : -1;
+    }
+
+    @Override
+    public long getLength(String location) {
+        File file = getFile(location);
+        return file != null && file.isFile() ? file.length() : -1;
+    }
+
+    /**
+     * Get the file for the given location.
+     *
+     * @param location the location.
+     * @return the file, or null if the location is not under the alias.
+     */
+    private File getFile(String location) {
+        if (!location.startsWith(alias)) {
+            return null;
+        }
+        return new File(rootDirectory, location.substring(alias.length()));
+    }
+
     @Override
     public Stream<String> getAllLocations() {
         return Stream.empty();
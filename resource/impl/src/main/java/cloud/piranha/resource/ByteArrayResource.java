@@ -103,6 +103,11 @@ public class ByteArrayResource implements Resource {
         }
     }
 
+    @Override
+    public long getLength(String url) {
+        return location.equals(getLocationFromUrl(url)) ? bytes.length : -1;
+    }
+
     /**
      * Get the resource as a stream.
      *
@@ -111,6 +111,25 @@ public class DefaultResourceManager implements ResourceManager {
         return result;
     }
 
+    /**
+     * Find the resource that serves the given location.
+     *
+     * @param location the location.
+     * @return the resource, or null if not found or only available from the
+     * class path.
+     */
+    @Override
+    public Resource findResource(String location) {
+        Iterator<Resource> iterator = resources.iterator();
+        while (iterator.hasNext()) {
+            Resource resource = iterator.next();
+            if (resource.getResource(location) != null) {
+                return resource;
+            }
+        }
+        return null;
+    }
+
     /**
      * Get the resource as a stream.
      *
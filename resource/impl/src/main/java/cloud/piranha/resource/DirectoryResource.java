@@ -34,9 +34,12 @@ import java.io.InputStream;
 import java.io.IOException;
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SeekableByteChannel;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 import java.util.function.Predicate;
 import java.util.stream.Stream;
 
@@ -116,6 +119,31 @@ public class DirectoryResource implements Resource {
         return result;
     }
     
+    @Override
+    public SeekableByteChannel getResourceAsChannel(String location) {
+        File file = new File(rootDirectory, location);
+        if (!file.isFile()) {
+            return null;
+        }
+        try {
+            return FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        } catch (IOException ioe) {
+            return null;
+        }
+    }
+
+    @Override
+    public long getLastModified(String location) {
+        File file = new File(rootDirectory, location);
+        return file.isFile() ? file.lastModified() : -1;
+    }
+
+    @Override
+    public long getLength(String location) {
+        File file = new File(rootDirectory, location);
+        return file.isFile() ? file.length() : -1;
+    }
+
     @Override
     public Stream<String> getAllLocations() {
         try {
@@ -36,6 +36,8 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.net.URL;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.jar.JarEntry;
 import java.util.jar.JarFile;
 import java.util.stream.Stream;
@@ -44,15 +46,32 @@ import java.util.zip.ZipEntry;
 /**
  * The default JarResource.
  *
+ * <p>
+ * The last modified time and length of the entries looked up so far are
+ * kept, so asking for the metadata of an entry opens the JAR file only once.
+ * They are forgotten when the JAR file is modified.
+ * </p>
+ *
  * @author Manfred Riem (mriem@manorrock.com)
  */
 public class JarResource implements Resource {
 
+    /**
+     * Stores the metadata of the entries looked up so far.
+     */
+    private final Map<String, EntryMetadata> entries = new ConcurrentHashMap<>();
+
     /**
      * Stores the JAR file.
      */
     private File jarFile;
 
+    /**
+     * Stores the last modified time of the JAR file the entries were read
+     * from.
+     */
+    private volatile long jarLastModified;
+
     /**
      * Constructor.
      */
@@ -76,10 +95,8 @@ public class JarResource implements Resource {
         URL result = null;
         if (location != null) {
             try {
-                try (JarFile jar = new JarFile(jarFile)) {
-                    if (jar.getJarEntry(location) != null) {
-                        result = new URL("jar:" + jarFile.toURI() + "!/" + location);
-                    }
+                if (getEntryMetadata(location) != null) {
+                    result = new URL("jar:" + jarFile.toURI() + "!/" + location);
                 }
             } catch (IOException ioe) {
                 result = null;
@@ -129,6 +146,50 @@ public class JarResource implements Resource {
         return result;
     }
 
+    @Override
+    public long getLastModified(String location) {
+        EntryMetadata metadata = getEntryMetadata(location.startsWith("/") ? location.substring(1) : location);
+        return metadata != null ? metadata.lastModified() : -1;
+    }
+
+    @Override
+    public long getLength(String location) {
+        EntryMetadata metadata = getEntryMetadata(location.startsWith("/") ? location.substring(1) : location);
+        return metadata != null ? metadata.length() : -1;
+    }
+
+    /**
+     * Get the metadata of the JAR entry with the given name.
+     *
+     * <p>
+     * The JAR file is only opened when the entry has not been looked up since
+     * the JAR file was last modified.
+     * </p>
+     *
+     * @param name the name of the entry.
+     * @return the metadata, or null if not found.
+     */
+    private EntryMetadata getEntryMetadata(String name) {
+        long lastModified = jarFile.lastModified();
+        if (lastModified != jarLastModified) {
+            entries.clear();
+            jarLastModified = lastModified;
+        }
+        EntryMetadata metadata = entries.get(name);
+        if (metadata == null) {
+            try (JarFile jar = new JarFile(jarFile)) {
+                JarEntry entry = jar.getJarEntry(name);
+                if (entry != null) {
+                    metadata = new EntryMetadata(entry.getTime(), entry.getSize());
+                    entries.put(name, metadata);
+                }
+            } catch (IOException ioe) {
+                metadata = null;
+            }
+        }
+        return metadata;
+    }
+
     @Override
     public Stream<String> getAllLocations() {
         List<String> entryNames;
@@ -158,10 +219,20 @@ public class JarResource implements Resource {
      */
     public void setJarFile(File jarFile) {
         this.jarFile = jarFile;
+        entries.clear();
     }
 
     @Override
     public String getName() {
         return jarFile.getName();
     }
+
+    /**
+     * The metadata of a JAR entry.
+     *
+     * @param lastModified the last modified time.
+     * @param length the length.
+     */
+    private record EntryMetadata(long lastModified, long length) {
+    }
 }
@@ -30,6 +30,7 @@ package cloud.piranha.resource;
 import java.io.File;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
 import org.junit.jupiter.api.Test;
 
 /**
@@ -96,4 +97,18 @@ class DefaultResourceManagerTest {
         manager.addResource(new DirectoryResource(new File("")));
         assertNotNull(manager.getResourceAsStream("/src/main/java/cloud/piranha/resource/DefaultResourceManager.java"));
     }
+
+    /**
+     * Test findResource method.
+     */
+    @Test
+    void testFindResource() {
+        DefaultResourceManager manager = new DefaultResourceManager();
+        DirectoryResource first = new DirectoryResource(new File("src"));
+        DirectoryResource second = new DirectoryResource(new File("."));
+        manager.addResource(first);
+        manager.addResource(second);
+        assertSame(second, manager.findResource("/pom.xml"));
+        assertNull(manager.findResource("/does-not-exist"));
+    }
 }
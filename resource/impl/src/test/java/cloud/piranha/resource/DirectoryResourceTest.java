@@ -30,6 +30,7 @@ package cloud.piranha.resource;
 import org.junit.jupiter.api.Test;
 
 import java.io.File;
+import java.nio.channels.SeekableByteChannel;
 import static org.junit.jupiter.api.Assertions.*;
 
 /**
@@ -75,4 +76,41 @@ class DirectoryResourceTest {
         resource.setRootDirectory(new File("src/main/java"));
         assertNotNull(resource.getRootDirectory());
     }
+
+    /**
+     * Test getLastModified method.
+     */
+    @Test
+    void testGetLastModified() {
+        DirectoryResource resource = new DirectoryResource(new File("."));
+        assertEquals(new File("pom.xml").lastModified(), resource.getLastModified("pom.xml"));
+        assertEquals(-1, resource.getLastModified("src"));
+        assertEquals(-1, resource.getLastModified("does-not-exist"));
+    }
+
+    /**
+     * Test getLength method.
+     */
+    @Test
+    void testGetLength() {
+        DirectoryResource resource = new DirectoryResource(new File("."));
+        assertEquals(new File("pom.xml").length(), resource.getLength("pom.xml"));
+        assertEquals(-1, resource.getLength("does-not-exist"));
+    }
+
+    /**
+     * Test getResourceAsChannel method.
+     *
+     * @throws Exception when a serious error occurs.
+     */
+    @Test
+    void testGetResourceAsChannel() throws Exception {
+        DirectoryResource resource = new DirectoryResource(new File("."));
+        try (SeekableByteChannel channel = resource.getResourceAsChannel("pom.xml")) {
+            assertNotNull(channel);
+            assertEquals(new File("pom.xml").length(), channel.size());
+        }
+        assertNull(resource.getResourceAsChannel("src"));
+        assertNull(resource.getResourceAsChannel("does-not-exist"));
+    }
 }
@@ -30,6 +30,13 @@ package cloud.piranha.resource;
 import org.junit.jupiter.api.Test;
 
 import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 
@@ -67,4 +74,43 @@ class JarResourceTest {
         resource.setJarFile(new File("this_jar_file_does_not_exist.jar"));
         assertNull(resource.getResource("we_wont_find_this"));
     }
+
+    /**
+     * Test getLastModified and getLength methods pick up a modified JAR file.
+     *
+     * @throws Exception when a serious error occurs.
+     */
+    @Test
+    void testGetLastModifiedAndLength() throws Exception {
+        File file = new File("target/jar-resource/test.jar");
+        file.getParentFile().mkdirs();
+        writeJar(file, "first", 1000000000000L);
+        JarResource resource = new JarResource(file);
+        assertNotNull(resource.getResource("index.html"));
+        assertEquals(5, resource.getLength("/index.html"));
+        assertEquals(1000000000000L, resource.getLastModified("/index.html"));
+        assertEquals(-1, resource.getLength("/notfound.html"));
+        writeJar(file, "second!", 1100000000000L);
+        file.setLastModified(file.lastModified() + 2000);
+        assertEquals(7, resource.getLength("/index.html"));
+        assertEquals(1100000000000L, resource.getLastModified("/index.html"));
+    }
+
+    /**
+     * Write a JAR file with a single index.html entry.
+     *
+     * @param file the JAR file.
+     * @param content the content of the entry.
+     * @param time the time of the entry.
+     * @throws IOException when an I/O error occurs.
+     */
+    private void writeJar(File file, String content, long time) throws IOException {
+        try (JarOutputStream outputStream = new JarOutputStream(new FileOutputStream(file))) {
+            JarEntry entry = new JarEntry("index.html");
+            entry.setTime(time);
+            outputStream.putNextEntry(entry);
+            outputStream.write(content.getBytes(StandardCharsets.UTF_8));
+            outputStream.closeEntry();
+        }
+    }
 }
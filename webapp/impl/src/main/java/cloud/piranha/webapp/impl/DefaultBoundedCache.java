@@ -0,0 +1,229 @@
+/*
+ * Copyright (c) 2002-2021 Manorrock.com. All Rights Reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   1. Redistributions of source code must retain the above copyright notice,
+ *      this list of conditions and the following disclaimer.
+ *   2. Redistributions in binary form must reproduce the above copyright
+ *      notice, this list of conditions and the following disclaimer in the
+ *      documentation and/or other materials provided with the distribution.
+ *   3. Neither the name of the copyright holder nor the names of its
+ *      contributors may be used to endorse or promote products derived from
+ *      this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package cloud.piranha.webapp.impl;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.ToLongFunction;
+
+/**
+ * A bounded cache.
+ *
+ * <p>
+ * Every value has a weight and the cache holds at most the maximum weight.
+ * Reads do not take a lock, they only stamp the value with the time it was
+ * last used. Writes are serialized and evict the least recently used values
+ * once the maximum weight is exceeded, so the recency is approximate but an
+ * insert never drops the whole cache.
+ * </p>
+ *
+ * @param <K> the type of the key.
+ * @param <V> the type of the value.
+ * @author Manfred Riem (mriem@manorrock.com)
+ */
+class DefaultBoundedCache<K, V> {
+
+    /**
+     * Stores the nodes.
+     */
+    private final ConcurrentHashMap<K, Node<V>> nodes = new ConcurrentHashMap<>();
+
+    /**
+     * Stores the function that weighs a value.
+     */
+    private final ToLongFunction<V> weigher;
+
+    /**
+     * Stores the maximum weight.
+     */
+    private long maxWeight;
+
+    /**
+     * Stores the weight.
+     */
+    private long weight;
+
+    /**
+     * Constructor.
+     *
+     * <p>
+     * Every value weighs 1, so the maximum weight is the maximum number of
+     * values.
+     * </p>
+     *
+     * @param maxWeight the maximum number of values.
+     */
+    DefaultBoundedCache(long maxWeight) {
+        this(maxWeight, value -> 1);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param maxWeight the maximum weight.
+     * @param weigher the function that weighs a value.
+     */
+    DefaultBoundedCache(long maxWeight, ToLongFunction<V> weigher) {
+        this.maxWeight = maxWeight;
+        this.weigher = weigher;
+    }
+
+    /**
+     * Clear the cache.
+     */
+    synchronized void clear() {
+        nodes.clear();
+        weight = 0;
+    }
+
+    /**
+     * Get the value for the given key.
+     *
+     * @param key the key.
+     * @return the value, or null if not cached.
+     */
+    V get(K key) {
+        Node<V> node = nodes.get(key);
+        if (node == null) {
+            return null;
+        }
+        node.accessed = System.nanoTime();
+        return node.value;
+    }
+
+    /**
+     * {@return the maximum weight}
+     */
+    synchronized long getMaxWeight() {
+        return maxWeight;
+    }
+
+    /**
+     * {@return the weight}
+     */
+    synchronized long getWeight() {
+        return weight;
+    }
+
+    /**
+     * Put a value in the cache.
+     *
+     * <p>
+     * A value heavier than the maximum weight is not cached.
+     * </p>
+     *
+     * @param key the key.
+     * @param value the value.
+     */
+    synchronized void put(K key, V value) {
+        long valueWeight = weigher.applyAsLong(value);
+        if (valueWeight > maxWeight) {
+            return;
+        }
+        Node<V> previous = nodes.put(key, new Node<>(value, valueWeight));
+        if (previous != null) {
+            weight -= previous.weight;
+        }
+        weight += valueWeight;
+        evict();
+    }
+
+    /**
+     * Remove the value for the given key, if it is still the given value.
+     *
+     * @param key the key.
+     * @param value the value.
+     */
+    synchronized void remove(K key, V value) {
+        Node<V> node = nodes.get(key);
+        if (node != null && node.value == value) {
+            nodes.remove(key);
+            weight -= node.weight;
+        }
+    }
+
+    /**
+     * Set the maximum weight.
+     *
+     * @param maxWeight the maximum weight (0 disables the cache).
+     */
+    synchronized void setMaxWeight(long maxWeight) {
+        this.maxWeight = maxWeight;
+        evict();
+    }
+
+    /**
+     * Evict the least recently used values until the weight fits.
+     */
+    private void evict() {
+        while (weight > maxWeight && !nodes.isEmpty()) {
+            Map.Entry<K, Node<V>> eldest = null;
+            for (Map.Entry<K, Node<V>> entry : nodes.entrySet()) {
+                if (eldest == null || entry.getValue().accessed - eldest.getValue().accessed < 0) {
+                    eldest = entry;
+                }
+            }
+            nodes.remove(eldest.getKey());
+            weight -= eldest.getValue().weight;
+        }
+    }
+
+    /**
+     * A cached value.
+     *
+     * @param <V> the type of the value.
+     */
+    private static class Node<V> {
+
+        /**
+         * Stores the value.
+         */
+        final V value;
+
+        /**
+         * Stores the weight.
+         */
+        final long weight;
+
+        /**
+         * Stores when the value was last used.
+         */
+        volatile long accessed = System.nanoTime();
+
+        /**
+         * Constructor.
+         *
+         * @param value the value.
+         * @param weight the weight.
+         */
+        Node(V value, long weight) {
+            this.value = value;
+            this.weight = weight;
+        }
+    }
+}
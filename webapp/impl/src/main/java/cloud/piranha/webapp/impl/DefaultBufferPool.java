@@ -0,0 +1,139 @@
+/*
+ * Copyright (c) 2002-2021 Manorrock.com. All Rights Reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   1. Redistributions of source code must retain the above copyright notice,
+ *      this list of conditions and the following disclaimer.
+ *   2. Redistributions in binary form must reproduce the above copyright
+ *      notice, this list of conditions and the following disclaimer in the
+ *      documentation and/or other materials provided with the distribution.
+ *   3. Neither the name of the copyright holder nor the names of its
+ *      contributors may be used to endorse or promote products derived from
+ *      this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package cloud.piranha.webapp.impl;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * A size-classed pool of response buffers.
+ *
+ * <p>
+ * Buffers are handed out in power of two size classes from 1 KiB up to 64
+ * KiB, so a buffer released by one response can be leased by another that
+ * asked for a somewhat different size. A request for a larger buffer gets a
+ * freshly allocated one that is not pooled. Each size class keeps a bounded
+ * number of idle buffers, anything released beyond that is left to the
+ * garbage collector.
+ * </p>
+ *
+ * @author Manfred Riem (mriem@manorrock.com)
+ */
+class DefaultBufferPool {
+
+    /**
+     * Stores the maximum number of idle buffers per size class.
+     */
+    static final int MAX_IDLE_BUFFERS = 64;
+
+    /**
+     * Stores the shift of the smallest size class (1 KiB).
+     */
+    private static final int MIN_SHIFT = 10;
+
+    /**
+     * Stores the shift of the largest size class (64 KiB).
+     */
+    private static final int MAX_SHIFT = 16;
+
+    /**
+     * Stores the number of idle buffers per size class.
+     */
+    private final AtomicIntegerArray counts;
+
+    /**
+     * Stores the idle buffers per size class.
+     */
+    private final Queue<byte[]>[] queues;
+
+    /**
+     * Constructor.
+     */
+    @SuppressWarnings("unchecked")
+    DefaultBufferPool() {
+        counts = new AtomicIntegerArray(MAX_SHIFT - MIN_SHIFT + 1);
+        queues = new Queue[MAX_SHIFT - MIN_SHIFT + 1];
+        for (int i = 0; i < queues.length; i++) {
+            queues[i] = new ConcurrentLinkedQueue<>();
+        }
+    }
+
+    /**
+     * Lease a buffer.
+     *
+     * @param size the minimum size of the buffer.
+     * @return the buffer, which may be larger than the requested size.
+     */
+    byte[] lease(int size) {
+        if (size > 1 << MAX_SHIFT) {
+            return new byte[size];
+        }
+        int sizeClass = sizeClass(size);
+        byte[] buffer = queues[sizeClass].poll();
+        if (buffer == null) {
+            return new byte[1 << (sizeClass + MIN_SHIFT)];
+        }
+        counts.decrementAndGet(sizeClass);
+        return buffer;
+    }
+
+    /**
+     * Release a buffer back to the pool.
+     *
+     * <p>
+     * Buffers that do not match a size class are ignored.
+     * </p>
+     *
+     * @param buffer the buffer.
+     */
+    void release(byte[] buffer) {
+        int length = buffer.length;
+        if (length < 1 << MIN_SHIFT || length > 1 << MAX_SHIFT
+                || Integer.bitCount(length) != 1) {
+            return;
+        }
+        int sizeClass = sizeClass(length);
+        if (counts.incrementAndGet(sizeClass) > MAX_IDLE_BUFFERS) {
+            counts.decrementAndGet(sizeClass);
+            return;
+        }
+        queues[sizeClass].offer(buffer);
+    }
+
+    /**
+     * {@return the size class for the given size}
+     * @param size the size.
+     */
+    private static int sizeClass(int size) {
+        if (size <= 1 << MIN_SHIFT) {
+            return 0;
+        }
+        return 32 - Integer.numberOfLeadingZeros(size - 1) - MIN_SHIFT;
+    }
+}
@@ -0,0 +1,286 @@
+/*
+ * Copyright (c) 2002-2021 Manorrock.com. All Rights Reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   1. Redistributions of source code must retain the above copyright notice,
+ *      this list of conditions and the following disclaimer.
+ *   2. Redistributions in binary form must reproduce the above copyright
+ *      notice, this list of conditions and the following disclaimer in the
+ *      documentation and/or other materials provided with the distribution.
+ *   3. Neither the name of the copyright holder nor the names of its
+ *      contributors may be used to endorse or promote products derived from
+ *      this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package cloud.piranha.webapp.impl;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import cloud.piranha.webapp.api.FilterMapping;
+import jakarta.servlet.DispatcherType;
+
+/**
+ * The compiled index of the filter mappings of a web application.
+ *
+ * <p>
+ * For every dispatcher type the URL patterns are kept in a hash map of exact
+ * patterns, a trie of path segments for the prefix patterns (ending in
+ * <code>/*</code>), a hash map of extensions and a hash map of servlet names.
+ * Each filter mapping is known by its position in the list of filter
+ * mappings. A lookup collects the positions of the matching filter mappings
+ * and returns their filter names in that order, so the result is the same as
+ * going through the list of filter mappings one by one. The index does not
+ * change once built, so it can be used by many threads at the same time.
+ * </p>
+ *
+ * @author Manfred Riem (mriem@manorrock.com)
+ */
+class DefaultFilterMappingIndex {
+
+    /**
+     * Stores the prefix of a URL pattern that maps a servlet name.
+     */
+    static final String SERVLET_NAME_PREFIX = "servlet:// ";
+
+    /**
+     * Stores the filter mappings by dispatcher type.
+     */
+    private final EnumMap<DispatcherType, Mappings> mappings;
+
+    /**
+     * Constructor.
+     *
+     * @param filterMappings the filter mappings.
+     */
+    DefaultFilterMappingIndex(List<FilterMapping> filterMappings) {
+        mappings = new EnumMap<>(DispatcherType.class);
+        for (FilterMapping filterMapping : filterMappings) {
+            mappings.computeIfAbsent(filterMapping.getDispatcherType(), key -> new Mappings())
+                    .add(filterMapping.getFilterName(), filterMapping.getUrlPattern());
+        }
+    }
+
+    /**
+     * Find the names of the filters mapped to the given path.
+     *
+     * <p>
+     * A path that starts with <code>servlet:// </code> only matches the filter
+     * mappings for that servlet name.
+     * </p>
+     *
+     * @param dispatcherType the dispatcher type.
+     * @param path the path (without a query string).
+     * @return the filter names, in the order of the filter mappings.
+     */
+    List<String> find(DispatcherType dispatcherType, String path) {
+        Mappings typeMappings = mappings.get(dispatcherType);
+        if (typeMappings == null) {
+            return new ArrayList<>();
+        }
+        return typeMappings.find(path);
+    }
+
+    /**
+     * The filter mappings for one dispatcher type.
+     */
+    private static class Mappings {
+
+        /**
+         * Stores the positions of the exact patterns.
+         */
+        private final Map<String, int[]> exacts = new HashMap<>();
+
+        /**
+         * Stores the positions of the extension patterns by extension
+         * (including the dot).
+         */
+        private final Map<String, int[]> extensions = new HashMap<>();
+
+        /**
+         * Stores the filter names by position.
+         */
+        private final List<String> filterNames = new ArrayList<>();
+
+        /**
+         * Stores the root of the prefix pattern trie.
+         */
+        private final PrefixNode prefixes = new PrefixNode();
+
+        /**
+         * Stores the positions of the servlet name patterns by servlet name.
+         */
+        private final Map<String, int[]> servletNames = new HashMap<>();
+
+        /**
+         * Add a filter mapping.
+         *
+         * @param filterName the filter name.
+         * @param urlPattern the URL pattern.
+         */
+        void add(String filterName, String urlPattern) {
+            int position = filterNames.size();
+            filterNames.add(filterName);
+            if (urlPattern.startsWith(SERVLET_NAME_PREFIX)) {
+                servletNames.merge(urlPattern.substring(SERVLET_NAME_PREFIX.length()),
+                        new int[]{position}, Mappings::append);
+                return;
+            }
+            if (urlPattern.startsWith("*.")) {
+                extensions.merge(urlPattern.substring(1), new int[]{position}, Mappings::append);
+            } else if (urlPattern.endsWith("/*")) {
+                prefixes.add(urlPattern, position);
+            } else {
+                exacts.merge(urlPattern, new int[]{position}, Mappings::append);
+            }
+        }
+
+        /**
+         * Find the names of the filters mapped to the given path.
+         *
+         * @param path the path.
+         * @return the filter names.
+         */
+        List<String> find(String path) {
+            if (path.startsWith(SERVLET_NAME_PREFIX)) {
+                return names(servletNames.get(path.substring(SERVLET_NAME_PREFIX.length())));
+            }
+            int[] positions = new int[filterNames.size()];
+            int count = collect(exacts.get(path), positions, 0);
+            PrefixNode node = prefixes;
+            count = collect(node.positions, positions, count);
+            int length = path.length();
+            int start = 0;
+            while (start < length && node.children != null) {
+                if (path.charAt(start) == '/') {
+                    start++;
+                    continue;
+                }
+                int end = path.indexOf('/', start);
+                if (end == -1) {
+                    end = length;
+                }
+                node = node.children.get(path.substring(start, end));
+                if (node == null) {
+                    break;
+                }
+                count = collect(node.positions, positions, count);
+                start = end;
+            }
+            if (!extensions.isEmpty()) {
+                int dot = path.indexOf('.', path.lastIndexOf('/') + 1);
+                while (dot != -1) {
+                    count = collect(extensions.get(path.substring(dot)), positions, count);
+                    dot = path.indexOf('.', dot + 1);
+                }
+            }
+            Arrays.sort(positions, 0, count);
+            List<String> result = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                if (i == 0 || positions[i] != positions[i - 1]) {
+                    result.add(filterNames.get(positions[i]));
+                }
+            }
+            return result;
+        }
+
+        /**
+         * Append a position to an array of positions.
+         *
+         * @param positions the positions.
+         * @param position the position (in an array of one).
+         * @return the new array of positions.
+         */
+        private static int[] append(int[] positions, int[] position) {
+            int[] result = Arrays.copyOf(positions, positions.length + 1);
+            result[positions.length] = position[0];
+            return result;
+        }
+
+        /**
+         * Collect positions.
+         *
+         * @param found the positions found (may be null).
+         * @param positions the positions collected so far.
+         * @param count the number of positions collected so far.
+         * @return the number of positions collected.
+         */
+        private static int collect(int[] found, int[] positions, int count) {
+            if (found != null) {
+                System.arraycopy(found, 0, positions, count, found.length);
+                count += found.length;
+            }
+            return count;
+        }
+
+        /**
+         * Get the filter names for the given positions.
+         *
+         * @param positions the positions (may be null).
+         * @return the filter names.
+         */
+        private List<String> names(int[] positions) {
+            List<String> result = new ArrayList<>();
+            if (positions != null) {
+                for (int position : positions) {
+                    result.add(filterNames.get(position));
+                }
+            }
+            return result;
+        }
+    }
+
+    /**
+     * A node in the trie of prefix pattern segments.
+     */
+    private static class PrefixNode {
+
+        /**
+         * Stores the child nodes by path segment (null if there are none).
+         */
+        private Map<String, PrefixNode> children;
+
+        /**
+         * Stores the positions of the prefix patterns ending at this node
+         * (null if none).
+         */
+        private int[] positions;
+
+        /**
+         * Add a prefix pattern below this node.
+         *
+         * @param urlPattern the prefix pattern.
+         * @param position the position of the filter mapping.
+         */
+        void add(String urlPattern, int position) {
+            PrefixNode node = this;
+            for (String segment : urlPattern.substring(0, urlPattern.length() - 2).split("/")) {
+                if (!segment.isEmpty()) {
+                    if (node.children == null) {
+                        node.children = new HashMap<>();
+                    }
+                    node = node.children.computeIfAbsent(segment, key -> new PrefixNode());
+                }
+            }
+            node.positions = node.positions == null
+                    ? new int[]{position} : Mappings.append(node.positions, new int[]{position});
+        }
+    }
+}
@@ -0,0 +1,170 @@
+/*
+ * Copyright (c) 2002-2021 Manorrock.com. All Rights Reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   1. Redistributions of source code must retain the above copyright notice,
+ *      this list of conditions and the following disclaimer.
+ *   2. Redistributions in binary form must reproduce the above copyright
+ *      notice, this list of conditions and the following disclaimer in the
+ *      documentation and/or other materials provided with the distribution.
+ *   3. Neither the name of the copyright holder nor the names of its
+ *      contributors may be used to endorse or promote products derived from
+ *      this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package cloud.piranha.webapp.impl;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+
+/**
+ * The default host name resolver.
+ *
+ * <p>
+ * Resolving the host name of an address is a reverse DNS lookup, which
+ * blocks the calling thread and can take a long time on hosts with slow DNS.
+ * This resolver is used by a request to resolve its local and remote names
+ * only when they are asked for. Resolved names are cached for a limited time
+ * in a cache of a limited size, which evicts the least recently used names
+ * once it is full. Resolution can also be disabled entirely, in
+ * which case the address itself is used as host name, like the Servlet
+ * specification allows.
+ * </p>
+ *
+ * @author Manfred Riem (mriem@manorrock.com)
+ */
+public class DefaultHostNameResolver {
+
+    /**
+     * Stores the enabled flag.
+     */
+    protected boolean enabled;
+
+    /**
+     * Stores the maximum number of cached host names.
+     */
+    protected int maxSize;
+
+    /**
+     * Stores the time a host name is cached (in milliseconds).
+     */
+    protected long timeToLive;
+
+    /**
+     * Stores the cached host names.
+     */
+    private final DefaultBoundedCache<String, CachedHostName> cache;
+
+    /**
+     * Constructor.
+     */
+    public DefaultHostNameResolver() {
+        this.enabled = true;
+        this.maxSize = 1024;
+        this.cache = new DefaultBoundedCache<>(maxSize);
+        this.timeToLive = 60000;
+    }
+
+    /**
+     * {@return the maximum number of cached host names}
+     */
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    /**
+     * {@return the time a host name is cached (in milliseconds)}
+     */
+    public long getTimeToLive() {
+        return timeToLive;
+    }
+
+    /**
+     * Is host name resolution enabled.
+     *
+     * @return true if it is, false otherwise.
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Resolve the host name of an address.
+     *
+     * @param address the address.
+     * @return the host name, or the address if it cannot be resolved or
+     * resolution is disabled.
+     */
+    public String resolve(String address) {
+        if (!enabled || address == null) {
+            return address;
+        }
+        long now = System.currentTimeMillis();
+        CachedHostName cached = cache.get(address);
+        if (cached != null && cached.expires() > now) {
+            return cached.hostName();
+        }
+        String hostName;
+        try {
+            hostName = InetAddress.getByName(address).getHostName();
+        } catch (UnknownHostException | SecurityException exception) {
+            hostName = address;
+        }
+        cache.put(address, new CachedHostName(hostName, now + timeToLive));
+        return hostName;
+    }
+
+    /**
+     * Set the enabled flag.
+     *
+     * @param enabled the enabled flag.
+     */
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    /**
+     * Set the maximum number of cached host names.
+     *
+     * <p>
+     * A value of 0 or less disables the cache.
+     * </p>
+     *
+     * @param maxSize the maximum number of cached host names.
+     */
+    public void setMaxSize(int maxSize) {
+        this.maxSize = maxSize;
+        cache.setMaxWeight(Math.max(maxSize, 0));
+    }
+
+    /**
+     * Set the time a host name is cached.
+     *
+     * @param timeToLive the time a host name is cached (in milliseconds).
+     */
+    public void setTimeToLive(long timeToLive) {
+        this.timeToLive = timeToLive;
+    }
+
+    /**
+     * A cached host name.
+     *
+     * @param hostName the host name.
+     * @param expires the time the host name expires.
+     */
+    private record CachedHostName(String hostName, long expires) {
+    }
+}
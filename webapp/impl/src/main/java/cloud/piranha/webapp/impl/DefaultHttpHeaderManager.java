@@ -80,6 +80,13 @@ public class DefaultHttpHeaderManager implements HttpHeaderManager {
         }
     }
 
+    /**
+     * Remove all headers.
+     */
+    public void clear() {
+        headers.clear();
+    }
+
     /**
      * Contains the given header.
      *
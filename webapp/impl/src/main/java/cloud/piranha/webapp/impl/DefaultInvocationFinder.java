@@ -33,12 +33,13 @@ import static jakarta.servlet.http.MappingMatch.EXACT;
 import static jakarta.servlet.http.MappingMatch.EXTENSION;
 import static jakarta.servlet.http.MappingMatch.PATH;
 import static java.util.Collections.reverse;
+import static java.util.Collections.unmodifiableList;
 
 import java.io.IOException;
 import java.net.MalformedURLException;
 import java.util.ArrayList;
-import java.util.Collection;
 import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
 
 import cloud.piranha.webapp.api.FilterEnvironment;
 import cloud.piranha.webapp.api.FilterPriority;
@@ -63,6 +64,32 @@ import jakarta.servlet.ServletException;
  */
 public class DefaultInvocationFinder {
 
+    /**
+     * Stores the maximum number of cached welcome file resolutions.
+     */
+    private static final int MAX_WELCOME_FILES = 1024;
+
+    /**
+     * Stores the time (in milliseconds) a welcome file resolution is cached,
+     * so welcome files added to or removed from a directory are noticed.
+     */
+    private static final long WELCOME_FILE_TIME_TO_LIVE = 5000;
+
+    /**
+     * Stores the default servlet used when none is registered.
+     */
+    private volatile CachedDefaultServlet defaultServlet;
+
+    /**
+     * Stores the cached filter chains.
+     */
+    private final ConcurrentHashMap<FilterChainKey, CachedFilterChain> filterChains;
+
+    /**
+     * Stores the cached welcome file resolutions (including negative ones).
+     */
+    private final DefaultBoundedCache<WelcomeFileKey, CachedWelcomeFile> welcomeFiles;
+
     /**
      * Stores the web application.
      */
@@ -74,6 +101,8 @@ public class DefaultInvocationFinder {
      * @param webApplication the web application.
      */
     public DefaultInvocationFinder(DefaultWebApplication webApplication) {
+        this.filterChains = new ConcurrentHashMap<>();
+        this.welcomeFiles = new DefaultBoundedCache<>(MAX_WELCOME_FILES);
         this.webApplication = webApplication;
     }
 
@@ -124,6 +153,16 @@ public class DefaultInvocationFinder {
 
     /**
      * Add the filters.
+     *
+     * <p>
+     * The filter environments and the filter chain built from them only
+     * depend on the dispatcher type, the servlet and the names of the
+     * filters mapped to the path, so they are cached by those and shared by
+     * all paths that map to the same filters. This keeps the number of
+     * cached filter chains bounded by the configuration instead of by the
+     * paths requested. A filter chain holds no state of its own, so it can
+     * be used by many requests at the same time.
+     * </p>
      * 
      * @param dispatcherType the dispatcher type.
      * @param servletInvocation the servlet invocation.
@@ -138,7 +177,62 @@ public class DefaultInvocationFinder {
             return servletInvocation;
         }
 
-        List<FilterEnvironment> filterEnvironments = findFilterEnvironments(dispatcherType, servletPath, pathInfo, servletInvocation == null? null : servletInvocation.getServletName());
+        String servletName = servletInvocation == null ? null : servletInvocation.getServletName();
+        ServletEnvironment servletEnvironment = servletInvocation == null ? null : servletInvocation.getServletEnvironment();
+        Servlet servlet = servletEnvironment == null ? null : servletEnvironment.getServlet();
+
+        // Only an invocation without filters still has the filter chain it was seeded with, so only
+        // then can a cached filter chain be used in its place.
+        boolean cacheable = servletInvocation == null || servletInvocation.getFilterEnvironments() == null;
+        List<String> filterNames = findFilterNames(dispatcherType, servletPath, pathInfo, servletName);
+        FilterChainKey key = null;
+        if (cacheable) {
+            key = new FilterChainKey(dispatcherType, servletName, filterNames);
+            CachedFilterChain cached = filterChains.get(key);
+            if (cached != null && cached.servletEnvironment() == servletEnvironment && cached.servlet() == servlet) {
+                return setFilters(servletInvocation, servletPath, pathInfo, cached.filterEnvironments(), cached.filterChain());
+            }
+        }
+
+        List<FilterEnvironment> filterEnvironments = getFilterEnvironments(filterNames);
+        FilterChain filterChain = null;
+        if (filterEnvironments != null) {
+            filterEnvironments = unmodifiableList(filterEnvironments);
+            filterChain = findFilterChain(filterEnvironments, servletInvocation == null ? null : servletInvocation.getFilterChain());
+        }
+
+        if (cacheable) {
+            filterChains.put(key, new CachedFilterChain(servletEnvironment, servlet, filterEnvironments, filterChain));
+        }
+
+        return setFilters(servletInvocation, servletPath, pathInfo, filterEnvironments, filterChain);
+    }
+
+    /**
+     * Clear the cached filter chains and welcome file resolutions.
+     *
+     * <p>
+     * This is called whenever a filter, servlet, mapping or resource is added
+     * to the web application.
+     * </p>
+     */
+    void clearCache() {
+        filterChains.clear();
+        welcomeFiles.clear();
+    }
+
+    /**
+     * Set the filters of the servlet invocation.
+     *
+     * @param servletInvocation the servlet invocation (may be null).
+     * @param servletPath the servlet path.
+     * @param pathInfo the path info.
+     * @param filterEnvironments the filter environments (null if none).
+     * @param filterChain the filter chain.
+     * @return the servlet invocation.
+     */
+    private DefaultServletInvocation setFilters(DefaultServletInvocation servletInvocation, String servletPath, String pathInfo,
+            List<FilterEnvironment> filterEnvironments, FilterChain filterChain) {
         if (filterEnvironments != null) {
             if (servletInvocation == null) {
                 servletInvocation = new DefaultServletInvocation();
@@ -147,7 +241,7 @@ public class DefaultInvocationFinder {
             }
 
             servletInvocation.setFilterEnvironments(filterEnvironments);
-            servletInvocation.setFilterChain(findFilterChain(filterEnvironments, servletInvocation.getFilterChain()));
+            servletInvocation.setFilterChain(filterChain);
         }
 
         return servletInvocation;
@@ -223,7 +317,56 @@ public class DefaultInvocationFinder {
         return servletInvocation;
     }
 
+    /**
+     * Get the servlet invocation for a welcome file.
+     *
+     * <p>
+     * Finding the welcome file takes a resource lookup per welcome file, so
+     * which welcome file was found (or that none was found) is cached for a
+     * short time, in a cache that evicts the least recently used paths once
+     * it is full.
+     * </p>
+     *
+     * @param servletPath the servlet path.
+     * @param pathInfo the path info.
+     * @return the servlet invocation, or null if there is no welcome file.
+     * @throws IOException when an I/O error occurs.
+     */
     private DefaultServletInvocation getWelcomeFileServletInvocation(String servletPath, String pathInfo) throws IOException {
+        WelcomeFileKey key = new WelcomeFileKey(servletPath, pathInfo);
+        long now = System.currentTimeMillis();
+        CachedWelcomeFile welcomeFile = welcomeFiles.get(key);
+        if (welcomeFile == null || welcomeFile.expires() <= now) {
+            welcomeFile = findWelcomeFile(servletPath, pathInfo, now + WELCOME_FILE_TIME_TO_LIVE);
+            welcomeFiles.put(key, welcomeFile);
+        }
+
+        if (welcomeFile.welcomeFile() == null) {
+            return null;
+        }
+
+        if (welcomeFile.staticResource()) {
+            return getDefaultServletInvocation(servletPath, pathInfo + welcomeFile.welcomeFile());
+        }
+
+        DefaultServletInvocation servletInvocation = getDirectServletInvocationByPath(servletPath, pathInfo + welcomeFile.welcomeFile());
+        if (servletInvocation != null) {
+            servletInvocation.setOriginalServletPath(servletPath);
+        }
+
+        return servletInvocation;
+    }
+
+    /**
+     * Find the welcome file.
+     *
+     * @param servletPath the servlet path.
+     * @param pathInfo the path info.
+     * @param expires when the result expires.
+     * @return the welcome file found.
+     * @throws IOException when an I/O error occurs.
+     */
+    private CachedWelcomeFile findWelcomeFile(String servletPath, String pathInfo, long expires) throws IOException {
 
         // Try if we have a welcome file that we can load via the default servlet
 
@@ -231,7 +374,7 @@ public class DefaultInvocationFinder {
             if (!isStaticResource(servletPath, pathInfo + welcomeFile))
                 continue;
             
-            return getDefaultServletInvocation(servletPath, pathInfo + welcomeFile);
+            return new CachedWelcomeFile(welcomeFile, true, expires);
         }
 
         // Next try if we have a welcome servlet
@@ -248,16 +391,11 @@ public class DefaultInvocationFinder {
                 continue;
             }
             
-            DefaultServletInvocation servletInvocation = getDirectServletInvocationByPath(servletPath, pathInfo + welcomeFile);
-            if (servletInvocation != null) {
-                servletInvocation.setOriginalServletPath(servletPath);
-            }
-            
-            return servletInvocation;
+            return new CachedWelcomeFile(welcomeFile, false, expires);
         }
 
         // No welcome file or servlet
-        return null;
+        return new CachedWelcomeFile(null, false, expires);
     }
 
     private boolean isStaticResource(String servletPath, String pathInfo) throws MalformedURLException {
@@ -285,12 +423,8 @@ public class DefaultInvocationFinder {
         }
         
         if (servletEnvironment == null) {
-            Servlet defaultServlet = webApplication.defaultServlet;
-            if (defaultServlet == null) {
-                defaultServlet = new DefaultServlet();
-            }
             servletName = "default";
-            servletEnvironment = new DefaultServletEnvironment(webApplication, servletName, defaultServlet);
+            servletEnvironment = getDefaultServletEnvironment();
         }
       
 
@@ -313,6 +447,27 @@ public class DefaultInvocationFinder {
         return servletInvocation;
     }
 
+    /**
+     * Get the environment of the default servlet used when none is registered.
+     *
+     * <p>
+     * The environment is created once, and again only when the default
+     * servlet of the web application changes.
+     * </p>
+     *
+     * @return the servlet environment.
+     */
+    private ServletEnvironment getDefaultServletEnvironment() {
+        Servlet configured = webApplication.defaultServlet;
+        CachedDefaultServlet cached = defaultServlet;
+        if (cached == null || cached.configured() != configured) {
+            cached = new CachedDefaultServlet(configured, new DefaultServletEnvironment(
+                    webApplication, "default", configured != null ? configured : new DefaultServlet()));
+            defaultServlet = cached;
+        }
+        return cached.servletEnvironment();
+    }
+
     /**
      * Find the filter environments.
      *
@@ -324,16 +479,39 @@ public class DefaultInvocationFinder {
      * @return the filter environments.
      */
     protected List<FilterEnvironment> findFilterEnvironments(DispatcherType dispatcherType, String servletPath, String pathInfo, String servletName) {
-        List<FilterEnvironment> filterEnvironments = null;
+        return getFilterEnvironments(findFilterNames(dispatcherType, servletPath, pathInfo, servletName));
+    }
 
+    /**
+     * Find the names of the filters mapped to the path or the servlet.
+     *
+     * @param dispatcherType the dispatcher type.
+     * @param servletPath the servlet path to which filters should apply.
+     * @param pathInfo the path info to which filters should apply.
+     * @param servletName name of the servlet to be filtered, if any. Can be null.
+     * @return the filter names, in the order they apply.
+     */
+    private List<String> findFilterNames(DispatcherType dispatcherType, String servletPath, String pathInfo, String servletName) {
         String path = servletPath + (pathInfo == null ? "" : pathInfo);
-        Collection<String> filterNames = webApplication.webApplicationRequestMapper.findFilterMappings(dispatcherType, path);
+        List<String> filterNames = new ArrayList<>(webApplication.webApplicationRequestMapper.findFilterMappings(dispatcherType, path));
 
         if (servletName != null) {
             String servletNamePath = "servlet:// " + servletName;
             filterNames.addAll(webApplication.webApplicationRequestMapper.findFilterMappings(dispatcherType, servletNamePath));
         }
 
+        return filterNames;
+    }
+
+    /**
+     * Get the filter environments for the given filter names.
+     *
+     * @param filterNames the filter names.
+     * @return the filter environments, or null if there are no filter names.
+     */
+    private List<FilterEnvironment> getFilterEnvironments(List<String> filterNames) {
+        List<FilterEnvironment> filterEnvironments = null;
+
         if (!filterNames.isEmpty()) {
             filterEnvironments = new ArrayList<>();
             for (String filterName : filterNames) {
@@ -385,4 +563,53 @@ public class DefaultInvocationFinder {
             webApplication.webApplicationRequestMapper.getDefaultServlet() != null;
     }
 
+    /**
+     * The key of a cached filter chain.
+     *
+     * @param dispatcherType the dispatcher type.
+     * @param servletName the servlet name (may be null).
+     * @param filterNames the names of the mapped filters, in the order they apply.
+     */
+    private record FilterChainKey(DispatcherType dispatcherType, String servletName, List<String> filterNames) {
+    }
+
+    /**
+     * A cached filter chain.
+     *
+     * @param servletEnvironment the servlet environment the chain was built for.
+     * @param servlet the servlet the chain was built for.
+     * @param filterEnvironments the filter environments (null if none).
+     * @param filterChain the filter chain.
+     */
+    private record CachedFilterChain(ServletEnvironment servletEnvironment, Servlet servlet,
+            List<FilterEnvironment> filterEnvironments, FilterChain filterChain) {
+    }
+
+    /**
+     * The default servlet used when none is registered.
+     *
+     * @param configured the default servlet configured on the web application (may be null).
+     * @param servletEnvironment the servlet environment.
+     */
+    private record CachedDefaultServlet(Servlet configured, ServletEnvironment servletEnvironment) {
+    }
+
+    /**
+     * The key of a cached welcome file resolution.
+     *
+     * @param servletPath the servlet path.
+     * @param pathInfo the path info.
+     */
+    private record WelcomeFileKey(String servletPath, String pathInfo) {
+    }
+
+    /**
+     * A cached welcome file resolution.
+     *
+     * @param welcomeFile the welcome file (null if none was found).
+     * @param staticResource true if it is a static resource, false if it is served by a servlet.
+     * @param expires when the resolution expires.
+     */
+    private record CachedWelcomeFile(String welcomeFile, boolean staticResource, long expires) {
+    }
 }
@@ -28,13 +28,27 @@
 package cloud.piranha.webapp.impl;
 
 import static jakarta.servlet.http.HttpServletResponse.SC_NOT_FOUND;
+import static jakarta.servlet.http.HttpServletResponse.SC_NOT_MODIFIED;
+import static jakarta.servlet.http.HttpServletResponse.SC_PARTIAL_CONTENT;
+import static jakarta.servlet.http.HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE;
+import static java.nio.charset.StandardCharsets.ISO_8859_1;
 
-import java.io.BufferedInputStream;
-import java.io.BufferedOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.PrintWriter;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SeekableByteChannel;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+import cloud.piranha.resource.api.Resource;
 
 import jakarta.servlet.DispatcherType;
 import jakarta.servlet.RequestDispatcher;
@@ -46,12 +60,57 @@ import jakarta.servlet.http.HttpServletResponse;
 /**
  * The default Servlet.
  *
+ * <p>
+ * When the resource manager knows the last modified time and length of a
+ * resource, the response carries a Last-Modified header and a strong ETag
+ * derived from both, and a conditional GET (If-None-Match or
+ * If-Modified-Since) that matches is answered with a 304.
+ * </p>
+ *
+ * <p>
+ * Such a resource can also be requested in parts using the Range header,
+ * optionally guarded by If-Range. A single range is answered with a 206 and
+ * a Content-Range header, multiple ranges with a multipart/byteranges body.
+ * The ranges are read from a channel when the resource manager provides
+ * one, so the bytes before a range are never read.
+ * </p>
+ *
+ * <p>
+ * Resources of up to 64 KiB with a known length and last modified time are
+ * kept in a per web application cache with a configurable byte budget, see
+ * {@link #setCacheSize(long)}.
+ * </p>
+ *
+ * <p>
+ * Larger resources and ranges that are backed by a file are handed to the
+ * response as a file region, so the HTTP server can send them without
+ * copying them through the heap. When a filter has wrapped the output
+ * stream of the response they are copied to that stream instead.
+ * </p>
+ *
  * @author Manfred Riem (mriem@manorrock.com)
  */
 public class DefaultServlet extends HttpServlet {
 
     private static final long serialVersionUID = 1331822806510796938L;
 
+    /**
+     * Stores the maximum number of ranges in a Range header. A request with
+     * more ranges gets the full resource.
+     */
+    private static final int MAX_RANGES = 16;
+
+    /**
+     * Stores the default maximum number of bytes in the static resource
+     * cache.
+     */
+    private static final long DEFAULT_CACHE_SIZE = 10L * 1024 * 1024;
+
+    /**
+     * Stores the static resource cache.
+     */
+    private final transient DefaultStaticResourceCache cache = new DefaultStaticResourceCache(DEFAULT_CACHE_SIZE);
+
     /**
      * Get the requested resource.
      *
@@ -62,19 +121,122 @@ public class DefaultServlet extends HttpServlet {
      */
     @Override
     protected void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException, ServletException {
-        InputStream resource = getResource(request);
+        if (request.getServletContext() == null) {
+            response.sendError(SC_NOT_FOUND);
+            return;
+        }
+
+        String path = getPath(request);
+        DefaultStaticResourceCache.Entry cached = getCachedResource(request, path);
+        Resource found;
+        long lastModified = -1;
+        long length = -1;
+        String etag = null;
+        if (cached != null) {
+            found = cached.resource();
+            lastModified = cached.lastModified();
+            length = cached.content().length;
+            etag = cached.etag();
+        } else {
+            found = findResource(request, path);
+            if (found != null) {
+                lastModified = found.getLastModified(path);
+                length = found.getLength(path);
+                etag = getETag(lastModified, length);
+            }
+        }
+
+        boolean conditional = etag != null
+                && request.getDispatcherType() != DispatcherType.INCLUDE
+                && request.getDispatcherType() != DispatcherType.ERROR;
+        if (conditional && isNotModified(request, etag, lastModified)) {
+            response.setStatus(SC_NOT_MODIFIED);
+            setValidators(response, etag, lastModified);
+            return;
+        }
+
+        boolean rangesSupported = conditional
+                && request.getDispatcherType() == DispatcherType.REQUEST;
+        List<Range> ranges = rangesSupported ? getRanges(request, etag, lastModified, length) : null;
+        if (ranges != null) {
+            response.setContentType(getContentType(request, path));
+            setValidators(response, etag, lastModified);
+            response.setHeader("Accept-Ranges", "bytes");
+            sendRanges(response, found, path, length, ranges);
+            return;
+        }
+
+        if (cached != null) {
+            response.setContentType(cached.contentType());
+            if (conditional) {
+                response.setHeader("ETag", cached.etag());
+                response.setHeader("Last-Modified", cached.lastModifiedHeader());
+            }
+            if (rangesSupported) {
+                response.setHeader("Accept-Ranges", "bytes");
+            }
+            writeContent(response, cached.content());
+            return;
+        }
+
+        if (conditional && length > DefaultStaticResourceCache.MAX_RESOURCE_LENGTH) {
+            try (SeekableByteChannel channel = found.getResourceAsChannel(path)) {
+                if (channel instanceof FileChannel fileChannel
+                        && getOutputStream(response) instanceof DefaultWebApplicationResponse webResponse) {
+                    response.setContentType(getContentType(request, path));
+                    setValidators(response, etag, lastModified);
+                    if (rangesSupported) {
+                        response.setHeader("Accept-Ranges", "bytes");
+                    }
+                    response.setContentLengthLong(length);
+                    webResponse.writeFile(fileChannel, 0, length);
+                    webResponse.close();
+                    return;
+                }
+            }
+        }
+
+        InputStream resource = found != null ? found.getResourceAsStream(path) : null;
+        if (resource == null) {
+            conditional = false;
+            length = -1;
+            resource = request.getServletContext().getResourceAsStream(path);
+        }
 
         if (resource == null) {
             response.sendError(SC_NOT_FOUND);
             return;
         }
 
-        setContentType(request, response);
+        String contentType = getContentType(request, path);
+        response.setContentType(contentType);
+        if (conditional) {
+            setValidators(response, etag, lastModified);
+        }
+        if (rangesSupported) {
+            response.setHeader("Accept-Ranges", "bytes");
+        }
+
+        if (conditional && length <= DefaultStaticResourceCache.MAX_RESOURCE_LENGTH) {
+            byte[] content;
+            try (InputStream inputStream = resource) {
+                content = inputStream.readAllBytes();
+            }
+            if (content.length == length) {
+                cache.put(path, new DefaultStaticResourceCache.Entry(
+                        ((DefaultWebApplication) request.getServletContext()).resourceManager,
+                        found, lastModified, content, contentType, etag, formatDate(lastModified)));
+            }
+            writeContent(response, content);
+            return;
+        }
 
-        try (InputStream inputStream = new BufferedInputStream(resource)) {
-            try (OutputStream outputStream = new BufferedOutputStream(response.getOutputStream())) {
+        try (InputStream inputStream = resource) {
+            try (OutputStream outputStream = response.getOutputStream()) {
+                if (length >= 0) {
+                    response.setContentLengthLong(length);
+                }
                 inputStream.transferTo(outputStream);
-                outputStream.flush();
             } catch (IllegalStateException ise) {
                 try (PrintWriter writer = response.getWriter()) {
                     writer.print(new String(inputStream.readAllBytes()));
@@ -84,12 +246,109 @@ public class DefaultServlet extends HttpServlet {
         }
     }
 
-    private InputStream getResource(HttpServletRequest request) {
-        if (request.getServletContext() == null) {
+    /**
+     * {@return the maximum number of bytes in the static resource cache}
+     */
+    public long getCacheSize() {
+        return cache.getMaxSize();
+    }
+
+    /**
+     * Set the maximum number of bytes in the static resource cache.
+     *
+     * <p>
+     * Resources of up to 64 KiB are kept in memory until this is exceeded,
+     * after which the least recently used ones are evicted.
+     * </p>
+     *
+     * @param cacheSize the maximum number of bytes (0 disables the cache).
+     */
+    public void setCacheSize(long cacheSize) {
+        cache.setMaxSize(cacheSize);
+    }
+
+    /**
+     * Get the cached resource for the given path.
+     *
+     * @param request the request.
+     * @param path the path.
+     * @return the cached resource, or null if not cached.
+     */
+    private DefaultStaticResourceCache.Entry getCachedResource(HttpServletRequest request, String path) {
+        if (request.getServletContext() instanceof DefaultWebApplication webApplication
+                && webApplication.resourceManager != null) {
+            return cache.get(path, webApplication.resourceManager);
+        }
+        return null;
+    }
+
+    /**
+     * Write the content of a resource.
+     *
+     * @param response the response.
+     * @param content the content.
+     * @throws IOException when an I/O error occurs.
+     */
+    private void writeContent(HttpServletResponse response, byte[] content) throws IOException {
+        try (OutputStream outputStream = response.getOutputStream()) {
+            response.setContentLengthLong(content.length);
+            outputStream.write(content);
+        } catch (IllegalStateException ise) {
+            try (PrintWriter writer = response.getWriter()) {
+                writer.print(new String(content));
+                writer.flush();
+            }
+        }
+    }
+
+    /**
+     * Get the output stream of the response.
+     *
+     * @param response the response.
+     * @return the output stream, or null if the writer is already in use.
+     * @throws IOException when an I/O error occurs.
+     */
+    private OutputStream getOutputStream(HttpServletResponse response) throws IOException {
+        try {
+            return response.getOutputStream();
+        } catch (IllegalStateException ise) {
             return null;
         }
+    }
 
-        return request.getServletContext().getResourceAsStream(getPath(request));
+    /**
+     * Find the resource that serves the given path.
+     *
+     * @param request the request.
+     * @param path the path.
+     * @return the resource, or null if not known.
+     */
+    private Resource findResource(HttpServletRequest request, String path) {
+        if (request.getServletContext() instanceof DefaultWebApplication webApplication
+                && webApplication.resourceManager != null) {
+            return webApplication.resourceManager.findResource(path);
+        }
+        return null;
+    }
+
+    /**
+     * Get the strong ETag for a resource.
+     *
+     * <p>
+     * The ETag is derived from the length and last modified time of the
+     * resource. A cached resource keeps the ETag it was cached with.
+     * </p>
+     *
+     * @param lastModified the last modified time.
+     * @param length the length.
+     * @return the ETag, or null if the length or last modified time is not
+     * known.
+     */
+    private String getETag(long lastModified, long length) {
+        if (lastModified < 0 || length < 0) {
+            return null;
+        }
+        return "\"" + Long.toHexString(length) + "-" + Long.toHexString(lastModified) + "\"";
     }
 
     private String getPath(HttpServletRequest request) {
@@ -107,16 +366,357 @@ public class DefaultServlet extends HttpServlet {
         return requestURI.substring(contextPath.length());
     }
 
-    private void setContentType(HttpServletRequest request, HttpServletResponse response) {
-        String uri = request.getRequestURI();
+    /**
+     * Get the ranges requested by the Range header.
+     *
+     * <p>
+     * The Range header is ignored when it is not a valid byte range set, has
+     * more than the maximum number of ranges or when the If-Range header does
+     * not match. Ranges starting beyond the end of the resource are dropped,
+     * and overlapping or adjacent ranges are merged.
+     * </p>
+     *
+     * @param request the request.
+     * @param etag the ETag.
+     * @param lastModified the last modified time.
+     * @param length the length.
+     * @return the ranges (empty if none can be satisfied), or null if the
+     * full resource is to be sent.
+     */
+    private List<Range> getRanges(HttpServletRequest request, String etag, long lastModified, long length) {
+        String header = request.getHeader("Range");
+        if (header == null || !header.startsWith("bytes=")) {
+            return null;
+        }
+        String ifRange = request.getHeader("If-Range");
+        if (ifRange != null && !isIfRangeMatch(request, ifRange, etag, lastModified)) {
+            return null;
+        }
+        String[] specs = header.substring(6).split(",");
+        if (specs.length > MAX_RANGES) {
+            return null;
+        }
+        List<Range> ranges = new ArrayList<>(specs.length);
+        for (String spec : specs) {
+            int dash = spec.indexOf('-');
+            if (dash == -1) {
+                return null;
+            }
+            String first = spec.substring(0, dash).trim();
+            String last = spec.substring(dash + 1).trim();
+            try {
+                if (first.isEmpty()) {
+                    long suffix = Long.parseLong(last);
+                    if (suffix < 0) {
+                        return null;
+                    }
+                    if (suffix > 0 && length > 0) {
+                        ranges.add(new Range(Math.max(0, length - suffix), length - 1));
+                    }
+                } else {
+                    long start = Long.parseLong(first);
+                    long end = last.isEmpty() ? length - 1 : Long.parseLong(last);
+                    if (start < 0 || end < start) {
+                        return null;
+                    }
+                    if (start < length) {
+                        ranges.add(new Range(start, Math.min(end, length - 1)));
+                    }
+                }
+            } catch (NumberFormatException nfe) {
+                return null;
+            }
+        }
+        return mergeRanges(ranges, length);
+    }
+
+    /**
+     * Merge overlapping and adjacent ranges.
+     *
+     * <p>
+     * When the ranges together ask for more bytes than the resource has, the
+     * Range header is ignored and the full resource is sent, so a request
+     * with many overlapping ranges cannot make the response larger than the
+     * resource (RFC 7233, section 6.1).
+     * </p>
+     *
+     * @param ranges the ranges.
+     * @param length the length of the resource.
+     * @return the merged ranges in order, or null if the full resource is to
+     * be sent.
+     */
+    private static List<Range> mergeRanges(List<Range> ranges, long length) {
+        if (ranges.size() < 2) {
+            return ranges;
+        }
+        long total = 0;
+        for (Range range : ranges) {
+            total += range.length();
+        }
+        if (total > length) {
+            return null;
+        }
+        ranges.sort(Comparator.comparingLong(Range::start));
+        List<Range> merged = new ArrayList<>(ranges.size());
+        Range current = ranges.get(0);
+        for (int i = 1; i < ranges.size(); i++) {
+            Range next = ranges.get(i);
+            if (next.start() <= current.end() + 1) {
+                current = new Range(current.start(), Math.max(current.end(), next.end()));
+            } else {
+                merged.add(current);
+                current = next;
+            }
+        }
+        merged.add(current);
+        return merged;
+    }
+
+    /**
+     * Does the If-Range header match the resource.
+     *
+     * <p>
+     * An entity tag has to match the ETag using the strong comparison, a date
+     * has to be the exact last modified time.
+     * </p>
+     *
+     * @param request the request.
+     * @param ifRange the If-Range header.
+     * @param etag the ETag.
+     * @param lastModified the last modified time.
+     * @return true if it does, false otherwise.
+     */
+    private boolean isIfRangeMatch(HttpServletRequest request, String ifRange, String etag, long lastModified) {
+        String value = ifRange.trim();
+        if (value.startsWith("\"") || value.startsWith("W/")) {
+            return value.equals(etag);
+        }
+        try {
+            return request.getDateHeader("If-Range") / 1000 == lastModified / 1000;
+        } catch (IllegalArgumentException iae) {
+            return false;
+        }
+    }
+
+    /**
+     * Send the requested ranges of the resource.
+     *
+     * @param response the response.
+     * @param found the resource.
+     * @param path the path.
+     * @param length the length.
+     * @param ranges the ranges.
+     * @throws IOException when an I/O error occurs.
+     */
+    private void sendRanges(HttpServletResponse response, Resource found, String path,
+            long length, List<Range> ranges) throws IOException {
+        if (ranges.isEmpty()) {
+            response.setHeader("Content-Range", "bytes */" + length);
+            response.setStatus(SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+            return;
+        }
+        response.setStatus(SC_PARTIAL_CONTENT);
+        if (ranges.size() == 1) {
+            Range range = ranges.get(0);
+            response.setHeader("Content-Range", range.toContentRange(length));
+            response.setContentLengthLong(range.length());
+            try (SeekableByteChannel channel = found.getResourceAsChannel(path)) {
+                OutputStream outputStream = response.getOutputStream();
+                writeRange(found, path, channel, range, outputStream);
+                outputStream.flush();
+            }
+            return;
+        }
+        String boundary = Long.toHexString(ThreadLocalRandom.current().nextLong());
+        String contentType = response.getContentType();
+        byte[][] partHeads = new byte[ranges.size()][];
+        byte[] end = ("\r\n--" + boundary + "--\r\n").getBytes(ISO_8859_1);
+        long contentLength = end.length;
+        for (int i = 0; i < partHeads.length; i++) {
+            Range range = ranges.get(i);
+            partHeads[i] = ("\r\n--" + boundary + "\r\nContent-Type: " + contentType
+                    + "\r\nContent-Range: " + range.toContentRange(length) + "\r\n\r\n").getBytes(ISO_8859_1);
+            contentLength += partHeads[i].length + range.length();
+        }
+        response.setContentType("multipart/byteranges; boundary=" + boundary);
+        response.setContentLengthLong(contentLength);
+        try (SeekableByteChannel channel = found.getResourceAsChannel(path)) {
+            OutputStream outputStream = response.getOutputStream();
+            for (int i = 0; i < partHeads.length; i++) {
+                outputStream.write(partHeads[i]);
+                writeRange(found, path, channel, ranges.get(i), outputStream);
+            }
+            outputStream.write(end);
+            outputStream.flush();
+        }
+    }
+
+    /**
+     * Write a range of the resource.
+     *
+     * <p>
+     * A range of a file is handed to the response as a file region when the
+     * output stream is the response itself. When there is no channel the
+     * resource is read as a stream, skipping the bytes before the range.
+     * </p>
+     *
+     * @param found the resource.
+     * @param path the path.
+     * @param channel the channel (may be null).
+     * @param range the range.
+     * @param outputStream the output stream.
+     * @throws IOException when an I/O error occurs.
+     */
+    private void writeRange(Resource found, String path, SeekableByteChannel channel,
+            Range range, OutputStream outputStream) throws IOException {
+        if (channel instanceof FileChannel fileChannel
+                && outputStream instanceof DefaultWebApplicationResponse webResponse) {
+            webResponse.writeFile(fileChannel, range.start(), range.length());
+            return;
+        }
+        if (channel != null) {
+            channel.position(range.start());
+            copy(Channels.newInputStream(channel), path, range.length(), outputStream);
+            return;
+        }
+        try (InputStream inputStream = found.getResourceAsStream(path)) {
+            if (inputStream == null) {
+                throw new IOException("Unable to read resource: " + path);
+            }
+            inputStream.skipNBytes(range.start());
+            copy(inputStream, path, range.length(), outputStream);
+        }
+    }
+
+    /**
+     * Copy the given number of bytes of a resource to the output stream.
+     *
+     * @param inputStream the input stream of the resource.
+     * @param path the path.
+     * @param length the number of bytes.
+     * @param outputStream the output stream.
+     * @throws IOException when an I/O error occurs.
+     */
+    private void copy(InputStream inputStream, String path, long length,
+            OutputStream outputStream) throws IOException {
+        byte[] bytes = new byte[(int) Math.min(8192, length)];
+        while (length > 0) {
+            int read = inputStream.read(bytes, 0, (int) Math.min(bytes.length, length));
+            if (read == -1) {
+                throw new IOException("Unexpected end of resource: " + path);
+            }
+            outputStream.write(bytes, 0, read);
+            length -= read;
+        }
+    }
+
+    /**
+     * Is the resource not modified according to the conditional headers of
+     * the request.
+     *
+     * <p>
+     * If-None-Match takes precedence over If-Modified-Since, which is only
+     * evaluated when the former is absent.
+     * </p>
+     *
+     * @param request the request.
+     * @param etag the ETag.
+     * @param lastModified the last modified time.
+     * @return true if it is not modified, false otherwise.
+     */
+    private boolean isNotModified(HttpServletRequest request, String etag, long lastModified) {
+        String ifNoneMatch = request.getHeader("If-None-Match");
+        if (ifNoneMatch != null) {
+            return matches(ifNoneMatch, etag);
+        }
+        long ifModifiedSince;
+        try {
+            ifModifiedSince = request.getDateHeader("If-Modified-Since");
+        } catch (IllegalArgumentException iae) {
+            return false;
+        }
+        return ifModifiedSince >= 0 && lastModified / 1000 <= ifModifiedSince / 1000;
+    }
+
+    /**
+     * Does a list of entity tags match the ETag, using the weak comparison.
+     *
+     * @param entityTags the comma separated entity tags (or "*").
+     * @param etag the ETag.
+     * @return true if it does, false otherwise.
+     */
+    private boolean matches(String entityTags, String etag) {
+        for (String entityTag : entityTags.split(",")) {
+            String tag = entityTag.trim();
+            if (tag.startsWith("W/")) {
+                tag = tag.substring(2);
+            }
+            if (tag.equals("*") || tag.equals(etag)) {
+                return true;
+            }
+        }
+        return false;
+    }
 
-        String filename = uri.contains("/") ? uri.substring(uri.lastIndexOf("/") + 1) : uri.isEmpty()? "" : uri.substring(1);
+    /**
+     * Set the validators of the response.
+     *
+     * @param response the response.
+     * @param etag the ETag.
+     * @param lastModified the last modified time.
+     */
+    private void setValidators(HttpServletResponse response, String etag, long lastModified) {
+        response.setHeader("ETag", etag);
+        response.setDateHeader("Last-Modified", lastModified);
+    }
+
+    /**
+     * Get the content type for the given path.
+     *
+     * @param request the request.
+     * @param path the path.
+     * @return the content type.
+     */
+    private String getContentType(HttpServletRequest request, String path) {
+        String filename = path.substring(path.lastIndexOf("/") + 1);
         String mimeType = request.getServletContext().getMimeType(filename);
+        return mimeType != null ? mimeType : "application/octet-stream";
+    }
 
-        if (mimeType != null) {
-            response.setContentType(mimeType);
-        } else {
-            response.setContentType("application/octet-stream");
+    /**
+     * Format a date as the value of an HTTP header.
+     *
+     * @param date the date (in milliseconds since the epoch).
+     * @return the header value.
+     */
+    private static String formatDate(long date) {
+        return Instant.ofEpochMilli(date).atZone(ZoneId.of("GMT"))
+                .format(DateTimeFormatter.RFC_1123_DATE_TIME);
+    }
+
+    /**
+     * A byte range of a resource.
+     *
+     * @param start the position of the first byte.
+     * @param end the position of the last byte (inclusive).
+     */
+    private record Range(long start, long end) {
+
+        /**
+         * {@return the number of bytes in the range}
+         */
+        long length() {
+            return end - start + 1;
+        }
+
+        /**
+         * Format the range as the value of a Content-Range header.
+         *
+         * @param completeLength the length of the resource.
+         * @return the header value.
+         */
+        String toContentRange(long completeLength) {
+            return "bytes " + start + "-" + end + "/" + completeLength;
         }
     }
 }
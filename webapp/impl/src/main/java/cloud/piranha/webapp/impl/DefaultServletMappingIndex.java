@@ -0,0 +1,195 @@
+/*
+ * Copyright (c) 2002-2021 Manorrock.com. All Rights Reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   1. Redistributions of source code must retain the above copyright notice,
+ *      this list of conditions and the following disclaimer.
+ *   2. Redistributions in binary form must reproduce the above copyright
+ *      notice, this list of conditions and the following disclaimer in the
+ *      documentation and/or other materials provided with the distribution.
+ *   3. Neither the name of the copyright holder nor the names of its
+ *      contributors may be used to endorse or promote products derived from
+ *      this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package cloud.piranha.webapp.impl;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The compiled index of the servlet URL patterns of a web application.
+ *
+ * <p>
+ * The exact patterns are kept in a hash set, the prefix patterns (ending in
+ * <code>/*</code>) in a trie of path segments and the extension patterns
+ * (starting with <code>*.</code>) in a hash map, so the cost of finding the
+ * servlet mapping for a path does not depend on the number of URL patterns.
+ * The index does not change once built, so it can be used by many threads
+ * at the same time.
+ * </p>
+ *
+ * @author Manfred Riem (mriem@manorrock.com)
+ */
+class DefaultServletMappingIndex {
+
+    /**
+     * Stores the exact patterns.
+     */
+    private final Set<String> exacts;
+
+    /**
+     * Stores the extension patterns by extension (including the dot).
+     */
+    private final Map<String, String> extensions;
+
+    /**
+     * Stores the root of the prefix pattern trie.
+     */
+    private final PrefixNode prefixes;
+
+    /**
+     * Constructor.
+     *
+     * @param urlPatterns the URL patterns.
+     */
+    DefaultServletMappingIndex(Collection<String> urlPatterns) {
+        exacts = new HashSet<>(urlPatterns);
+        extensions = new HashMap<>();
+        prefixes = new PrefixNode();
+        for (String urlPattern : urlPatterns) {
+            if (urlPattern.startsWith("*.")) {
+                extensions.put(urlPattern.substring(1), urlPattern);
+            } else if (urlPattern.endsWith("/*")) {
+                prefixes.add(urlPattern);
+            }
+        }
+    }
+
+    /**
+     * Find the servlet mapping for the given path.
+     *
+     * <p>
+     * An exact match goes before the longest prefix match, which goes before
+     * the longest extension match.
+     * </p>
+     *
+     * @param path the path (without a query string).
+     * @return the mapping, or null if not found.
+     */
+    DefaultWebApplicationRequestMapping find(String path) {
+        DefaultWebApplicationRequestMapping result = null;
+        if (exacts.contains(path)) {
+            result = new DefaultWebApplicationRequestMapping(path);
+            result.setExact(true);
+            result.setMatchValue(path.substring(1));
+            return result;
+        }
+        String prefix = findPrefix(path);
+        if (prefix != null) {
+            result = new DefaultWebApplicationRequestMapping(prefix);
+            // If path is /foo/bar and the initial prefix is /foo/* then the
+            // match value is foo/bar
+            result.setMatchValue(path.isEmpty() ? path : path.substring(1));
+            return result;
+        }
+        if (!extensions.isEmpty()) {
+            int dot = path.indexOf('.', path.lastIndexOf('/') + 1);
+            while (dot != -1) {
+                String extension = extensions.get(path.substring(dot));
+                if (extension != null) {
+                    result = new DefaultWebApplicationRequestMapping(extension);
+                    result.setExtension(true);
+                    // If path is /foo.bar and the initial extension is *.bar,
+                    // then the match value is foo.
+                    result.setMatchValue(path.substring(1, dot));
+                    return result;
+                }
+                dot = path.indexOf('.', dot + 1);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Find the longest prefix pattern that matches the given path.
+     *
+     * @param path the path.
+     * @return the prefix pattern, or null if not found.
+     */
+    private String findPrefix(String path) {
+        PrefixNode node = prefixes;
+        String result = node.pattern;
+        int length = path.length();
+        int start = 0;
+        while (start < length && node.children != null) {
+            if (path.charAt(start) == '/') {
+                start++;
+                continue;
+            }
+            int end = path.indexOf('/', start);
+            if (end == -1) {
+                end = length;
+            }
+            node = node.children.get(path.substring(start, end));
+            if (node == null) {
+                break;
+            }
+            if (node.pattern != null) {
+                result = node.pattern;
+            }
+            start = end;
+        }
+        return result;
+    }
+
+    /**
+     * A node in the trie of prefix pattern segments.
+     */
+    private static class PrefixNode {
+
+        /**
+         * Stores the child nodes by path segment (null if there are none).
+         */
+        private Map<String, PrefixNode> children;
+
+        /**
+         * Stores the prefix pattern ending at this node (null if none).
+         */
+        private String pattern;
+
+        /**
+         * Add a prefix pattern below this node.
+         *
+         * @param urlPattern the prefix pattern.
+         */
+        void add(String urlPattern) {
+            PrefixNode node = this;
+            for (String segment : urlPattern.substring(0, urlPattern.length() - 2).split("/")) {
+                if (!segment.isEmpty()) {
+                    if (node.children == null) {
+                        node.children = new HashMap<>();
+                    }
+                    node = node.children.computeIfAbsent(segment, key -> new PrefixNode());
+                }
+            }
+            node.pattern = urlPattern;
+        }
+    }
+}
@@ -60,6 +60,7 @@ import jakarta.servlet.ServletException;
 import jakarta.servlet.ServletRequest;
 import jakarta.servlet.ServletRequestWrapper;
 import jakarta.servlet.ServletResponse;
+import jakarta.servlet.ServletResponseWrapper;
 import jakarta.servlet.UnavailableException;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletRequestWrapper;
@@ -198,7 +199,7 @@ public class DefaultServletRequestDispatcher implements RequestDispatcher {
         }
 
         if (!webappRequest.isAsyncStarted()) {
-            httpResponse.flushBuffer();
+            httpResponse.close();
         }
     }
 
@@ -376,11 +377,7 @@ public class DefaultServletRequestDispatcher implements RequestDispatcher {
             } finally {
                 restoreCurrentRequest(currentRequestHolder, request);
             }
-
-            response.flushBuffer();
         }
-
-
     }
 
     // #### SYNC forward private methods
@@ -450,6 +447,29 @@ public class DefaultServletRequestDispatcher implements RequestDispatcher {
                 restoreCurrentRequest(currentRequestHolder, request);
             }
 
+            closeForwardedResponse(response);
+        }
+    }
+
+    /**
+     * Close the response after a forward.
+     *
+     * <p>
+     * Closing instead of flushing lets the response frame the forwarded body
+     * with a Content-Length before it is committed.
+     * </p>
+     *
+     * @param response the response.
+     * @throws IOException when an I/O error occurs.
+     */
+    private void closeForwardedResponse(ServletResponse response) throws IOException {
+        ServletResponse currentResponse = response;
+        while (currentResponse instanceof ServletResponseWrapper wrapper) {
+            currentResponse = wrapper.getResponse();
+        }
+        if (currentResponse instanceof DefaultWebApplicationResponse webappResponse) {
+            webappResponse.close();
+        } else {
             response.flushBuffer();
         }
     }
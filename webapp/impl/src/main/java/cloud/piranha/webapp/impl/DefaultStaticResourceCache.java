@@ -0,0 +1,196 @@
+/*
+ * Copyright (c) 2002-2021 Manorrock.com. All Rights Reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   1. Redistributions of source code must retain the above copyright notice,
+ *      this list of conditions and the following disclaimer.
+ *   2. Redistributions in binary form must reproduce the above copyright
+ *      notice, this list of conditions and the following disclaimer in the
+ *      documentation and/or other materials provided with the distribution.
+ *   3. Neither the name of the copyright holder nor the names of its
+ *      contributors may be used to endorse or promote products derived from
+ *      this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package cloud.piranha.webapp.impl;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.attribute.BasicFileAttributes;
+
+import cloud.piranha.resource.DirectoryResource;
+import cloud.piranha.resource.JarResource;
+import cloud.piranha.resource.api.Resource;
+import cloud.piranha.resource.api.ResourceManager;
+
+/**
+ * The in-memory cache of static resources used by the DefaultServlet.
+ *
+ * <p>
+ * The cache holds the content of small resources together with the headers
+ * derived from them. It is bounded by the total number of content bytes and
+ * evicts the least recently used resources first once that is exceeded. A
+ * hit does not take a lock. An entry remembers the resource manager and
+ * resource it was read from, so it can be validated against the last
+ * modified time and length of the resource on every hit, which picks up
+ * changes to files in a directory. For a directory both come from a single
+ * read of the file attributes.
+ * </p>
+ *
+ * <p>
+ * Entries read from a JAR file are not validated on a hit. The JAR files of
+ * a deployed web application do not change in place, and a redeployment
+ * brings a new resource manager, which invalidates the entry.
+ * </p>
+ *
+ * @author Manfred Riem (mriem@manorrock.com)
+ */
+class DefaultStaticResourceCache {
+
+    /**
+     * Stores the maximum length of a cached resource.
+     */
+    static final int MAX_RESOURCE_LENGTH = 64 * 1024;
+
+    /**
+     * Stores the entries.
+     */
+    private final DefaultBoundedCache<String, Entry> entries;
+
+    /**
+     * Constructor.
+     *
+     * @param maxSize the maximum number of content bytes.
+     */
+    DefaultStaticResourceCache(long maxSize) {
+        this.entries = new DefaultBoundedCache<>(maxSize, entry -> entry.content().length);
+    }
+
+    /**
+     * Clear the cache.
+     */
+    void clear() {
+        entries.clear();
+    }
+
+    /**
+     * Get the entry for the given path.
+     *
+     * <p>
+     * An entry that no longer matches its resource is removed.
+     * </p>
+     *
+     * @param path the path.
+     * @param resourceManager the current resource manager.
+     * @return the entry, or null if not cached.
+     */
+    Entry get(String path, ResourceManager resourceManager) {
+        Entry entry = entries.get(path);
+        if (entry == null) {
+            return null;
+        }
+        if (entry.resourceManager() != resourceManager || !isValid(path, entry)) {
+            entries.remove(path, entry);
+            return null;
+        }
+        return entry;
+    }
+
+    /**
+     * {@return the maximum number of content bytes}
+     */
+    long getMaxSize() {
+        return entries.getMaxWeight();
+    }
+
+    /**
+     * {@return the number of content bytes}
+     */
+    long getSize() {
+        return entries.getWeight();
+    }
+
+    /**
+     * Put an entry in the cache.
+     *
+     * <p>
+     * Entries larger than the maximum resource length or the maximum number
+     * of content bytes are not cached.
+     * </p>
+     *
+     * @param path the path.
+     * @param entry the entry.
+     */
+    void put(String path, Entry entry) {
+        if (entry.content().length <= MAX_RESOURCE_LENGTH) {
+            entries.put(path, entry);
+        }
+    }
+
+    /**
+     * Set the maximum number of content bytes.
+     *
+     * @param maxSize the maximum number of content bytes (0 disables the
+     * cache).
+     */
+    void setMaxSize(long maxSize) {
+        entries.setMaxWeight(maxSize);
+    }
+
+    /**
+     * Is the entry still valid for its resource.
+     *
+     * @param path the path.
+     * @param entry the entry.
+     * @return true if it is, false otherwise.
+     */
+    private static boolean isValid(String path, Entry entry) {
+        Resource resource = entry.resource();
+        if (resource instanceof JarResource) {
+            return true;
+        }
+        if (resource instanceof DirectoryResource directoryResource) {
+            try {
+                BasicFileAttributes attributes = Files.readAttributes(
+                        new File(directoryResource.getRootDirectory(), path).toPath(),
+                        BasicFileAttributes.class);
+                return attributes.isRegularFile()
+                        && attributes.lastModifiedTime().toMillis() == entry.lastModified()
+                        && attributes.size() == entry.content().length;
+            } catch (IOException ioe) {
+                return false;
+            }
+        }
+        return resource.getLastModified(path) == entry.lastModified()
+                && resource.getLength(path) == entry.content().length;
+    }
+
+    /**
+     * A cached static resource.
+     *
+     * @param resourceManager the resource manager it was found through.
+     * @param resource the resource it was read from.
+     * @param lastModified the last modified time of the resource.
+     * @param content the content.
+     * @param contentType the Content-Type header.
+     * @param etag the ETag header.
+     * @param lastModifiedHeader the Last-Modified header.
+     */
+    record Entry(ResourceManager resourceManager, Resource resource, long lastModified,
+            byte[] content, String contentType, String etag, String lastModifiedHeader) {
+    }
+}
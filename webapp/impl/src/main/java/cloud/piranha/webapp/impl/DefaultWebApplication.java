@@ -423,6 +423,7 @@ public class DefaultWebApplication implements WebApplication {
     public FilterRegistration.Dynamic addFilter(String filterName, String className) {
         checkTainted();
         checkServicing();
+        invocationFinder.clearCache();
 
         if (filterName == null || filterName.trim().equals("")) {
             throw new IllegalArgumentException("Filter name cannot be null or empty");
@@ -450,6 +451,7 @@ public class DefaultWebApplication implements WebApplication {
     public FilterRegistration.Dynamic addFilter(String filterName, Filter filter) {
         checkTainted();
         checkServicing();
+        invocationFinder.clearCache();
 
         if (filters.containsKey(filterName)) {
             DefaultFilterEnvironment filterEnvironment = filters.get(filterName);
@@ -468,6 +470,7 @@ public class DefaultWebApplication implements WebApplication {
 
     @Override
     public Set<String> addFilterMapping(Set<DispatcherType> dispatcherTypes, String filterName, boolean isMatchAfter, String... urlPatterns) {
+        invocationFinder.clearCache();
         if (isMatchAfter) {
             return webApplicationRequestMapper.addFilterMapping(dispatcherTypes, filterName, urlPatterns);
         }
@@ -578,6 +581,7 @@ public class DefaultWebApplication implements WebApplication {
     @Override
     public void addResource(Resource resource) {
         resourceManager.addResource(resource);
+        invocationFinder.clearCache();
     }
 
     @Override
@@ -589,6 +593,7 @@ public class DefaultWebApplication implements WebApplication {
     public Dynamic addServlet(String servletName, String className) {
         checkTainted();
         checkServicing();
+        invocationFinder.clearCache();
 
         DefaultServletEnvironment servletEnvironment = servletEnvironments.get(servletName);
         if (servletEnvironment == null) {
@@ -610,6 +615,7 @@ public class DefaultWebApplication implements WebApplication {
     public Dynamic addServlet(String servletName, Servlet servlet) {
         checkTainted();
         checkServicing();
+        invocationFinder.clearCache();
 
         if (servletEnvironments.containsKey(servletName)) {
             DefaultServletEnvironment servletEnvironment = servletEnvironments.get(servletName);
@@ -627,6 +633,7 @@ public class DefaultWebApplication implements WebApplication {
 
     @Override
     public Set<String> addServletMapping(String servletName, String... urlPatterns) {
+        invocationFinder.clearCache();
         return webApplicationRequestMapper.addServletMapping(servletName, urlPatterns);
     }
 
@@ -1291,6 +1298,10 @@ public class DefaultWebApplication implements WebApplication {
     @Override
     public void initializeFinish() {
         if (status == SETUP || status == INITIALIZED_DECLARED) {
+            if (webApplicationRequestMapper instanceof DefaultWebApplicationRequestMapper defaultRequestMapper) {
+                defaultRequestMapper.compile();
+            }
+            invocationFinder.clearCache();
             status = INITIALIZED;
             LOGGER.log(DEBUG, "Initialized web application at {0}", contextPath);
         }
@@ -1740,6 +1751,7 @@ public class DefaultWebApplication implements WebApplication {
     @Override
     public void setResourceManager(ResourceManager resourceManager) {
         this.resourceManager = resourceManager;
+        invocationFinder.clearCache();
     }
 
     /**
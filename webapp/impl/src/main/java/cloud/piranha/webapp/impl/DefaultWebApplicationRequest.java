@@ -160,6 +160,12 @@ public class DefaultWebApplicationRequest extends ServletInputStream implements
      */
     protected HttpHeaderManager headerManager;
 
+    /**
+     * Stores the host name resolver used to resolve the local and remote
+     * names when they are asked for.
+     */
+    protected DefaultHostNameResolver hostNameResolver;
+
     /**
      * Stores the httpServletMapping.
      */
@@ -555,9 +561,17 @@ public class DefaultWebApplicationRequest extends ServletInputStream implements
 
     /**
      * {@return the local name}
+     *
+     * <p>
+     * If no local name was set it is resolved from the local address using
+     * the host name resolver, if any.
+     * </p>
      */
     @Override
     public String getLocalName() {
+        if (localName == null && hostNameResolver != null && getLocalAddr() != null) {
+            localName = hostNameResolver.resolve(getLocalAddr());
+        }
         return localName;
     }
 
@@ -881,9 +895,17 @@ public class DefaultWebApplicationRequest extends ServletInputStream implements
 
     /**
      * {@return the remote host}
+     *
+     * <p>
+     * If no remote host was set it is resolved from the remote address using
+     * the host name resolver, if any.
+     * </p>
      */
     @Override
     public String getRemoteHost() {
+        if (remoteHost == null && hostNameResolver != null && getRemoteAddr() != null) {
+            remoteHost = hostNameResolver.resolve(getRemoteAddr());
+        }
         return remoteHost;
     }
 
@@ -964,11 +986,11 @@ public class DefaultWebApplicationRequest extends ServletInputStream implements
     }
 
     /**
-     * {@return the server name}
+     * {@return the server name, or the local name if no server name was set}
      */
     @Override
     public String getServerName() {
-        return serverName;
+        return serverName != null ? serverName : getLocalName();
     }
 
     /**
@@ -1007,8 +1029,8 @@ public class DefaultWebApplicationRequest extends ServletInputStream implements
     public HttpSession getSession(boolean create) {
         HttpSession session = null;
         HttpSessionManager manager = webApplication.getHttpSessionManager();
-        if (currentSessionId == null && requestedSessionId != null) {
-            currentSessionId = requestedSessionId;
+        if (currentSessionId == null && getRequestedSessionId() != null) {
+            currentSessionId = getRequestedSessionId();
         }
 
         if (manager.hasSession(currentSessionId)) {
@@ -1096,9 +1118,9 @@ public class DefaultWebApplicationRequest extends ServletInputStream implements
     @Override
     public boolean isRequestedSessionIdValid() {
         boolean result = false;
-        if (requestedSessionId != null) {
+        if (getRequestedSessionId() != null) {
             HttpSessionManager manager = webApplication.getHttpSessionManager();
-            result = manager.hasSession(requestedSessionId);
+            result = manager.hasSession(getRequestedSessionId());
         }
         return result;
     }
@@ -1155,6 +1177,74 @@ public class DefaultWebApplicationRequest extends ServletInputStream implements
         webApplication.getSecurityManager().logout(this, (HttpServletResponse) this.webApplication.getResponse(this));
     }
 
+    /**
+     * Recycle the request.
+     *
+     * <p>
+     * This puts the request back in the state it was in right after it was
+     * constructed, so it can be reused for another request. The attribute
+     * manager, header manager and parameter map are cleared rather than
+     * replaced when possible.
+     * </p>
+     */
+    public void recycle() {
+        authType = null;
+        asyncContext = null;
+        asyncStarted = false;
+        asyncSupported = false;
+        if (attributeManager instanceof DefaultAttributeManager defaultAttributeManager) {
+            defaultAttributeManager.clear();
+        } else {
+            attributeManager = new DefaultAttributeManager();
+        }
+        characterEncoding = null;
+        contentLength = -1;
+        contentType = null;
+        contextPath = "";
+        cookies = null;
+        currentSessionId = null;
+        dispatcherType = DispatcherType.REQUEST;
+        gotInputStream = false;
+        gotReader = false;
+        if (headerManager instanceof DefaultHttpHeaderManager defaultHeaderManager) {
+            defaultHeaderManager.clear();
+        } else {
+            headerManager = new DefaultHttpHeaderManager();
+        }
+        headerManager.setHeader("Accept", "*/*");
+        httpServletMapping = null;
+        inputStream = new ByteArrayInputStream(new byte[0]);
+        localAddress = null;
+        localName = null;
+        localPort = 0;
+        method = "GET";
+        multipartConfig = null;
+        parameters.clear();
+        parametersParsed = false;
+        pathInfo = null;
+        protocol = "HTTP/1.1";
+        queryString = null;
+        reader = null;
+        remoteAddr = null;
+        remoteHost = null;
+        remotePort = 0;
+        requestedSessionId = null;
+        requestedSessionIdFromCookie = false;
+        requestedSessionIdFromURL = false;
+        scheme = "http";
+        serverName = "localhost";
+        serverPort = 80;
+        servletPath = "";
+        originalServletPath = null;
+        upgraded = false;
+        upgradeHandler = null;
+        userPrincipal = null;
+        webApplication = null;
+        finished = false;
+        index = 0;
+        readListener = null;
+    }
+
     /**
      * Remove the attribute.
      *
@@ -1316,6 +1406,15 @@ public class DefaultWebApplicationRequest extends ServletInputStream implements
         headerManager.setHeader(name, value);
     }
 
+    /**
+     * Set the host name resolver.
+     *
+     * @param hostNameResolver the host name resolver.
+     */
+    public void setHostNameResolver(DefaultHostNameResolver hostNameResolver) {
+        this.hostNameResolver = hostNameResolver;
+    }
+
     /**
      * Set the input stream.
      *
@@ -36,7 +36,6 @@ import static java.util.stream.Collectors.toSet;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.EnumSet;
-import java.util.Enumeration;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
@@ -67,15 +66,26 @@ public class DefaultWebApplicationRequestMapper implements WebApplicationRequest
      * Stores the default servlet
      */
     protected String defaultServlet;
-    
+
+    /**
+     * Stores the compiled index of the filter mappings (null if it needs to
+     * be compiled).
+     */
+    private volatile DefaultFilterMappingIndex filterMappingIndex;
+
+    /**
+     * Stores the compiled index of the servlet mappings (null if it needs to
+     * be compiled).
+     */
+    private volatile DefaultServletMappingIndex servletMappingIndex;
 
     @Override
-    public Set<String> addFilterMapping(Set<DispatcherType> dispatcherTypes, String filterName, String... urlPatterns) {
+    public synchronized Set<String> addFilterMapping(Set<DispatcherType> dispatcherTypes, String filterName, String... urlPatterns) {
         return doAddFilterMapping(isEmpty(dispatcherTypes)? EnumSet.of(REQUEST) : dispatcherTypes, filterName, urlPatterns);
     }
 
     @Override
-    public Set<String> addFilterMappingBeforeExisting(Set<DispatcherType> dispatcherTypes, String filterName, String... urlPatterns) {
+    public synchronized Set<String> addFilterMappingBeforeExisting(Set<DispatcherType> dispatcherTypes, String filterName, String... urlPatterns) {
        return doAddFilterMappingBeforeExisting(isEmpty(dispatcherTypes)? EnumSet.of(REQUEST) : dispatcherTypes, filterName, urlPatterns);
     }
 
@@ -96,7 +106,7 @@ public class DefaultWebApplicationRequestMapper implements WebApplicationRequest
      * @return the URL patterns that were already added.
      */
     @Override
-    public Set<String> addServletMapping(String servletName, String... urlPatterns) {
+    public synchronized Set<String> addServletMapping(String servletName, String... urlPatterns) {
         if (isEmpty(urlPatterns)) {
             throw new IllegalArgumentException("Mappings for " + servletName + " cannot be empty");
         }
@@ -124,10 +134,25 @@ public class DefaultWebApplicationRequestMapper implements WebApplicationRequest
                 servletMappings.put(urlPattern, servletName);
             }
         }
+        servletMappingIndex = null;
 
         return emptySet();
     }
 
+    /**
+     * Compile the mappings.
+     *
+     * <p>
+     * The mappings are compiled into an index when they are first used after
+     * a change. Calling this method once the web application is initialized
+     * takes that cost away from the first request.
+     * </p>
+     */
+    public void compile() {
+        compileFilterMappings();
+        compileServletMappings();
+    }
+
     /**
      * Find the filter mappings.
      *
@@ -136,40 +161,15 @@ public class DefaultWebApplicationRequestMapper implements WebApplicationRequest
      */
     @Override
     public Collection<String> findFilterMappings(DispatcherType dispatcherType, String path) {
-        List<String> result = new ArrayList<>();
-
-        if (path.contains("?")) {
-            path = path.substring(0, path.indexOf("?"));
+        int queryIndex = path.indexOf('?');
+        if (queryIndex != -1) {
+            path = path.substring(0, queryIndex);
         }
-
-        for (FilterMapping filterMapping : filterMappings) {
-            if (dispatcherType.equals(filterMapping.getDispatcherType())) {
-                String filterName = filterMapping.getFilterName();
-                String urlPattern = filterMapping.getUrlPattern();
-
-                if (path.equals(urlPattern)) {
-                    result.add(filterName);
-                } else if (!path.startsWith("servlet:// ")) {
-
-                    // For Servlet "patterns", only do exact matches.
-                    // URL patterns are also matched prefix and extension.
-
-                    if (urlPattern.startsWith("*.")) {
-                        urlPattern = urlPattern.substring(1);
-                        if (path.endsWith(urlPattern)) {
-                            result.add(filterName);
-                        }
-                    } else if (!urlPattern.startsWith("*.") && urlPattern.endsWith("/*")) {
-                        urlPattern = urlPattern.substring(0, urlPattern.length() - 2);
-                        if (path.startsWith(urlPattern)) {
-                            result.add(filterName);
-                        }
-                    }
-                }
-            }
+        DefaultFilterMappingIndex index = filterMappingIndex;
+        if (index == null) {
+            index = compileFilterMappings();
         }
-
-        return result;
+        return index.find(dispatcherType, path);
     }
 
     private Set<String> doAddFilterMapping(Set<DispatcherType> dispatcherTypes, String filterName, String... urlPatterns) {
@@ -186,6 +186,7 @@ public class DefaultWebApplicationRequestMapper implements WebApplicationRequest
                 }
             }
         }
+        filterMappingIndex = null;
         return result;
     }
 
@@ -203,57 +204,7 @@ public class DefaultWebApplicationRequestMapper implements WebApplicationRequest
                 }
             }
         }
-        return result;
-    }
-
-    /**
-     * Find a servlet mapping with an exact mapping.
-     *
-     * @param path the path.
-     * @return the mapping, or null if not found.
-     */
-    private DefaultWebApplicationRequestMapping findServletExactMatch(String path) {
-        DefaultWebApplicationRequestMapping result = null;
-        Enumeration<String> exacts = servletMappings.keys();
-        while (exacts.hasMoreElements()) {
-            String exact = exacts.nextElement();
-
-            if (path.equals(exact)) {
-                result = new DefaultWebApplicationRequestMapping(exact);
-                result.setExact(true);
-                result.setMatchValue(exact.substring(1));
-                break;
-            }
-        }
-        return result;
-    }
-
-    /**
-     * Find a servlet mapping with an extension match.
-     *
-     * @param path the path.
-     * @return the mapping, or null if not found.
-     */
-    private DefaultWebApplicationRequestMapping findServletExtensionMatch(String path) {
-        DefaultWebApplicationRequestMapping result = null;
-        Enumeration<String> extensions = servletMappings.keys();
-        while (extensions.hasMoreElements()) {
-            String extension = extensions.nextElement();
-            /*
-             * Make sure it really is an extension first.
-             */
-            if (extension.startsWith("*.")) {
-                extension = extension.substring(1);
-                if (path.endsWith(extension)) {
-                    result = new DefaultWebApplicationRequestMapping("*" + extension);
-                    result.setExtension(true);
-                    // If path is /foo.bar and the initial extension is *.bar, then
-                    // the match value is foo.
-                    result.setMatchValue(path.substring(1, path.lastIndexOf(extension)));
-                    break;
-                }
-            }
-        }
+        filterMappingIndex = null;
         return result;
     }
 
@@ -265,71 +216,15 @@ public class DefaultWebApplicationRequestMapper implements WebApplicationRequest
      */
     @Override
     public DefaultWebApplicationRequestMapping findServletMapping(String path) {
-        if (path.contains("?")) {
-            path = path.substring(0, path.indexOf("?"));
+        int queryIndex = path.indexOf('?');
+        if (queryIndex != -1) {
+            path = path.substring(0, queryIndex);
         }
-        DefaultWebApplicationRequestMapping result = findServletExactMatch(path);
-        if (result == null) {
-            result = findServletPrefixMatch(path);
+        DefaultServletMappingIndex index = servletMappingIndex;
+        if (index == null) {
+            index = compileServletMappings();
         }
-        if (result == null) {
-            result = findServletExtensionMatch(path);
-        }
-        return result;
-    }
-
-    /**
-     * Find a servlet mapping with the longest prefix mapping.
-     *
-     * @param path the path.
-     * @return the mapping, or null if not found.
-     */
-    private DefaultWebApplicationRequestMapping findServletPrefixMatch(String path) {
-        DefaultWebApplicationRequestMapping result = null;
-        DefaultWebApplicationRequestMapping found;
-        for (;;) {
-            found = findServletPrefixMatch(path, result);
-            if (found != null) {
-                result = found;
-            } else {
-                break;
-            }
-        }
-        if (result != null) {
-            result.setPattern(result.getPattern() + "*");
-        }
-        return result;
-    }
-
-    /**
-     * Find a servlet mapping with a prefix mapping longer than the given
-     * current prefix.
-     *
-     * @param path the path.
-     * @param currentPrefix the current matched prefix.
-     * @return the mapping, or null if not found.
-     */
-    private DefaultWebApplicationRequestMapping findServletPrefixMatch(String path, DefaultWebApplicationRequestMapping currentPrefix) {
-        DefaultWebApplicationRequestMapping result = null;
-        Enumeration<String> prefixes = servletMappings.keys();
-        while (prefixes.hasMoreElements()) {
-            String prefix = prefixes.nextElement();
-            if (!prefix.startsWith("*.") && prefix.endsWith("/*")) {
-                prefix = prefix.substring(0, prefix.length() - 1);
-                if ((path + "/").startsWith(prefix)) {
-                    result = new DefaultWebApplicationRequestMapping(prefix);
-                    // If path is /foo/bar and the initial prefix is /foo/* then the
-                    // match value is bar
-                    result.setMatchValue(path.substring(1));
-                    break;
-                }
-            }
-        }
-        if (result != null && currentPrefix != null
-                && result.getPattern().length() <= currentPrefix.getPattern().length()) {
-            result = null;
-        }
-        return result;
+        return index.find(path);
     }
 
     /**
@@ -362,6 +257,30 @@ public class DefaultWebApplicationRequestMapper implements WebApplicationRequest
         return defaultServlet;
     }
 
+    /**
+     * Compile the filter mappings, unless already done.
+     *
+     * @return the compiled index of the filter mappings.
+     */
+    private synchronized DefaultFilterMappingIndex compileFilterMappings() {
+        if (filterMappingIndex == null) {
+            filterMappingIndex = new DefaultFilterMappingIndex(filterMappings);
+        }
+        return filterMappingIndex;
+    }
+
+    /**
+     * Compile the servlet mappings, unless already done.
+     *
+     * @return the compiled index of the servlet mappings.
+     */
+    private synchronized DefaultServletMappingIndex compileServletMappings() {
+        if (servletMappingIndex == null) {
+            servletMappingIndex = new DefaultServletMappingIndex(servletMappings.keySet());
+        }
+        return servletMappingIndex;
+    }
+
     private boolean isEmpty(Collection<?> collection) {
         return collection == null || collection.isEmpty();
     }
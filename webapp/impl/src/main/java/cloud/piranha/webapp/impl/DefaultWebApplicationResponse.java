@@ -29,10 +29,16 @@ package cloud.piranha.webapp.impl;
 
 import static java.util.Collections.list;
 
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.io.OutputStreamWriter;
 import java.io.PrintWriter;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.time.Instant;
@@ -44,6 +50,9 @@ import java.util.Enumeration;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Locale;
+import java.util.Objects;
+
+import static java.nio.charset.StandardCharsets.ISO_8859_1;
 
 import jakarta.servlet.DispatcherType;
 import jakarta.servlet.RequestDispatcher;
@@ -64,6 +73,46 @@ import cloud.piranha.webapp.api.WebApplicationResponse;
  */
 public class DefaultWebApplicationResponse extends ServletOutputStream implements WebApplicationResponse {
 
+    /**
+     * Stores the buffer pool.
+     */
+    private static final DefaultBufferPool BUFFER_POOL = new DefaultBufferPool();
+
+    /**
+     * Stores the default buffer size.
+     */
+    private static final int DEFAULT_BUFFER_SIZE = 8192;
+
+    /**
+     * Stores the empty buffer used once the response has been committed.
+     */
+    private static final byte[] EMPTY_BUFFER = new byte[0];
+
+    /**
+     * Stores the ": " bytes.
+     */
+    private static final byte[] COLON_SPACE = ": ".getBytes(ISO_8859_1);
+
+    /**
+     * Stores the "Content-Language: " bytes.
+     */
+    private static final byte[] CONTENT_LANGUAGE = "Content-Language: ".getBytes(ISO_8859_1);
+
+    /**
+     * Stores the "Content-Type: " bytes.
+     */
+    private static final byte[] CONTENT_TYPE = "Content-Type: ".getBytes(ISO_8859_1);
+
+    /**
+     * Stores the "HTTP/1.1 " bytes.
+     */
+    private static final byte[] HTTP_1_1 = "HTTP/1.1 ".getBytes(ISO_8859_1);
+
+    /**
+     * Stores the "Set-Cookie: " bytes.
+     */
+    private static final byte[] SET_COOKIE = "Set-Cookie: ".getBytes(ISO_8859_1);
+
     /**
      * Stores the body only flag.
      */
@@ -175,11 +224,29 @@ public class DefaultWebApplicationResponse extends ServletOutputStream implement
      */
     protected Runnable responseCloser;
 
+    /**
+     * Stores the response head while it is being assembled (created when the
+     * first head is assembled).
+     */
+    private ByteArrayOutputStream head;
+
+    /**
+     * Stores the buffer size.
+     */
+    private int bufferSize;
+
+    /**
+     * Stores the writer draining flag. When true, flushing the writer only
+     * moves its pending output into the buffer.
+     */
+    private boolean writerDraining;
+
     /**
      * Constructor.
      */
     public DefaultWebApplicationResponse() {
-        buffer = new byte[8192];
+        buffer = BUFFER_POOL.lease(DEFAULT_BUFFER_SIZE);
+        bufferSize = buffer.length;
         characterEncoding = "ISO-8859-1";
         characterEncodingSet = false;
         committed = false;
@@ -279,7 +346,7 @@ public class DefaultWebApplicationResponse extends ServletOutputStream implement
 
     @Override
     public int getBufferSize() {
-        return buffer.length;
+        return bufferSize;
     }
 
     /**
@@ -388,6 +455,48 @@ public class DefaultWebApplicationResponse extends ServletOutputStream implement
         return committed;
     }
 
+    /**
+     * Recycle the response.
+     *
+     * <p>
+     * This puts the response back in the state it was in right after it was
+     * constructed, so it can be reused for another response. A buffer of the
+     * default size is leased again if the previous one went back to the
+     * pool, the cookie list and header manager are kept and cleared. The underlying
+     * output stream and response closer are not touched and are expected to
+     * be set again before the response is reused.
+     * </p>
+     */
+    public void recycle() {
+        bodyOnly = false;
+        if (buffer.length != DEFAULT_BUFFER_SIZE) {
+            releaseBuffer();
+            buffer = BUFFER_POOL.lease(DEFAULT_BUFFER_SIZE);
+            bufferSize = buffer.length;
+        }
+        bufferResetting = false;
+        characterEncoding = "ISO-8859-1";
+        characterEncodingSet = false;
+        committed = false;
+        contentLanguage = null;
+        contentLength = 0;
+        contentType = null;
+        contentTypeSet = false;
+        cookies.clear();
+        gotOutput = false;
+        gotWriter = false;
+        if (head != null) {
+            head.reset();
+        }
+        headerManager.clear();
+        index = 0;
+        locale = Locale.getDefault();
+        status = 200;
+        statusMessage = null;
+        webApplication = null;
+        writer = null;
+    }
+
     @Override
     public void reset() {
         verifyNotCommitted("reset");
@@ -404,7 +513,7 @@ public class DefaultWebApplicationResponse extends ServletOutputStream implement
             if (gotWriter) {
                 writer.flush(); // output will be written and ignored.
             }
-            this.buffer = new byte[buffer.length];
+            index = 0;
         } finally {
             bufferResetting = false;
         }
@@ -463,7 +572,13 @@ public class DefaultWebApplicationResponse extends ServletOutputStream implement
     @Override
     public void setBufferSize(int bufferSize) {
         verifyNotCommitted("setBufferSize");
-        this.buffer = new byte[bufferSize];
+        byte[] newBuffer = BUFFER_POOL.lease(Math.max(bufferSize, index));
+        System.arraycopy(buffer, 0, newBuffer, 0, index);
+        int length = index;
+        releaseBuffer();
+        this.buffer = newBuffer;
+        this.index = length;
+        this.bufferSize = newBuffer.length;
     }
 
     @Override
@@ -508,14 +623,18 @@ public class DefaultWebApplicationResponse extends ServletOutputStream implement
         if (!committed) {
             if (type != null) {
                 if (type.contains(";")) {
-                    contentType = type.substring(0, type.indexOf(";")).trim();
-                    if (!gotWriter) {
-                        String encoding = type.substring(type.indexOf(";") + 1).trim();
-                        if (encoding.contains("=")) {
-                            encoding = encoding.substring(encoding.indexOf("=") + 1).trim();
-                            setCharacterEncoding(encoding);
+                    StringBuilder builder = new StringBuilder(type.substring(0, type.indexOf(";")).trim());
+                    for (String parameter : type.substring(type.indexOf(";") + 1).split(";")) {
+                        String trimmed = parameter.trim();
+                        if (trimmed.regionMatches(true, 0, "charset=", 0, 8)) {
+                            if (!gotWriter) {
+                                setCharacterEncoding(trimmed.substring(8).trim());
+                            }
+                        } else if (!trimmed.isEmpty()) {
+                            builder.append("; ").append(trimmed);
                         }
                     }
+                    contentType = builder.toString();
                 } else {
                     contentType = type;
                 }
@@ -617,11 +736,39 @@ public class DefaultWebApplicationResponse extends ServletOutputStream implement
         }
     }
 
+    /**
+     * Close the response.
+     *
+     * <p>
+     * If the response has not been committed yet the whole body is in the
+     * buffer, so unless the application already declared how the body is
+     * framed the Content-Length header is set to the buffered length. This
+     * allows the connection to be kept open without chunked
+     * transfer-encoding.
+     * </p>
+     *
+     * @throws IOException when an I/O error occurs.
+     */
     @Override
     public void close() throws IOException {
-        if (!isCommitted()) {
-            flush();
+        if (isCommitted()) {
+            if (gotWriter) {
+                writer.flush();
+            }
+            return;
+        }
+        if (gotWriter) {
+            writerDraining = true;
+            try {
+                writer.flush();
+            } finally {
+                writerDraining = false;
+            }
         }
+        if (!isCommitted() && isContentLengthNeeded()) {
+            setContentLengthLong(index);
+        }
+        flushBuffer();
     }
 
     @Override
@@ -631,7 +778,7 @@ public class DefaultWebApplicationResponse extends ServletOutputStream implement
 
     @Override
     public void flush() throws IOException {
-        if (bufferResetting) {
+        if (bufferResetting || writerDraining) {
             return;
         }
         
@@ -663,6 +810,29 @@ public class DefaultWebApplicationResponse extends ServletOutputStream implement
         return outputStream;
     }
 
+    /**
+     * Is the Content-Length header needed for the buffered body.
+     *
+     * <p>
+     * It is not when the response is body only, is part of an include, has
+     * a status that does not allow a body, answers a HEAD request or already
+     * declares its Content-Length or Transfer-Encoding.
+     * </p>
+     *
+     * @return true if it is, false otherwise.
+     */
+    private boolean isContentLengthNeeded() {
+        if (isBodyOnly() || isInclude() || status < 200 || status == 204 || status == 304
+                || containsHeader("Content-Length") || containsHeader("Transfer-Encoding")) {
+            return false;
+        }
+        if (webApplication != null
+                && webApplication.getRequest(this) instanceof HttpServletRequest request) {
+            return !"HEAD".equals(request.getMethod());
+        }
+        return true;
+    }
+
     /**
      * Is this an include dispatch.
      *
@@ -696,17 +866,151 @@ public class DefaultWebApplicationResponse extends ServletOutputStream implement
             return;
         }
         
-        if (index == buffer.length - 1) {
-            writeOut();
-            outputStream.write(integer);
-        } else if (index == buffer.length) {
-            outputStream.write(integer);
-        } else {
+        if (index < buffer.length) {
             this.buffer[index] = (byte) integer;
             this.index++;
+        } else {
+            if (!isCommitted()) {
+                writeOut();
+            }
+            outputStream.write(integer);
+        }
+    }
+
+    @Override
+    public void write(byte[] bytes, int offset, int length) throws IOException {
+        Objects.checkFromIndexSize(offset, length, bytes.length);
+        if (bufferResetting || length == 0) {
+            return;
+        }
+        if (length <= buffer.length - index) {
+            System.arraycopy(bytes, offset, buffer, index, length);
+            index += length;
+        } else {
+            if (!isCommitted()) {
+                writeOut();
+            }
+            outputStream.write(bytes, offset, length);
+        }
+    }
+
+    /**
+     * Write the remaining bytes of a byte buffer.
+     *
+     * <p>
+     * A heap buffer is written straight from its backing array. The content
+     * of a direct buffer is copied into the response buffer, or once the
+     * response has been committed through a leased buffer.
+     * </p>
+     *
+     * @param byteBuffer the byte buffer.
+     * @throws IOException when an I/O error occurs.
+     */
+    public void write(ByteBuffer byteBuffer) throws IOException {
+        int length = byteBuffer.remaining();
+        if (byteBuffer.hasArray()) {
+            write(byteBuffer.array(), byteBuffer.arrayOffset() + byteBuffer.position(), length);
+            byteBuffer.position(byteBuffer.limit());
+        } else if (bufferResetting) {
+            byteBuffer.position(byteBuffer.limit());
+        } else if (length <= buffer.length - index) {
+            byteBuffer.get(buffer, index, length);
+            index += length;
+        } else {
+            if (!isCommitted()) {
+                writeOut();
+            }
+            byte[] chunk = BUFFER_POOL.lease(Math.min(length, DEFAULT_BUFFER_SIZE));
+            try {
+                while (byteBuffer.hasRemaining()) {
+                    int count = Math.min(chunk.length, byteBuffer.remaining());
+                    byteBuffer.get(chunk, 0, count);
+                    outputStream.write(chunk, 0, count);
+                }
+            } finally {
+                BUFFER_POOL.release(chunk);
+            }
+        }
+    }
+
+    /**
+     * Write a region of a file.
+     *
+     * <p>
+     * A region that fits in the remaining buffer is read into it. Otherwise
+     * the response is committed and the region is handed to
+     * {@link #transferFile(FileChannel, long, long)}, so an HTTP server can
+     * transfer it to the connection without copying it through the heap.
+     * </p>
+     *
+     * @param fileChannel the file channel.
+     * @param position the position of the region in the file.
+     * @param length the length of the region.
+     * @throws IOException when an I/O error occurs.
+     */
+    public void writeFile(FileChannel fileChannel, long position, long length) throws IOException {
+        if (bufferResetting) {
+            return;
+        }
+        if (length <= buffer.length - index) {
+            ByteBuffer byteBuffer = ByteBuffer.wrap(buffer, index, (int) length);
+            while (byteBuffer.hasRemaining()) {
+                if (fileChannel.read(byteBuffer, position + length - byteBuffer.remaining()) == -1) {
+                    throw new EOFException();
+                }
+            }
+            index += (int) length;
+        } else {
+            if (!isCommitted()) {
+                writeOut();
+            }
+            transferFile(fileChannel, position, length);
+        }
+    }
+
+    /**
+     * Transfer a region of a file to the underlying output stream.
+     *
+     * <p>
+     * The response has already been committed when this is called. This
+     * implementation lets the file channel transfer the region to the
+     * underlying output stream, subclasses can hand it to the HTTP server
+     * instead.
+     * </p>
+     *
+     * @param fileChannel the file channel.
+     * @param position the position of the region in the file.
+     * @param length the length of the region.
+     * @throws IOException when an I/O error occurs.
+     */
+    protected void transferFile(FileChannel fileChannel, long position, long length) throws IOException {
+        WritableByteChannel target = Channels.newChannel(outputStream);
+        long end = position + length;
+        while (position < end) {
+            long transferred = fileChannel.transferTo(position, end - position, target);
+            if (transferred <= 0) {
+                throw new EOFException();
+            }
+            position += transferred;
         }
     }
 
+    /**
+     * Release the buffer back to the pool.
+     *
+     * <p>
+     * After this the response has an empty buffer, so anything written goes
+     * straight to the underlying output stream.
+     * </p>
+     */
+    private void releaseBuffer() {
+        if (buffer != EMPTY_BUFFER) {
+            BUFFER_POOL.release(buffer);
+            buffer = EMPTY_BUFFER;
+        }
+        index = 0;
+    }
+
     /**
      * Write the content language.
      *
@@ -716,9 +1020,9 @@ public class DefaultWebApplicationResponse extends ServletOutputStream implement
         if (contentLanguage == null) {
             return;
         }
-        outputStream.write("Content-Language: ".getBytes());
-        outputStream.write(contentLanguage.getBytes());
-        outputStream.write("\n".getBytes());
+        getHead().write(CONTENT_LANGUAGE);
+        writeHead(contentLanguage);
+        getHead().write('\n');
     }
 
     /**
@@ -728,45 +1032,56 @@ public class DefaultWebApplicationResponse extends ServletOutputStream implement
      */
     private void writeContentType() throws IOException {
         if (contentType != null) {
-            outputStream.write("Content-Type: ".getBytes());
-            outputStream.write(contentType.getBytes());
+            getHead().write(CONTENT_TYPE);
+            writeHead(contentType);
             if (characterEncoding != null) {
-                outputStream.write(";charset=".getBytes());
-                outputStream.write(characterEncoding.getBytes());
+                writeHead(";charset=");
+                writeHead(characterEncoding);
             }
-            outputStream.write("\n".getBytes());
+            getHead().write('\n');
         }
     }
 
     /**
-     * Write out a cookie.
+     * Format a cookie as the value of a Set-Cookie header.
      *
      * @param cookie the cookie.
-     * @throws IOException when an I/O error occurs.
+     * @return the header value.
      */
-    private void writeCookie(Cookie cookie) throws IOException {
-        outputStream.write("Set-Cookie: ".getBytes());
-        outputStream.write(cookie.getName().getBytes());
-        outputStream.write("=".getBytes());
+    protected String formatCookie(Cookie cookie) {
+        StringBuilder builder = new StringBuilder();
+        builder.append(cookie.getName()).append('=');
         if (cookie.getValue() != null) {
-            outputStream.write(cookie.getValue().getBytes());
+            builder.append(cookie.getValue());
         }
         if (cookie.getMaxAge() > -1) {
-            outputStream.write(("; Max-Age=" + cookie.getMaxAge()).getBytes());
+            builder.append("; Max-Age=").append(cookie.getMaxAge());
         }
         if (cookie.getSecure()) {
-            outputStream.write("; Secure".getBytes());
+            builder.append("; Secure");
         }
         if (cookie.isHttpOnly()) {
-            outputStream.write("; HttpOnly".getBytes());
+            builder.append("; HttpOnly");
         }
         if (cookie.getPath() != null) {
-            outputStream.write(("; Path=" + cookie.getPath()).getBytes());
+            builder.append("; Path=").append(cookie.getPath());
         }
         if (cookie.getVersion() > 0) {
-            outputStream.write(("; Version=" + cookie.getVersion()).getBytes());
+            builder.append("; Version=").append(cookie.getVersion());
         }
-        outputStream.write("\n".getBytes());
+        return builder.toString();
+    }
+
+    /**
+     * Write out a cookie.
+     *
+     * @param cookie the cookie.
+     * @throws IOException when an I/O error occurs.
+     */
+    private void writeCookie(Cookie cookie) throws IOException {
+        getHead().write(SET_COOKIE);
+        writeHead(formatCookie(cookie));
+        getHead().write('\n');
     }
 
     /**
@@ -788,18 +1103,18 @@ public class DefaultWebApplicationResponse extends ServletOutputStream implement
      */
     private void writeHeader(String name) throws IOException {
         Iterator<String> values = getHeaders(name).iterator();
-        outputStream.write(name.getBytes());
-        outputStream.write(": ".getBytes());
+        writeHead(name);
+        getHead().write(COLON_SPACE);
         while (values.hasNext()) {
             String value = values.next();
             if (value != null) {
-                outputStream.write(value.getBytes());
+                writeHead(value);
                 if (values.hasNext()) {
-                    outputStream.write(",".getBytes());
+                    getHead().write(',');
                 }
             }
         }
-        outputStream.write("\n".getBytes());
+        getHead().write('\n');
     }
 
     @Override
@@ -812,12 +1127,39 @@ public class DefaultWebApplicationResponse extends ServletOutputStream implement
             String name = names.next();
             writeHeader(name);
         }
-        outputStream.write("\n".getBytes());
+        getHead().write('\n');
+    }
+
+    /**
+     * {@return the response head, created when first needed}
+     */
+    private ByteArrayOutputStream getHead() {
+        if (head == null) {
+            head = new ByteArrayOutputStream(512);
+        }
+        return head;
+    }
+
+    /**
+     * Append a String to the response head.
+     *
+     * @param string the String.
+     */
+    private void writeHead(String string) {
+        getHead().writeBytes(string.getBytes());
     }
 
     /**
      * Write out the status-line, headers and the buffer.
      *
+     * <p>
+     * The status-line and headers are assembled in the response head, which
+     * is written to the underlying output stream followed by the buffered
+     * body, without copying the body into the head. The buffer then goes
+     * back to the pool as anything written after the commit goes straight to
+     * the underlying output stream.
+     * </p>
+     *
      * @throws IOException when an I/O error occurs.
      */
     private void writeOut() throws IOException {
@@ -825,23 +1167,26 @@ public class DefaultWebApplicationResponse extends ServletOutputStream implement
             writeStatusLine();
             writeHeaders();
         }
+        if (head != null && head.size() > 0) {
+            head.writeTo(outputStream);
+            head.reset();
+        }
         if (!isCommitted()) {
             outputStream.write(buffer, 0, index);
-            index = buffer.length;
+            releaseBuffer();
         }
         setCommitted(true);
     }
 
     @Override
     public void writeStatusLine() throws IOException {
-        outputStream.write("HTTP/1.1".getBytes());
-        outputStream.write(" ".getBytes());
-        outputStream.write(Integer.toString(getStatus()).getBytes());
+        getHead().write(HTTP_1_1);
+        writeHead(Integer.toString(getStatus()));
         if (getStatusMessage() != null) {
-            outputStream.write(" ".getBytes());
-            outputStream.write(getStatusMessage().getBytes());
+            getHead().write(' ');
+            writeHead(getStatusMessage());
         }
-        outputStream.write("\n".getBytes());
+        getHead().write('\n');
     }
 
     @Override
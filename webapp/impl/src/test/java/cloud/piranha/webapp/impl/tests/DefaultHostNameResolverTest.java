@@ -0,0 +1,79 @@
+/*
+ * Copyright (c) 2002-2021 Manorrock.com. All Rights Reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   1. Redistributions of source code must retain the above copyright notice,
+ *      this list of conditions and the following disclaimer.
+ *   2. Redistributions in binary form must reproduce the above copyright
+ *      notice, this list of conditions and the following disclaimer in the
+ *      documentation and/or other materials provided with the distribution.
+ *   3. Neither the name of the copyright holder nor the names of its
+ *      contributors may be used to endorse or promote products derived from
+ *      this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package cloud.piranha.webapp.impl.tests;
+
+import cloud.piranha.webapp.impl.DefaultHostNameResolver;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * The JUnit tests for the DefaultHostNameResolver class.
+ *
+ * @author Manfred Riem (mriem@manorrock.com)
+ */
+class DefaultHostNameResolverTest {
+
+    /**
+     * Test resolve method.
+     */
+    @Test
+    void testResolve() {
+        DefaultHostNameResolver resolver = new DefaultHostNameResolver();
+        String hostName = resolver.resolve("127.0.0.1");
+        assertNotNull(hostName);
+        assertSame(hostName, resolver.resolve("127.0.0.1"));
+        assertNull(resolver.resolve(null));
+    }
+
+    /**
+     * Test resolve method with resolution disabled.
+     */
+    @Test
+    void testResolveDisabled() {
+        DefaultHostNameResolver resolver = new DefaultHostNameResolver();
+        resolver.setEnabled(false);
+        assertFalse(resolver.isEnabled());
+        assertEquals("127.0.0.1", resolver.resolve("127.0.0.1"));
+    }
+
+    /**
+     * Test resolve method with a bounded cache.
+     */
+    @Test
+    void testResolveMaxSize() {
+        DefaultHostNameResolver resolver = new DefaultHostNameResolver();
+        resolver.setMaxSize(1);
+        resolver.setTimeToLive(60000);
+        assertEquals(1, resolver.getMaxSize());
+        assertEquals(60000, resolver.getTimeToLive());
+        String hostName = resolver.resolve("127.0.0.1");
+        resolver.resolve("127.0.0.2");
+        assertEquals(hostName, resolver.resolve("127.0.0.1"));
+    }
+}
@@ -27,6 +27,7 @@
  */
 package cloud.piranha.webapp.impl.tests;
 
+import cloud.piranha.webapp.impl.DefaultHostNameResolver;
 import cloud.piranha.webapp.impl.DefaultSecurityManager;
 import cloud.piranha.webapp.impl.DefaultWebApplication;
 import cloud.piranha.webapp.impl.DefaultWebApplicationRequest;
@@ -498,6 +499,23 @@ class DefaultHttpServletRequestTest {
         assertEquals("localhost", request.getRemoteHost());
     }
 
+    /**
+     * Test getRemoteHost method resolving the remote address lazily.
+     */
+    @Test
+    void testGetRemoteHostResolved() {
+        DefaultWebApplicationRequest request = new TestWebApplicationRequest();
+        DefaultHostNameResolver resolver = new DefaultHostNameResolver();
+        resolver.setEnabled(false);
+        request.setHostNameResolver(resolver);
+        request.setLocalAddr("127.0.0.2");
+        request.setRemoteAddr("127.0.0.1");
+        assertEquals("127.0.0.1", request.getRemoteHost());
+        assertEquals("127.0.0.2", request.getLocalName());
+        request.setServerName(null);
+        assertEquals("127.0.0.2", request.getServerName());
+    }
+
     /**
      * Test setRemotePort method.
      */
@@ -32,7 +32,10 @@ import cloud.piranha.webapp.impl.DefaultWebApplication;
 import cloud.piranha.webapp.impl.DefaultWebApplicationResponse;
 import jakarta.servlet.http.HttpServletResponse;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
 import java.util.Locale;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
@@ -427,4 +430,129 @@ class DefaultHttpServletResponseTest {
 
         assertTrue(new String(response.getResponseBytes()).contains("Content-Type: text/html;charset=UTF-8\n"));
     }
+    /**
+     * Test write method with a byte array larger than the buffer.
+     *
+     * @throws Exception when a serious error occurs.
+     */
+    @Test
+    void testWriteBytesLargerThanBuffer() throws Exception {
+        TestWebApplicationResponse response = new TestWebApplicationResponse();
+        byte[] bytes = new byte[20000];
+        Arrays.fill(bytes, (byte) 'x');
+        response.write('a');
+        response.write(bytes, 0, bytes.length);
+        assertTrue(response.isCommitted());
+        response.write(bytes, 10, 5);
+        response.flushBuffer();
+        byte[] result = response.getResponseBytes();
+        assertEquals(20006, result.length);
+        assertEquals('a', result[0]);
+        assertEquals('x', result[20005]);
+    }
+
+    /**
+     * Test write method with a direct byte buffer.
+     *
+     * @throws Exception when a serious error occurs.
+     */
+    @Test
+    void testWriteByteBuffer() throws Exception {
+        TestWebApplicationResponse response = new TestWebApplicationResponse();
+        ByteBuffer direct = ByteBuffer.allocateDirect(10000);
+        for (int i = 0; i < 10000; i++) {
+            direct.put((byte) i);
+        }
+        direct.flip();
+        response.write(ByteBuffer.wrap(new byte[]{1, 2, 3}, 1, 2));
+        response.write(direct);
+        assertEquals(0, direct.remaining());
+        response.flushBuffer();
+        byte[] result = response.getResponseBytes();
+        assertEquals(10002, result.length);
+        assertArrayEquals(new byte[]{2, 3, 0, 1}, Arrays.copyOf(result, 4));
+        assertEquals((byte) 9999, result[10001]);
+    }
+
+    /**
+     * Test resetBuffer method discards the buffered content.
+     *
+     * @throws Exception when a serious error occurs.
+     */
+    @Test
+    void testResetBufferDiscardsContent() throws Exception {
+        TestWebApplicationResponse response = new TestWebApplicationResponse();
+        response.write("discarded".getBytes());
+        response.resetBuffer();
+        response.write("kept".getBytes());
+        response.flushBuffer();
+        assertEquals("kept", new String(response.getResponseBytes()));
+    }
+
+    /**
+     * Test setBufferSize method keeps the buffered content.
+     *
+     * @throws Exception when a serious error occurs.
+     */
+    @Test
+    void testSetBufferSizeKeepsContent() throws Exception {
+        TestWebApplicationResponse response = new TestWebApplicationResponse();
+        response.write("hello".getBytes());
+        response.setBufferSize(20000);
+        assertTrue(response.getBufferSize() >= 20000);
+        response.write(new byte[15000]);
+        assertFalse(response.isCommitted());
+        response.flushBuffer();
+        assertEquals(15005, response.getResponseBytes().length);
+    }
+
+    /**
+     * Test close method sets the Content-Length of a buffered body.
+     *
+     * @throws Exception when a serious error occurs.
+     */
+    @Test
+    void testCloseSetsContentLength() throws Exception {
+        TestWebApplicationResponse response = new TestWebApplicationResponse();
+        response.setBodyOnly(false);
+        response.getWriter().print("Hello World");
+        response.close();
+        assertTrue(response.isCommitted());
+        String result = new String(response.getResponseBytes());
+        assertTrue(result.contains("Content-Length: 11\n"));
+        assertTrue(result.endsWith("\n\nHello World"));
+    }
+
+    /**
+     * Test close method does not set the Content-Length once the response was
+     * flushed.
+     *
+     * @throws Exception when a serious error occurs.
+     */
+    @Test
+    void testCloseAfterFlushBuffer() throws Exception {
+        TestWebApplicationResponse response = new TestWebApplicationResponse();
+        response.setBodyOnly(false);
+        response.getOutputStream().print("Hello");
+        response.flushBuffer();
+        response.getOutputStream().print(" World");
+        response.close();
+        String result = new String(response.getResponseBytes());
+        assertFalse(result.contains("Content-Length"));
+        assertTrue(result.endsWith("Hello World"));
+    }
+
+    /**
+     * Test close method does not set the Content-Length for a 204 response.
+     *
+     * @throws Exception when a serious error occurs.
+     */
+    @Test
+    void testCloseNoContent() throws Exception {
+        TestWebApplicationResponse response = new TestWebApplicationResponse();
+        response.setBodyOnly(false);
+        response.setStatus(204);
+        response.close();
+        assertFalse(new String(response.getResponseBytes()).contains("Content-Length"));
+    }
 }
@@ -240,6 +240,74 @@ class DefaultServletRequestDispatcherTest {
         assertTrue(responseText.contains(IOException.class.getName()));
     }
 
+    /**
+     * Test a forward frames the forwarded body with a Content-Length.
+     *
+     * @throws Exception when an error occurs.
+     */
+    @Test
+    void testForwardContentLength() throws Exception {
+        DefaultWebApplication webApp = new DefaultWebApplication();
+        webApp.addServlet("forward", new TestForwardServlet());
+        webApp.addServletMapping("forward", "/forward");
+        webApp.addServlet("hello", new TestHelloServlet());
+        webApp.addServletMapping("hello", "/hello");
+        webApp.initialize();
+        webApp.start();
+        DefaultWebApplicationRequest request = new DefaultWebApplicationRequest();
+        request.setWebApplication(webApp);
+        request.setServletPath("/forward");
+        TestWebApplicationResponse response = new TestWebApplicationResponse();
+        response.setBodyOnly(false);
+        response.setWebApplication(webApp);
+        webApp.service(request, response);
+        String responseText = new String(response.getResponseBytes());
+        webApp.stop();
+        assertTrue(responseText.contains("Content-Length: 5\n"));
+        assertTrue(responseText.endsWith("Hello"));
+    }
+
+    /**
+     * Test an error page is framed with a Content-Length.
+     *
+     * @throws Exception when an error occurs.
+     */
+    @Test
+    void testErrorDispatcherContentLength() throws Exception {
+        DefaultWebApplication webApp = new DefaultWebApplication();
+        webApp.addServlet("error-servlet", new TestSendError());
+        webApp.addServletMapping("error-servlet", "/sendError");
+        webApp.addServlet("hello", new TestHelloServlet());
+        webApp.addServletMapping("hello", "/hello");
+        webApp.addErrorPage(404, "/hello");
+        webApp.initialize();
+        webApp.start();
+        DefaultWebApplicationRequest request = new DefaultWebApplicationRequest();
+        request.setServletPath("/sendError");
+        TestWebApplicationResponse response = new TestWebApplicationResponse();
+        response.setBodyOnly(false);
+        response.setWebApplication(webApp);
+        webApp.service(request, response);
+        String responseText = new String(response.getResponseBytes());
+        webApp.stop();
+        assertTrue(responseText.contains("Content-Length: 5\n"));
+        assertTrue(responseText.endsWith("Hello"));
+    }
+
+    static class TestForwardServlet extends HttpServlet {
+        @Override
+        protected void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException, ServletException {
+            request.getRequestDispatcher("/hello").forward(request, response);
+        }
+    }
+
+    static class TestHelloServlet extends HttpServlet {
+        @Override
+        protected void service(HttpServletRequest request, HttpServletResponse response) throws IOException, ServletException {
+            response.getWriter().print("Hello");
+        }
+    }
+
     static class TestSendError extends HttpServlet {
         @Override
         protected void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException, ServletException {
@@ -0,0 +1,506 @@
+/*
+ * Copyright (c) 2002-2021 Manorrock.com. All Rights Reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   1. Redistributions of source code must retain the above copyright notice,
+ *      this list of conditions and the following disclaimer.
+ *   2. Redistributions in binary form must reproduce the above copyright
+ *      notice, this list of conditions and the following disclaimer in the
+ *      documentation and/or other materials provided with the distribution.
+ *   3. Neither the name of the copyright holder nor the names of its
+ *      contributors may be used to endorse or promote products derived from
+ *      this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package cloud.piranha.webapp.impl.tests;
+
+import cloud.piranha.resource.DirectoryResource;
+import cloud.piranha.webapp.impl.DefaultServlet;
+import cloud.piranha.webapp.impl.DefaultWebApplication;
+import cloud.piranha.webapp.impl.DefaultWebApplicationRequest;
+import cloud.piranha.webapp.impl.DefaultWebApplicationResponse;
+import jakarta.servlet.ServletOutputStream;
+import jakarta.servlet.WriteListener;
+import jakarta.servlet.http.HttpServletResponseWrapper;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.nio.file.Files;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * The JUnit tests for the DefaultServlet class.
+ *
+ * @author Manfred Riem (mriem@manorrock.com)
+ */
+class DefaultServletTest {
+
+    /**
+     * Test a static resource is served with validators and a Content-Length.
+     *
+     * @throws Exception when a serious error occurs.
+     */
+    @Test
+    void testValidators() throws Exception {
+        DefaultWebApplication webApp = createWebApplication();
+        DefaultWebApplicationRequest request = createRequest(webApp);
+        DefaultWebApplicationResponse response = createResponse(webApp);
+        webApp.service(request, response);
+        assertEquals(200, response.getStatus());
+        assertNotNull(response.getHeader("ETag"));
+        assertNotNull(response.getHeader("Last-Modified"));
+        long length = new File("src/test/webapp/default/index.html").length();
+        assertEquals(Long.toString(length), response.getHeader("Content-Length"));
+        webApp.stop();
+    }
+
+    /**
+     * Test a matching If-None-Match is answered with a 304.
+     *
+     * @throws Exception when a serious error occurs.
+     */
+    @Test
+    void testIfNoneMatch() throws Exception {
+        DefaultWebApplication webApp = createWebApplication();
+        DefaultWebApplicationResponse response = createResponse(webApp);
+        webApp.service(createRequest(webApp), response);
+        String etag = response.getHeader("ETag");
+        DefaultWebApplicationRequest request = createRequest(webApp);
+        request.setHeader("If-None-Match", "\"other\", W/" + etag);
+        response = createResponse(webApp);
+        ByteArrayOutputStream byteOutput = new ByteArrayOutputStream();
+        response.setUnderlyingOutputStream(byteOutput);
+        webApp.service(request, response);
+        assertEquals(304, response.getStatus());
+        assertEquals(etag, response.getHeader("ETag"));
+        assertFalse(byteOutput.toString().contains("index.html"));
+        request = createRequest(webApp);
+        request.setHeader("If-None-Match", "\"other\"");
+        response = createResponse(webApp);
+        webApp.service(request, response);
+        assertEquals(200, response.getStatus());
+        webApp.stop();
+    }
+
+    /**
+     * Test If-Modified-Since is answered with a 304 when the resource was not
+     * modified since.
+     *
+     * @throws Exception when a serious error occurs.
+     */
+    @Test
+    void testIfModifiedSince() throws Exception {
+        DefaultWebApplication webApp = createWebApplication();
+        DefaultWebApplicationResponse response = createResponse(webApp);
+        webApp.service(createRequest(webApp), response);
+        String lastModified = response.getHeader("Last-Modified");
+        DefaultWebApplicationRequest request = createRequest(webApp);
+        request.setHeader("If-Modified-Since", lastModified);
+        response = createResponse(webApp);
+        webApp.service(request, response);
+        assertEquals(304, response.getStatus());
+        request = createRequest(webApp);
+        request.setHeader("If-Modified-Since", "Thu, 01 Jan 1970 00:00:00 GMT");
+        response = createResponse(webApp);
+        webApp.service(request, response);
+        assertEquals(200, response.getStatus());
+        webApp.stop();
+    }
+
+    /**
+     * Test the ETag is the same for repeated requests.
+     *
+     * @throws Exception when a serious error occurs.
+     */
+    @Test
+    void testETagStable() throws Exception {
+        DefaultWebApplication webApp = createWebApplication();
+        DefaultWebApplicationResponse response = createResponse(webApp);
+        webApp.service(createRequest(webApp), response);
+        String etag = response.getHeader("ETag");
+        assertTrue(etag.startsWith("\"") && etag.endsWith("\""));
+        response = createResponse(webApp);
+        webApp.service(createRequest(webApp), response);
+        assertEquals(etag, response.getHeader("ETag"));
+        webApp.stop();
+    }
+
+    /**
+     * Test a single range is answered with a 206.
+     *
+     * @throws Exception when a serious error occurs.
+     */
+    @Test
+    void testRange() throws Exception {
+        DefaultWebApplication webApp = createWebApplication();
+        DefaultWebApplicationRequest request = createRequest(webApp);
+        request.setHeader("Range", "bytes=0-5");
+        DefaultWebApplicationResponse response = createResponse(webApp);
+        ByteArrayOutputStream byteOutput = new ByteArrayOutputStream();
+        response.setUnderlyingOutputStream(byteOutput);
+        webApp.service(request, response);
+        assertEquals(206, response.getStatus());
+        assertEquals("bytes 0-5/75", response.getHeader("Content-Range"));
+        assertEquals("6", response.getHeader("Content-Length"));
+        assertEquals("bytes", response.getHeader("Accept-Ranges"));
+        assertEquals("<html>", getBody(byteOutput));
+        webApp.stop();
+    }
+
+    /**
+     * Test a suffix range and an open ended range.
+     *
+     * @throws Exception when a serious error occurs.
+     */
+    @Test
+    void testRangeSuffix() throws Exception {
+        DefaultWebApplication webApp = createWebApplication();
+        DefaultWebApplicationRequest request = createRequest(webApp);
+        request.setHeader("Range", "bytes=-8");
+        DefaultWebApplicationResponse response = createResponse(webApp);
+        ByteArrayOutputStream byteOutput = new ByteArrayOutputStream();
+        response.setUnderlyingOutputStream(byteOutput);
+        webApp.service(request, response);
+        assertEquals(206, response.getStatus());
+        assertEquals("bytes 67-74/75", response.getHeader("Content-Range"));
+        assertEquals("</html>\n", getBody(byteOutput));
+        request = createRequest(webApp);
+        request.setHeader("Range", "bytes=70-1000");
+        response = createResponse(webApp);
+        webApp.service(request, response);
+        assertEquals(206, response.getStatus());
+        assertEquals("bytes 70-74/75", response.getHeader("Content-Range"));
+        webApp.stop();
+    }
+
+    /**
+     * Test multiple ranges are answered with a multipart/byteranges body.
+     *
+     * @throws Exception when a serious error occurs.
+     */
+    @Test
+    void testMultipleRanges() throws Exception {
+        DefaultWebApplication webApp = createWebApplication();
+        DefaultWebApplicationRequest request = createRequest(webApp);
+        request.setHeader("Range", "bytes=0-5, -8");
+        DefaultWebApplicationResponse response = createResponse(webApp);
+        ByteArrayOutputStream byteOutput = new ByteArrayOutputStream();
+        response.setUnderlyingOutputStream(byteOutput);
+        webApp.service(request, response);
+        assertEquals(206, response.getStatus());
+        assertTrue(response.getContentType().startsWith("multipart/byteranges; boundary="));
+        String boundary = response.getContentType().substring(
+                response.getContentType().indexOf('=') + 1).split(";")[0];
+        String body = getBody(byteOutput);
+        assertEquals(Integer.toString(body.length()), response.getHeader("Content-Length"));
+        assertTrue(body.contains("Content-Range: bytes 0-5/75\r\n\r\n<html>\r\n--" + boundary));
+        assertTrue(body.contains("Content-Range: bytes 67-74/75\r\n\r\n</html>\n\r\n--" + boundary + "--"));
+        webApp.stop();
+    }
+
+    /**
+     * Test overlapping and adjacent ranges are merged, and that ranges asking
+     * for more than the resource get the full resource.
+     *
+     * @throws Exception when a serious error occurs.
+     */
+    @Test
+    void testOverlappingRanges() throws Exception {
+        DefaultWebApplication webApp = createWebApplication();
+        DefaultWebApplicationRequest request = createRequest(webApp);
+        request.setHeader("Range", "bytes=4-9, 0-5, 10-12");
+        DefaultWebApplicationResponse response = createResponse(webApp);
+        webApp.service(request, response);
+        assertEquals(206, response.getStatus());
+        assertEquals("bytes 0-12/75", response.getHeader("Content-Range"));
+        webApp.stop();
+        webApp = createWebApplication();
+        request = createRequest(webApp);
+        request.setHeader("Range", "bytes=0-40, 10-50");
+        response = createResponse(webApp);
+        webApp.service(request, response);
+        assertEquals(200, response.getStatus());
+        assertEquals("75", response.getHeader("Content-Length"));
+        webApp.stop();
+    }
+
+    /**
+     * Test a range that cannot be satisfied is answered with a 416.
+     *
+     * @throws Exception when a serious error occurs.
+     */
+    @Test
+    void testRangeNotSatisfiable() throws Exception {
+        DefaultWebApplication webApp = createWebApplication();
+        DefaultWebApplicationRequest request = createRequest(webApp);
+        request.setHeader("Range", "bytes=100-200");
+        DefaultWebApplicationResponse response = createResponse(webApp);
+        webApp.service(request, response);
+        assertEquals(416, response.getStatus());
+        assertEquals("bytes */75", response.getHeader("Content-Range"));
+        webApp.stop();
+    }
+
+    /**
+     * Test a Range with a not matching If-Range gets the full resource.
+     *
+     * @throws Exception when a serious error occurs.
+     */
+    @Test
+    void testIfRange() throws Exception {
+        DefaultWebApplication webApp = createWebApplication();
+        DefaultWebApplicationResponse response = createResponse(webApp);
+        webApp.service(createRequest(webApp), response);
+        String etag = response.getHeader("ETag");
+        DefaultWebApplicationRequest request = createRequest(webApp);
+        request.setHeader("Range", "bytes=0-5");
+        request.setHeader("If-Range", "\"other\"");
+        response = createResponse(webApp);
+        webApp.service(request, response);
+        assertEquals(200, response.getStatus());
+        request = createRequest(webApp);
+        request.setHeader("Range", "bytes=0-5");
+        request.setHeader("If-Range", etag);
+        response = createResponse(webApp);
+        webApp.service(request, response);
+        assertEquals(206, response.getStatus());
+        webApp.stop();
+    }
+
+    /**
+     * Test a cached resource is served again after the file changed.
+     *
+     * @throws Exception when a serious error occurs.
+     */
+    @Test
+    void testCacheInvalidation() throws Exception {
+        File directory = new File("target/default-servlet-cache");
+        directory.mkdirs();
+        File file = new File(directory, "index.html");
+        Files.writeString(file.toPath(), "first");
+        DefaultWebApplication webApp = new DefaultWebApplication();
+        webApp.addResource(new DirectoryResource(directory));
+        DefaultServlet servlet = new DefaultServlet();
+        webApp.setDefaultServlet(servlet);
+        webApp.initialize();
+        webApp.start();
+        DefaultWebApplicationResponse response = createResponse(webApp);
+        ByteArrayOutputStream byteOutput = new ByteArrayOutputStream();
+        response.setUnderlyingOutputStream(byteOutput);
+        webApp.service(createRequest(webApp), response);
+        assertEquals("first", getBody(byteOutput));
+        response = createResponse(webApp);
+        byteOutput = new ByteArrayOutputStream();
+        response.setUnderlyingOutputStream(byteOutput);
+        webApp.service(createRequest(webApp), response);
+        assertEquals("first", getBody(byteOutput));
+        assertEquals("text/html", response.getContentType());
+        Files.writeString(file.toPath(), "second!");
+        file.setLastModified(file.lastModified() + 2000);
+        response = createResponse(webApp);
+        byteOutput = new ByteArrayOutputStream();
+        response.setUnderlyingOutputStream(byteOutput);
+        webApp.service(createRequest(webApp), response);
+        assertEquals("second!", getBody(byteOutput));
+        assertEquals("7", response.getHeader("Content-Length"));
+        webApp.stop();
+    }
+
+    /**
+     * Test resources are still served with the cache disabled.
+     *
+     * @throws Exception when a serious error occurs.
+     */
+    @Test
+    void testCacheDisabled() throws Exception {
+        DefaultWebApplication webApp = new DefaultWebApplication();
+        webApp.addResource(new DirectoryResource(new File("src/test/webapp/default")));
+        DefaultServlet servlet = new DefaultServlet();
+        servlet.setCacheSize(0);
+        assertEquals(0, servlet.getCacheSize());
+        webApp.setDefaultServlet(servlet);
+        webApp.initialize();
+        webApp.start();
+        for (int i = 0; i < 2; i++) {
+            DefaultWebApplicationResponse response = createResponse(webApp);
+            ByteArrayOutputStream byteOutput = new ByteArrayOutputStream();
+            response.setUnderlyingOutputStream(byteOutput);
+            webApp.service(createRequest(webApp), response);
+            assertEquals(200, response.getStatus());
+            assertTrue(getBody(byteOutput).contains("index.html"));
+        }
+        webApp.stop();
+    }
+
+    /**
+     * Test a large file is written as a file region, both in full and as a
+     * range.
+     *
+     * @throws Exception when a serious error occurs.
+     */
+    @Test
+    void testLargeFile() throws Exception {
+        File directory = new File("target/default-servlet-large");
+        directory.mkdirs();
+        byte[] content = new byte[100000];
+        for (int i = 0; i < content.length; i++) {
+            content[i] = (byte) ('a' + i % 26);
+        }
+        Files.write(new File(directory, "index.html").toPath(), content);
+        DefaultWebApplication webApp = new DefaultWebApplication();
+        webApp.addResource(new DirectoryResource(directory));
+        webApp.setDefaultServlet(new DefaultServlet());
+        webApp.initialize();
+        webApp.start();
+        DefaultWebApplicationResponse response = createResponse(webApp);
+        ByteArrayOutputStream byteOutput = new ByteArrayOutputStream();
+        response.setUnderlyingOutputStream(byteOutput);
+        webApp.service(createRequest(webApp), response);
+        assertEquals(200, response.getStatus());
+        assertEquals("100000", response.getHeader("Content-Length"));
+        assertEquals(new String(content), getBody(byteOutput));
+        DefaultWebApplicationRequest request = createRequest(webApp);
+        request.setHeader("Range", "bytes=26-99999");
+        response = createResponse(webApp);
+        byteOutput = new ByteArrayOutputStream();
+        response.setUnderlyingOutputStream(byteOutput);
+        webApp.service(request, response);
+        assertEquals(206, response.getStatus());
+        assertEquals("99974", response.getHeader("Content-Length"));
+        assertEquals(new String(content, 26, 99974), getBody(byteOutput));
+        webApp.stop();
+    }
+
+    /**
+     * Test a large file is copied to the output stream of a wrapped response,
+     * both in full and as a range.
+     *
+     * @throws Exception when a serious error occurs.
+     */
+    @Test
+    void testLargeFileWrappedResponse() throws Exception {
+        File directory = new File("target/default-servlet-wrapped");
+        directory.mkdirs();
+        byte[] content = new byte[100000];
+        for (int i = 0; i < content.length; i++) {
+            content[i] = (byte) ('a' + i % 26);
+        }
+        Files.write(new File(directory, "index.html").toPath(), content);
+        DefaultWebApplication webApp = new DefaultWebApplication();
+        webApp.addResource(new DirectoryResource(directory));
+        DefaultServlet servlet = new DefaultServlet();
+        webApp.setDefaultServlet(servlet);
+        webApp.initialize();
+        webApp.start();
+        ByteArrayOutputStream byteOutput = new ByteArrayOutputStream();
+        servlet.service(createRequest(webApp), createWrapper(createResponse(webApp), byteOutput));
+        assertEquals(new String(content), byteOutput.toString());
+        DefaultWebApplicationRequest request = createRequest(webApp);
+        request.setHeader("Range", "bytes=26-99999");
+        byteOutput = new ByteArrayOutputStream();
+        servlet.service(request, createWrapper(createResponse(webApp), byteOutput));
+        assertEquals(new String(content, 26, 99974), byteOutput.toString());
+        webApp.stop();
+    }
+
+    /**
+     * Create a response wrapper with its own output stream, like a filter
+     * would.
+     *
+     * @param response the response.
+     * @param byteOutput the output of the wrapper.
+     * @return the response wrapper.
+     */
+    private HttpServletResponseWrapper createWrapper(DefaultWebApplicationResponse response,
+            ByteArrayOutputStream byteOutput) {
+        ServletOutputStream outputStream = new ServletOutputStream() {
+            @Override
+            public boolean isReady() {
+                return true;
+            }
+
+            @Override
+            public void setWriteListener(WriteListener writeListener) {
+            }
+
+            @Override
+            public void write(int b) {
+                byteOutput.write(b);
+            }
+        };
+        return new HttpServletResponseWrapper(response) {
+            @Override
+            public ServletOutputStream getOutputStream() {
+                return outputStream;
+            }
+        };
+    }
+
+    /**
+     * Create a started web application serving the default test webapp.
+     *
+     * @return the web application.
+     */
+    private DefaultWebApplication createWebApplication() {
+        DefaultWebApplication webApp = new DefaultWebApplication();
+        webApp.addResource(new DirectoryResource(new File("src/test/webapp/default")));
+        webApp.setDefaultServlet(new DefaultServlet());
+        webApp.initialize();
+        webApp.start();
+        return webApp;
+    }
+
+    /**
+     * Create a request for /index.html.
+     *
+     * @param webApp the web application.
+     * @return the request.
+     */
+    private DefaultWebApplicationRequest createRequest(DefaultWebApplication webApp) {
+        DefaultWebApplicationRequest request = new DefaultWebApplicationRequest();
+        request.setWebApplication(webApp);
+        request.setServletPath("/index.html");
+        return request;
+    }
+
+    /**
+     * Create a response.
+     *
+     * @param webApp the web application.
+     * @return the response.
+     */
+    private DefaultWebApplicationResponse createResponse(DefaultWebApplication webApp) {
+        DefaultWebApplicationResponse response = new DefaultWebApplicationResponse();
+        response.setWebApplication(webApp);
+        response.setUnderlyingOutputStream(new ByteArrayOutputStream());
+        return response;
+    }
+
+    /**
+     * Get the body from the response output.
+     *
+     * @param byteOutput the response output.
+     * @return the body.
+     */
+    private String getBody(ByteArrayOutputStream byteOutput) {
+        String output = byteOutput.toString();
+        return output.substring(output.indexOf("\n\n") + 2);
+    }
+}
@@ -27,15 +27,22 @@
  */
 package cloud.piranha.webapp.impl.tests;
 
+import static jakarta.servlet.DispatcherType.FORWARD;
+import static jakarta.servlet.DispatcherType.INCLUDE;
+import static jakarta.servlet.DispatcherType.REQUEST;
+
 import cloud.piranha.webapp.impl.DefaultWebApplication;
 import cloud.piranha.webapp.impl.DefaultWebApplicationRequestMapper;
 import cloud.piranha.webapp.impl.DefaultWebApplicationRequestMapping;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 import java.util.Collection;
+import java.util.EnumSet;
+import java.util.List;
 import java.util.Set;
 
 import org.junit.jupiter.api.Test;
@@ -285,6 +292,53 @@ class DefaultWebApplicationRequestMapperTest {
         assertFalse(filters.isEmpty());
     }
 
+    /**
+     * Test findFilterMappings method returns the filters in the order of
+     * their mappings.
+     */
+    @Test
+    void testFindFilterMappingsOrder() {
+        DefaultWebApplicationRequestMapper requestMapper = new DefaultWebApplicationRequestMapper();
+        requestMapper.addFilterMapping("extension", "*.html");
+        requestMapper.addFilterMapping("prefix", "/foo/*");
+        requestMapper.addFilterMapping("exact", "/foo/index.html");
+        requestMapper.addFilterMapping("all", "/*");
+        requestMapper.addFilterMappingBeforeExisting("first", "/*");
+        assertEquals(List.of("first", "extension", "prefix", "exact", "all"),
+                requestMapper.findFilterMappings("/foo/index.html"));
+        assertEquals(List.of("first", "all"), requestMapper.findFilterMappings("/foobar"));
+    }
+
+    /**
+     * Test findFilterMappings method with a path that is literally a prefix
+     * or extension pattern.
+     */
+    @Test
+    void testFindFilterMappingsPatternAsPath() {
+        DefaultWebApplicationRequestMapper requestMapper = new DefaultWebApplicationRequestMapper();
+        requestMapper.addFilterMapping("all", "/*");
+        assertEquals(List.of("all"), requestMapper.findFilterMappings("/*"));
+        requestMapper = new DefaultWebApplicationRequestMapper();
+        requestMapper.addFilterMapping("prefix", "/foo/*");
+        requestMapper.addFilterMapping("extension", "*.html");
+        assertEquals(List.of("prefix"), requestMapper.findFilterMappings("/foo/*"));
+        assertEquals(List.of("extension"), requestMapper.findFilterMappings("*.html"));
+    }
+
+    /**
+     * Test findFilterMappings method with dispatcher types and servlet names.
+     */
+    @Test
+    void testFindFilterMappingsDispatcherTypes() {
+        DefaultWebApplicationRequestMapper requestMapper = new DefaultWebApplicationRequestMapper();
+        requestMapper.addFilterMapping(EnumSet.of(FORWARD), "forward", "/*");
+        requestMapper.addFilterMapping(EnumSet.of(REQUEST, FORWARD), "servlet", "servlet:// myServlet");
+        assertTrue(requestMapper.findFilterMappings(REQUEST, "/index.html").isEmpty());
+        assertEquals(List.of("forward"), requestMapper.findFilterMappings(FORWARD, "/index.html"));
+        assertEquals(List.of("servlet"), requestMapper.findFilterMappings(REQUEST, "servlet:// myServlet"));
+        assertTrue(requestMapper.findFilterMappings(INCLUDE, "servlet:// myServlet").isEmpty());
+    }
+
     /**
      * Test addServletMapping method.
      */
@@ -298,4 +352,54 @@ class DefaultWebApplicationRequestMapperTest {
         DefaultWebApplicationRequestMapping mapping = requestMapper.findServletMapping("/index.html?q=keyword");
         assertNotNull(mapping);
     }
+
+    /**
+     * Test findServletMapping method picks the longest prefix match.
+     */
+    @Test
+    void testFindServletMappingLongestPrefix() {
+        DefaultWebApplicationRequestMapper requestMapper = new DefaultWebApplicationRequestMapper();
+        requestMapper.addServletMapping("all", "/*");
+        requestMapper.addServletMapping("foo", "/foo/*");
+        requestMapper.addServletMapping("foobar", "/foo/bar/*");
+        assertEquals("/foo/bar/*", requestMapper.findServletMapping("/foo/bar/baz").getPattern());
+        assertEquals("/foo/bar/*", requestMapper.findServletMapping("/foo/bar").getPattern());
+        assertEquals("/foo/*", requestMapper.findServletMapping("/foo/baz").getPattern());
+        assertEquals("/*", requestMapper.findServletMapping("/foobar").getPattern());
+    }
+
+    /**
+     * Test findServletMapping method with the different kinds of matches.
+     */
+    @Test
+    void testFindServletMappingKinds() {
+        DefaultWebApplicationRequestMapper requestMapper = new DefaultWebApplicationRequestMapper();
+        requestMapper.addServletMapping("exact", "/foo/index.jsp");
+        requestMapper.addServletMapping("prefix", "/foo/*");
+        requestMapper.addServletMapping("extension", "*.jsp");
+        DefaultWebApplicationRequestMapping mapping = requestMapper.findServletMapping("/foo/index.jsp");
+        assertTrue(mapping.isExact());
+        assertEquals("foo/index.jsp", mapping.getMatchValue());
+        mapping = requestMapper.findServletMapping("/foo/other.jsp");
+        assertEquals("/foo/*", mapping.getPattern());
+        mapping = requestMapper.findServletMapping("/bar/page.jsp");
+        assertTrue(mapping.isExtension());
+        assertEquals("*.jsp", mapping.getPattern());
+        assertEquals("bar/page", mapping.getMatchValue());
+        assertNull(requestMapper.findServletMapping("/bar/page.html"));
+    }
+
+    /**
+     * Test findServletMapping method sees servlet mappings added after the
+     * mappings were compiled.
+     */
+    @Test
+    void testFindServletMappingAfterCompile() {
+        DefaultWebApplicationRequestMapper requestMapper = new DefaultWebApplicationRequestMapper();
+        requestMapper.addServletMapping("exact", "/exact");
+        requestMapper.compile();
+        assertNull(requestMapper.findServletMapping("/added"));
+        requestMapper.addServletMapping("added", "/added");
+        assertEquals("/added", requestMapper.findServletMapping("/added").getPattern());
+    }
 }
@@ -226,6 +226,36 @@ class FilterTest {
         assertEquals(200, response.getStatus());
     }
 
+    /**
+     * Test doFilter method runs each filter once per request when the same
+     * path is requested repeatedly.
+     *
+     * @throws Exception when a serious error occurs.
+     */
+    @Test
+    void testDoFilterRepeated() throws Exception {
+        int[] count = new int[1];
+        webApp.addFilter("Counting Filter", (request, response, chain) -> {
+            count[0]++;
+            chain.doFilter(request, response);
+        });
+        webApp.addFilterMapping("Counting Filter", "/*");
+        webApp.addServlet("End Servlet", new TestEndServlet());
+        webApp.addServletMapping("End Servlet", "/doFilter");
+        webApp.initialize();
+        webApp.start();
+        for (int i = 1; i <= 3; i++) {
+            TestWebApplicationRequest request = new TestWebApplicationRequest();
+            request.setWebApplication(webApp);
+            request.setServletPath("/doFilter");
+            TestWebApplicationResponse response = new TestWebApplicationResponse();
+            response.setWebApplication(webApp);
+            webApp.service(request, response);
+            assertEquals(200, response.getStatus());
+            assertEquals(i, count[0]);
+        }
+    }
+
     @Test
     void testAddFilterGetClassName() throws Exception{
         Filter filter = new TestMultiple1Filter();
@@ -95,4 +95,35 @@ class WelcomeFileTest {
         assertTrue(byteOutput.toString().contains("custom.html"));
         webApp.stop();
     }
+
+    /**
+     * Test a welcome file is found once the resource with it is added, also
+     * when it was not found before.
+     *
+     * @throws Exception when a serious error occurs.
+     */
+    @Test
+    void testWelcomeFileAddedLater() throws Exception {
+        DefaultWebApplication webApp = new DefaultWebApplication();
+        webApp.initialize();
+        webApp.start();
+        DefaultWebApplicationRequest request = new DefaultWebApplicationRequest();
+        request.setWebApplication(webApp);
+        DefaultWebApplicationResponse response = new DefaultWebApplicationResponse();
+        response.setWebApplication(webApp);
+        response.setUnderlyingOutputStream(new ByteArrayOutputStream());
+        webApp.service(request, response);
+        assertEquals(404, response.getStatus());
+        webApp.addResource(new DirectoryResource(new File("src/test/webapp/default")));
+        request = new DefaultWebApplicationRequest();
+        request.setWebApplication(webApp);
+        response = new DefaultWebApplicationResponse();
+        response.setWebApplication(webApp);
+        ByteArrayOutputStream byteOutput = new ByteArrayOutputStream();
+        response.setUnderlyingOutputStream(byteOutput);
+        webApp.service(request, response);
+        assertEquals(200, response.getStatus());
+        assertTrue(byteOutput.toString().contains("index.html"));
+        webApp.stop();
+    }
 }